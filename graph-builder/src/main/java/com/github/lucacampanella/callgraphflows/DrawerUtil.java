@@ -9,15 +9,26 @@ import com.github.lucacampanella.callgraphflows.staticanalyzer.AnalysisErrorExce
 import com.github.lucacampanella.callgraphflows.staticanalyzer.AnalysisResult;
 import com.github.lucacampanella.callgraphflows.staticanalyzer.AnalyzerWithModel;
 import com.github.lucacampanella.callgraphflows.staticanalyzer.ClassDescriptionContainer;
+import com.github.lucacampanella.callgraphflows.staticanalyzer.CombinationsHolder;
+import com.github.lucacampanella.callgraphflows.staticanalyzer.LoopAnalysisEnum;
+import com.github.lucacampanella.callgraphflows.staticanalyzer.MatchingBudget;
+import com.github.lucacampanella.callgraphflows.staticanalyzer.MatchingEngineEnum;
 import com.github.lucacampanella.callgraphflows.staticanalyzer.instructions.CodeFlowBreak;
+import com.github.lucacampanella.callgraphflows.staticanalyzer.instructions.LoopBranchingStatement;
 import com.github.lucacampanella.callgraphflows.staticanalyzer.instructions.StatementWithRelevantMethods;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import net.corda.core.flows.InitiatedBy;
 import spoon.reflect.declaration.CtClass;
 
 import java.io.IOException;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Set;
 
 public final class DrawerUtil {
 
@@ -31,6 +42,9 @@ public final class DrawerUtil {
 
     private static final String IMAGES_FOLDER_NAME = "images";
 
+    private static boolean incremental = false;
+    private static String configuration = "";
+
     public static void drawAllStartableClasses(AnalyzerWithModel analyzerWithModel, String outPath) throws IOException {
         if(outPath == null) {
             outPath = DEFAULT_OUT_DIR;
@@ -41,28 +55,118 @@ public final class DrawerUtil {
         final List<CtClass> startableByRPCClasses = analyzerWithModel.getClassesToBeAnalyzed();
         LOGGER.info("Found these classes annotated with @StartableByRPC: ");
         Paths.get(outPath, IMAGES_FOLDER_NAME).toFile().mkdirs(); //create all directories necessary for the output
+
+        final Path statePath = Paths.get(outPath, IncrementalState.FILE_NAME);
+        final String fingerprint = getConfigurationFingerprint(analyzerWithModel);
+        final IncrementalState previousState = incremental ? IncrementalState.load(statePath, fingerprint) : null;
+        final IncrementalState state = new IncrementalState(fingerprint);
+        final IncrementalState.SourceHashes sourceHashes = new IncrementalState.SourceHashes(analyzerWithModel.getModel());
+        final Set<CtClass> upToDateClasses = Collections.newSetFromMap(new IdentityHashMap<>());
+        final List<CtClass> classesToBeDrawn = new ArrayList<>();
+        for (CtClass klass : startableByRPCClasses) {
+            if(previousState != null && previousState.isUpToDate(klass.getQualifiedName(), sourceHashes)
+                    && outputsExist(klass, outPath)) {
+                LOGGER.info("**** Class {} didn't change, keeping its graph", klass.getQualifiedName());
+                upToDateClasses.add(klass);
+            }
+            else {
+                classesToBeDrawn.add(klass);
+            }
+        }
+
+        //the classes are drawn in order with the results of the parallel analysis, if enabled
+        analyzerWithModel.analyzeFlowLogicClassesInParallel(classesToBeDrawn);
         for (CtClass klass : startableByRPCClasses) {
-            LOGGER.info("**** Analyzing class {} ", klass.getQualifiedName());
-            drawFromClass(analyzerWithModel, klass, outPath);
+            if(upToDateClasses.contains(klass)) {
+                state.copyFlow(previousState, klass.getQualifiedName());
+            }
+            else {
+                LOGGER.info("**** Analyzing class {} ", klass.getQualifiedName());
+                final AnalysisResult analysisResult = drawFromClassIfAnalyzable(analyzerWithModel, klass, outPath);
+                if(analysisResult != null) {
+                    state.record(klass.getQualifiedName(), analysisResult.getDependencies(), sourceHashes);
+                }
+            }
             asciiDocIndexBuilder.addFile(klass.getQualifiedName() + ".adoc");
         }
         asciiDocIndexBuilder.writeToFile(Paths.get(outPath, "index.adoc").toString());
+        if(incremental) {
+            state.write(statePath);
+        }
     }
 
     public static void drawAllStartableClasses(AnalyzerWithModel analyzerWithModel) throws IOException {
         drawAllStartableClasses(analyzerWithModel, DEFAULT_OUT_DIR);
     }
 
+    /**
+     * Only checks the protocol of all the startable classes, without drawing anything
+     * @return true if all the classes could be analyzed and have a valid protocol
+     */
+    public static boolean checkProtocolOfAllStartableClasses(AnalyzerWithModel analyzerWithModel) {
+        //the links are not needed, the analysis doesn't set them up and the protocol is checked lazily afterwards
+        final boolean drawArrows = AnalyzerWithModel.isDrawArrows();
+        AnalyzerWithModel.setDrawArrows(false);
+        try {
+            boolean allValid = true;
+            final List<CtClass> startableByRPCClasses = analyzerWithModel.getClassesToBeAnalyzed();
+            analyzerWithModel.analyzeFlowLogicClassesInParallel(startableByRPCClasses);
+            for (CtClass klass : startableByRPCClasses) {
+                try {
+                    final boolean validProtocol =
+                            analyzerWithModel.analyzeFlowLogicClass(klass).checkIfContainsValidProtocol();
+                    if(validProtocol) {
+                        LOGGER.info("Class {} contains valid protocol", klass.getQualifiedName());
+                    }
+                    else {
+                        LOGGER.error("Class {} doesn't contain a valid protocol", klass.getQualifiedName());
+                        allValid = false;
+                    }
+                } catch (AnalysisErrorException e) {
+                    LOGGER.error("Couldn't analyze class {}", klass.getQualifiedName(), e);
+                    allValid = false;
+                }
+            }
+            return allValid;
+        } finally {
+            AnalyzerWithModel.setDrawArrows(drawArrows);
+        }
+    }
+
     public static void drawFromClass(AnalyzerWithModel analyzerWithModel, CtClass klass, String outPath) throws IOException {
+        drawFromClassIfAnalyzable(analyzerWithModel, klass, outPath);
+    }
+
+    //null if the class couldn't be analyzed
+    private static AnalysisResult drawFromClassIfAnalyzable(AnalyzerWithModel analyzerWithModel, CtClass klass,
+                                                            String outPath) throws IOException {
         final AnalysisResult analysisResult;
         try {
             analysisResult = analyzerWithModel.analyzeFlowLogicClass(klass);
         } catch (AnalysisErrorException e) {
             LOGGER.error("Couldn't analyze class {}, skipping this class", klass.getQualifiedName(), e);
-            return;
+            return null;
         }
 
+        //the links of the classes analyzed in parallel are set up in the order the classes are drawn
+        analyzerWithModel.setupLinks(analysisResult);
         drawFromAnalysis(analysisResult, outPath);
+        return analysisResult;
+    }
+
+    private static boolean outputsExist(CtClass klass, String outPath) {
+        final String fullyQualifiedName = ClassDescriptionContainer.fromClass(klass).getFullyQualifiedName();
+        return Paths.get(outPath, IMAGES_FOLDER_NAME, fullyQualifiedName + ".svg").toFile().isFile()
+                && Paths.get(outPath, fullyQualifiedName + ".adoc").toFile().isFile();
+    }
+
+    //which responder answers a flow depends on the @InitiatedBy annotations of all the responders
+    private static String getConfigurationFingerprint(AnalyzerWithModel analyzerWithModel) {
+        StringBuilder res = new StringBuilder(configuration);
+        for(CtClass responder : analyzerWithModel.getClassesByAnnotation(InitiatedBy.class)) {
+            res.append('\n').append(responder.getQualifiedName()).append(responder.getAnnotations());
+        }
+        return res.toString();
     }
 
     public static void drawFromAnalysis(AnalysisResult analysisResult, String outPath) throws IOException {
@@ -103,4 +207,47 @@ public final class DrawerUtil {
     public static void setDrawBreakContinue(boolean drawBreakContinue) {
         CodeFlowBreak.setDrawBreakContinue(drawBreakContinue);
     }
+
+    public static void setMatchingEngine(MatchingEngineEnum matchingEngine) {
+        AnalysisResult.setMatchingEngine(matchingEngine);
+    }
+
+    public static void setMaxCombinations(int maxCombinations) {
+        MatchingBudget.setMaxCombinations(maxCombinations);
+    }
+
+    public static void setMaxComparisons(long maxComparisons) {
+        MatchingBudget.setMaxComparisons(maxComparisons);
+    }
+
+    public static void setMatchingThreads(int matchingThreads) {
+        CombinationsHolder.setMatchingThreads(matchingThreads);
+    }
+
+    public static void setLoopAnalysis(LoopAnalysisEnum loopAnalysis) {
+        LoopBranchingStatement.setLoopAnalysis(loopAnalysis);
+    }
+
+    public static void setSessionProjection(boolean sessionProjection) {
+        CombinationsHolder.setSessionProjection(sessionProjection);
+    }
+
+    public static void setAnalysisThreads(int analysisThreads) {
+        AnalyzerWithModel.setAnalysisThreads(analysisThreads);
+    }
+
+    /**
+     * @param incremental if true, the flows whose sources didn't change since the last run in the same output
+     *                    folder are not analyzed and drawn again
+     */
+    public static void setIncremental(boolean incremental) {
+        DrawerUtil.incremental = incremental;
+    }
+
+    /**
+     * @param configuration the options that change the output, when they change all the flows are drawn again
+     */
+    public static void setConfiguration(String configuration) {
+        DrawerUtil.configuration = configuration;
+    }
 }
@@ -0,0 +1,216 @@
+package com.github.lucacampanella.callgraphflows;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import spoon.reflect.CtModel;
+import spoon.reflect.cu.CompilationUnit;
+import spoon.reflect.declaration.CtType;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * What a run in incremental mode has drawn: for each startable flow, the top level classes its analysis depended on
+ * together with the hashes of their sources. A flow whose dependencies didn't change doesn't need to be analyzed
+ * and drawn again, as long as its outputs are still there.
+ * The whole state is discarded when the configuration of the analysis changes.
+ */
+final class IncrementalState {
+
+    static final String FILE_NAME = ".incremental-state.properties";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(IncrementalState.class);
+
+    private static final String CONFIGURATION_KEY = "configuration";
+    private static final String FLOW_PREFIX = "flow.";
+    private static final String HASH_PREFIX = "hash.";
+    private static final String MISSING_SOURCE = "missing";
+
+    private final String configurationHash;
+    private final Map<String, Set<String>> dependenciesByFlow = new TreeMap<>();
+    private final Map<String, String> hashes = new TreeMap<>();
+
+    IncrementalState(String configuration) {
+        this.configurationHash = hash(configuration);
+    }
+
+    /**
+     * @return the state written by the previous run, or an empty one if there is none or if it was written with
+     * another configuration
+     */
+    static IncrementalState load(Path file, String configuration) throws IOException {
+        IncrementalState res = new IncrementalState(configuration);
+        if(!file.toFile().isFile()) {
+            return res;
+        }
+        Properties properties = new Properties();
+        try(InputStream in = Files.newInputStream(file)) {
+            properties.load(in);
+        }
+        if(!res.configurationHash.equals(properties.getProperty(CONFIGURATION_KEY))) {
+            LOGGER.info("The configuration changed since the last run, all the flows are analyzed again");
+            return res;
+        }
+        for(String key : properties.stringPropertyNames()) {
+            final String value = properties.getProperty(key);
+            if(key.startsWith(FLOW_PREFIX)) {
+                res.dependenciesByFlow.put(key.substring(FLOW_PREFIX.length()),
+                        value.isEmpty() ? Collections.emptySet() : new TreeSet<>(Arrays.asList(value.split(","))));
+            }
+            else if(key.startsWith(HASH_PREFIX)) {
+                res.hashes.put(key.substring(HASH_PREFIX.length()), value);
+            }
+        }
+        return res;
+    }
+
+    /**
+     * Writes the state sorted by key, so that the same analysis always produces the same file
+     */
+    void write(Path file) throws IOException {
+        try(Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writer.write("#Written by the incremental analysis, do not edit\n");
+            writer.write(CONFIGURATION_KEY + "=" + configurationHash + "\n");
+            for(Map.Entry<String, Set<String>> entry : dependenciesByFlow.entrySet()) {
+                writer.write(FLOW_PREFIX + entry.getKey() + "=" + String.join(",", entry.getValue()) + "\n");
+            }
+            for(Map.Entry<String, String> entry : hashes.entrySet()) {
+                writer.write(HASH_PREFIX + entry.getKey() + "=" + entry.getValue() + "\n");
+            }
+        }
+    }
+
+    /**
+     * @return true if the flow was drawn by the run that wrote this state and none of its dependencies changed since
+     */
+    boolean isUpToDate(String flowName, SourceHashes sourceHashes) {
+        final Set<String> dependencies = dependenciesByFlow.get(flowName);
+        if(dependencies == null) {
+            return false;
+        }
+        for(String dependency : dependencies) {
+            if(!sourceHashes.get(dependency).equals(hashes.get(dependency))) {
+                LOGGER.info("Class {} changed, flow {} is analyzed again", dependency, flowName);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    void record(String flowName, Set<String> dependencies, SourceHashes sourceHashes) {
+        dependenciesByFlow.put(flowName, new TreeSet<>(dependencies));
+        for(String dependency : dependencies) {
+            hashes.put(dependency, sourceHashes.get(dependency));
+        }
+    }
+
+    /**
+     * Keeps a flow that is up to date in the previous state
+     */
+    void copyFlow(IncrementalState previous, String flowName) {
+        final Set<String> dependencies = previous.dependenciesByFlow.get(flowName);
+        dependenciesByFlow.put(flowName, dependencies);
+        for(String dependency : dependencies) {
+            hashes.put(dependency, previous.hashes.get(dependency));
+        }
+    }
+
+    /**
+     * @return the hash of the jar the analyzer is run from, null if it's not run from a jar. The version alone is
+     * not enough to tell whether the graphs would be the same: it's the same for all the builds of a SNAPSHOT
+     */
+    static String getAnalyzerJarHash() {
+        try {
+            final CodeSource codeSource = IncrementalState.class.getProtectionDomain().getCodeSource();
+            if(codeSource == null) {
+                return null;
+            }
+            final Path jar = Paths.get(codeSource.getLocation().toURI());
+            if(!Files.isRegularFile(jar)) {
+                return null;
+            }
+            final MessageDigest digest = newDigest();
+            try(InputStream in = Files.newInputStream(jar)) {
+                final byte[] buffer = new byte[64 * 1024];
+                int read;
+                while((read = in.read(buffer)) != -1) {
+                    digest.update(buffer, 0, read);
+                }
+            }
+            return toHex(digest.digest());
+        } catch (URISyntaxException | IOException | SecurityException e) {
+            LOGGER.warn("Couldn't read the jar of the analyzer", e);
+            return null;
+        }
+    }
+
+    private static String hash(String content) {
+        return toHex(newDigest().digest(content.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder res = new StringBuilder(bytes.length * 2);
+        for(byte b : bytes) {
+            res.append(String.format("%02x", b));
+        }
+        return res.toString();
+    }
+
+    /**
+     * The hashes of the sources of the top level classes of a model, each one computed only when first needed
+     */
+    static final class SourceHashes {
+        private final Map<String, CtType<?>> topLevelTypes = new HashMap<>();
+        private final Map<String, String> hashes = new HashMap<>();
+
+        SourceHashes(CtModel model) {
+            for(CtType<?> type : model.getAllTypes()) {
+                topLevelTypes.put(type.getQualifiedName(), type);
+            }
+        }
+
+        String get(String topLevelTypeName) {
+            return hashes.computeIfAbsent(topLevelTypeName, name -> {
+                final CtType<?> type = topLevelTypes.get(name);
+                return type == null ? MISSING_SOURCE : hash(getSource(type));
+            });
+        }
+
+        //the original source file if there is one, otherwise the source as printed by Spoon
+        private static String getSource(CtType<?> type) {
+            final CompilationUnit compilationUnit = type.getPosition().getCompilationUnit();
+            if(compilationUnit != null && compilationUnit.getFile() != null) {
+                final String originalSource = compilationUnit.getOriginalSourceCode();
+                if(originalSource != null) {
+                    return originalSource;
+                }
+            }
+            return type.toString();
+        }
+    }
+}
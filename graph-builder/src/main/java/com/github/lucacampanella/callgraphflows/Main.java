@@ -1,16 +1,20 @@
 package com.github.lucacampanella.callgraphflows;
 
+import com.github.lucacampanella.callgraphflows.staticanalyzer.DecompilationCache;
 import com.github.lucacampanella.callgraphflows.staticanalyzer.DecompilerEnum;
+import com.github.lucacampanella.callgraphflows.staticanalyzer.LoopAnalysisEnum;
+import com.github.lucacampanella.callgraphflows.staticanalyzer.MatchingEngineEnum;
 import com.github.lucacampanella.callgraphflows.staticanalyzer.SourceAndJarAnalyzer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import picocli.CommandLine;
 
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.concurrent.Callable;
 
 
-public class Main implements Callable<Void> {
+public class Main implements Callable<Integer> {
 
     private Logger LOGGER;
 
@@ -52,14 +56,100 @@ public class Main implements Callable<Void> {
                     " statement itself, placed after all the relevant methods.")
     boolean drawStatementsWithRelevantMethods = false;
 
+    @CommandLine.Option(names = {"--matching-engine"}, defaultValue = "enumerator",
+            description = "Engine used to check that the protocols of two flows match, choose between " +
+                    "enumerator and automaton")
+    private String matchingEngineName;
+
+    @CommandLine.Option(names = {"--max-combinations"}, defaultValue = "10000",
+            description = "Maximum number of paths of a flow enumerated when checking the protocol, if exceeded " +
+                    "the protocol is checked in an approximate way")
+    private int maxCombinations;
+
+    @CommandLine.Option(names = {"--max-comparisons"}, defaultValue = "1000000",
+            description = "Maximum number of comparisons between the paths of two flows when checking the protocol," +
+                    " if exceeded the protocol is checked in an approximate way")
+    private long maxComparisons;
+
+    @CommandLine.Option(names = {"--matching-threads"}, defaultValue = "1",
+            description = "Number of threads used to compare the paths of two flows, the arrows are always drawn " +
+                    "in the same order")
+    private int matchingThreads;
+
+    @CommandLine.Option(names = {"--threads"}, defaultValue = "1",
+            description = "Number of threads used to analyze the startable flows, the arrows are set up and the " +
+                    "flows drawn one at a time in the usual order")
+    private int threads;
+
+    @CommandLine.Option(names = {"--decompiler-threads"}, defaultValue = "1",
+            description = "Number of jars decompiled at the same time, each one in its own folder and, with " +
+                    "more than one thread, by its own process")
+    private int decompilerThreads;
+
+    @CommandLine.Option(names = {"--loop-analysis"}, defaultValue = "bounded",
+            description = "How loops are checked, choose between bounded (the body is unfolded twice) and " +
+                    "fixpoint (all the iterations, implies the automaton matching engine)")
+    private String loopAnalysisName;
+
+    @CommandLine.Option(names = {"--session-projection"},
+            description = "Match the sends and receives of each session of the initiating flow separately")
+    boolean sessionProjection = false;
+
+    @CommandLine.Option(names = {"--incremental"},
+            description = "Only analyze and draw again the flows whose sources, or the sources of the classes they " +
+                    "depend on, changed since the last run in the same output folder")
+    boolean incremental = false;
+
+    @CommandLine.Option(names = {"--decompilation-cache"},
+            description = "Directory where the sources decompiled from each jar are kept across runs, a jar whose " +
+                    "content didn't change is not decompiled again")
+    private String decompilationCachePath = null;
+
+    @CommandLine.Option(names = {"--check-protocol-only"},
+            description = "Don't draw anything, only check that the protocols of the flows are valid. Exits with " +
+                    "status 1 if at least one is not")
+    boolean checkProtocolOnly = false;
+
     public static void main(String []args) throws IOException {
 
-        final Main app = CommandLine.populateCommand(new Main(), args);
-        app.call();
+        final Main app;
+        try {
+            app = CommandLine.populateCommand(new Main(), args);
+            app.checkOptions();
+        } catch (CommandLine.ParameterException e) {
+            System.err.println(e.getMessage());
+            e.getCommandLine().usage(System.err);
+            System.exit(2);
+            return;
+        }
+        final int exitStatus = app.call();
+        if(exitStatus != 0) {
+            System.exit(exitStatus);
+        }
     }
 
+    /**
+     * Checks the options that can't be used together
+     * @throws CommandLine.ParameterException if two of the options conflict
+     */
+    void checkOptions() {
+        //the automata don't know about the sessions, the projection would be silently ignored
+        final boolean automata =
+                MatchingEngineEnum.fromStringOrDefault(matchingEngineName) == MatchingEngineEnum.AUTOMATON
+                || LoopAnalysisEnum.fromStringOrDefault(loopAnalysisName) == LoopAnalysisEnum.FIXPOINT;
+        if(sessionProjection && automata) {
+            throw new CommandLine.ParameterException(new CommandLine(this), "--session-projection can't be " +
+                    "used together with the automaton matching engine or the fixpoint loop analysis");
+        }
+    }
+
+    /**
+     * Runs the analysis with the options of this command
+     * @return the exit status: 1 if {@link #checkProtocolOnly} is set and the protocol of at least one flow is
+     * not valid, 0 otherwise
+     */
     @Override
-    public Void call() throws IOException {
+    public Integer call() throws IOException {
         final String loggerLevel = System.getProperty("org.slf4j.simpleLogger.defaultLogLevel");
         if(loggerLevel == null) {
             System.setProperty("org.slf4j.simpleLogger.defaultLogLevel", "error");
@@ -67,6 +157,11 @@ public class Main implements Callable<Void> {
         LOGGER = LoggerFactory.getLogger(Main.class);
 
         LOGGER.trace("Logger level = {}", loggerLevel);
+        checkOptions();
+        final MatchingEngineEnum matchingEngine = MatchingEngineEnum.fromStringOrDefault(matchingEngineName);
+        final LoopAnalysisEnum loopAnalysis = LoopAnalysisEnum.fromStringOrDefault(loopAnalysisName);
+        DecompilationCache.setDirectory(decompilationCachePath);
+        SourceAndJarAnalyzer.setDecompilerThreads(decompilerThreads);
         SourceAndJarAnalyzer analyzer = new SourceAndJarAnalyzer(filesPaths,
                 DecompilerEnum.fromStringOrDefault(decompilerName), analyzeOnlySources);
 
@@ -79,8 +174,40 @@ public class Main implements Callable<Void> {
         DrawerUtil.setDrawThrow(!noDrawThrow);
         DrawerUtil.setDrawBreakContinue(!noBreakContinue);
         DrawerUtil.setDrawStatementsWithRelevantMethods(drawStatementsWithRelevantMethods);
+        DrawerUtil.setMatchingEngine(matchingEngine);
+        DrawerUtil.setMaxCombinations(maxCombinations);
+        DrawerUtil.setMaxComparisons(maxComparisons);
+        DrawerUtil.setMatchingThreads(matchingThreads);
+        DrawerUtil.setAnalysisThreads(threads);
+        DrawerUtil.setLoopAnalysis(loopAnalysis);
+        DrawerUtil.setSessionProjection(sessionProjection);
+        final String analyzerJarHash = incremental ? IncrementalState.getAnalyzerJarHash() : null;
+        if(incremental && analyzerJarHash == null) {
+            LOGGER.warn("The analyzer is not run from its jar, the graphs can't be reused and --incremental " +
+                    "is ignored");
+        }
+        DrawerUtil.setIncremental(analyzerJarHash != null);
+        DrawerUtil.setConfiguration(getConfiguration(analyzerJarHash));
+
+        if(checkProtocolOnly) {
+            return DrawerUtil.checkProtocolOfAllStartableClasses(analyzer) ? 0 : 1;
+        }
 
         DrawerUtil.drawAllStartableClasses(analyzer, outputPath);
-        return null;
+        return 0;
+    }
+
+    //the version and the jar of the analyzer and the options that change the drawn graphs, not the threads
+    private String getConfiguration(String analyzerJarHash) {
+        return Arrays.asList(getImplementationVersion(), analyzerJarHash, decompilerName, drawLineNumbers,
+                noDrawBoxAroundSubflow, analyzeOnlySources, noArrows, drawReturn, noDrawThrow, noBreakContinue,
+                drawStatementsWithRelevantMethods, matchingEngineName, maxCombinations, maxComparisons,
+                loopAnalysisName, sessionProjection).toString();
+    }
+
+    //a new version of the analyzer can draw the same flows differently
+    private static String getImplementationVersion() {
+        final String version = Main.class.getPackage().getImplementationVersion();
+        return version == null ? "unknown" : version;
     }
 }
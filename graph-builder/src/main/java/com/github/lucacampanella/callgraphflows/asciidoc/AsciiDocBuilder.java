@@ -10,18 +10,34 @@ import java.nio.file.Paths;
 public class AsciiDocBuilder {
     private ClassDescriptionContainer classDescription;
     private ClassDescriptionContainer counterpartyClassDescription;
+    private boolean protocolFullyVerified = true;
+    private boolean sessionProjectionSkipped = false;
 
     public AsciiDocBuilder(ClassDescriptionContainer classDescription, ClassDescriptionContainer counterpartyClassDescription) {
         this.classDescription = classDescription;
         this.counterpartyClassDescription = counterpartyClassDescription;
     }
 
+    public AsciiDocBuilder(ClassDescriptionContainer classDescription,
+                           ClassDescriptionContainer counterpartyClassDescription, boolean protocolFullyVerified) {
+        this(classDescription, counterpartyClassDescription);
+        this.protocolFullyVerified = protocolFullyVerified;
+    }
+
+    public AsciiDocBuilder(ClassDescriptionContainer classDescription,
+                           ClassDescriptionContainer counterpartyClassDescription, boolean protocolFullyVerified,
+                           boolean sessionProjectionSkipped) {
+        this(classDescription, counterpartyClassDescription, protocolFullyVerified);
+        this.sessionProjectionSkipped = sessionProjectionSkipped;
+    }
+
     public static AsciiDocBuilder fromAnalysisResult(AnalysisResult analysisResult) {
         if(!analysisResult.hasCounterpartyResult()) {
             return new AsciiDocBuilder(analysisResult.getClassDescription(), null);
         }
         final AnalysisResult counterpartyClassResult = analysisResult.getCounterpartyClassResult();
-        return new AsciiDocBuilder(analysisResult.getClassDescription(), counterpartyClassResult.getClassDescription());
+        return new AsciiDocBuilder(analysisResult.getClassDescription(), counterpartyClassResult.getClassDescription(),
+                analysisResult.isProtocolFullyVerified(), analysisResult.isSessionProjectionSkipped());
     }
 
     public void writeToFile(String path) throws IOException {
@@ -50,6 +66,14 @@ public class AsciiDocBuilder {
                 sb.append(")");
             }
             sb.append("\n");
+            if(!protocolFullyVerified) {
+                sb.append("\nWARNING: protocol not fully verified. The flows have too many possible paths for the " +
+                        "analysis budget, the protocol was checked in an approximate way.\n");
+            }
+            if(sessionProjectionSkipped) {
+                sb.append("\nWARNING: session projection not applied. The protocol was checked on the automata, " +
+                        "which don't split the sends and receives by session.\n");
+            }
         }
         sb.append("\n");
         sb.append(classDescription.getComments());
@@ -4,8 +4,8 @@ public class DefaultPreferences implements PreferencesInterface {
 
     private static final double BRIGHTER_FACTOR = 1.2;
 
-    // static variable singleInstance of type Singleton
-    private static DefaultPreferences singleInstance = null;
+    // static variable singleInstance of type Singleton, created eagerly so that it's safe to get from any thread
+    private static final DefaultPreferences singleInstance = new DefaultPreferences();
 
     // private constructor restricted to this class itself
     private DefaultPreferences()
@@ -15,9 +15,6 @@ public class DefaultPreferences implements PreferencesInterface {
     // static method to create instance of Singleton class
     public static DefaultPreferences getInstance()
     {
-        if (singleInstance == null)
-            singleInstance = new DefaultPreferences();
-
         return singleInstance;
     }
 
@@ -1,14 +1,30 @@
 package com.github.lucacampanella.callgraphflows.staticanalyzer;
 
 import com.github.lucacampanella.callgraphflows.graphics.components2.GTwoSidedContainer;
+import com.github.lucacampanella.callgraphflows.staticanalyzer.instructions.LoopBranchingStatement;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
 
 public class AnalysisResult {
 
+    private static final Logger LOGGER = LoggerFactory.getLogger(AnalysisResult.class);
+
+    private static MatchingEngineEnum matchingEngine = MatchingEngineEnum.getDefault();
+
     ClassDescriptionContainer classDescription;
     Branch statements = new Branch();
     AnalysisResult counterpartyClassResult = null;
     Boolean containsValidProtocolAndDrawn = null;
+    Boolean containsValidProtocol = null;
+    boolean protocolFullyVerified = true;
+    boolean sessionProjectionSkipped = false;
     private GTwoSidedContainer graphicRepresentation = null;
+    private Set<String> dependencies = Collections.emptySet();
+    private List<AnalysisResult> analyzedFlows = Collections.emptyList();
 
     public AnalysisResult(ClassDescriptionContainer classDescription) {
         this.classDescription = classDescription;
@@ -18,6 +34,14 @@ public class AnalysisResult {
         this.classDescription = ClassDescriptionContainer.getEmpty();
     }
 
+    public static void setMatchingEngine(MatchingEngineEnum matchingEngine) {
+        AnalysisResult.matchingEngine = matchingEngine;
+    }
+
+    public static MatchingEngineEnum getMatchingEngine() {
+        return matchingEngine;
+    }
+
     public Branch getStatements() {
         return statements;
     }
@@ -38,6 +62,29 @@ public class AnalysisResult {
         this.statements = statements;
     }
 
+    /**
+     * @return the qualified names of the top level classes whose source the analysis depends on: the class itself
+     * and its superclasses, the classes of the inlined methods, the subflows and the responder
+     */
+    public Set<String> getDependencies() {
+        return dependencies;
+    }
+
+    public void setDependencies(Set<String> dependencies) {
+        this.dependencies = dependencies;
+    }
+
+    /**
+     * @return the results of the subflows and of the responder used by the analysis, in the order they were needed
+     */
+    public List<AnalysisResult> getAnalyzedFlows() {
+        return analyzedFlows;
+    }
+
+    public void setAnalyzedFlows(List<AnalysisResult> analyzedFlows) {
+        this.analyzedFlows = analyzedFlows;
+    }
+
     public boolean checkIfContainsValidProtocolAndSetupLinks() {
         if(containsValidProtocolAndDrawn == null) {
             containsValidProtocolAndDrawn = checkIfContainsValidProtocolAndDrawNotLazy();
@@ -45,27 +92,69 @@ public class AnalysisResult {
         return containsValidProtocolAndDrawn;
     }
 
+    /**
+     * Only checks if the protocol is valid, without setting up the links between the statements of the two flows.
+     * With the enumerator engine the paths of the flows are generated one at a time and the check stops at the
+     * first match, see {@link CombinationsHolder#anyCombinationsMatch(Branch, Branch)}
+     * @return true if the protocol is valid
+     */
+    public boolean checkIfContainsValidProtocol() {
+        if(containsValidProtocolAndDrawn != null) {
+            return containsValidProtocolAndDrawn;
+        }
+        if(containsValidProtocol == null) {
+            containsValidProtocol = checkIfContainsValidProtocolNotLazy(false);
+        }
+        return containsValidProtocol;
+    }
+
     private boolean checkIfContainsValidProtocolAndDrawNotLazy() {
+        return checkIfContainsValidProtocolNotLazy(true);
+    }
+
+    private boolean checkIfContainsValidProtocolNotLazy(boolean setupLinks) {
         //first of all we check that all initiating subflows have a valid protocol
-        final boolean validProtocol = getStatements().allInitiatingFlowsHaveValidProtocolAndSetupLinks();
+        final boolean validProtocol = setupLinks ? getStatements().allInitiatingFlowsHaveValidProtocolAndSetupLinks()
+                : getStatements().allInitiatingFlowsHaveValidProtocol();
         if(!validProtocol) {
             return false;
         }
         if(hasCounterpartyResult()) {
-            final boolean validProtocolCounterparty = counterpartyClassResult.getStatements()
-                    .allInitiatingFlowsHaveValidProtocolAndSetupLinks();
+            final Branch counterpartyStatements = counterpartyClassResult.getStatements();
+            final boolean validProtocolCounterparty = setupLinks
+                    ? counterpartyStatements.allInitiatingFlowsHaveValidProtocolAndSetupLinks()
+                    : counterpartyStatements.allInitiatingFlowsHaveValidProtocol();
             if (!validProtocolCounterparty) {
                 return false;
             }
         }
 
-        if (hasCounterpartyResult()) {
-            CombinationsHolder allCombinations = CombinationsHolder.fromBranch(statements);
-            //then if it's an initiatingFlow we check that all possible send and receive combinations match
-            CombinationsHolder counterpartyAllCombinations =
-                    CombinationsHolder.fromBranch(counterpartyClassResult.getStatements());
-
-            return allCombinations.checkIfMatchesAndDraw(counterpartyAllCombinations);
+        //the fixpoint on the loops can only be computed on the automata, the paths would be infinite
+        if (hasCounterpartyResult() && (matchingEngine == MatchingEngineEnum.AUTOMATON
+                || LoopBranchingStatement.getLoopAnalysis() == LoopAnalysisEnum.FIXPOINT)) {
+            return checkIfAutomataMatch(setupLinks);
+        }
+        else if (hasCounterpartyResult()) {
+            try {
+                if(!setupLinks && !CombinationsHolder.isSessionProjection()) {
+                    return CombinationsHolder.anyCombinationsMatch(statements, counterpartyClassResult.getStatements());
+                }
+                CombinationsHolder allCombinations = CombinationsHolder.fromBranch(statements);
+                //then if it's an initiatingFlow we check that all possible send and receive combinations match
+                CombinationsHolder counterpartyAllCombinations =
+                        CombinationsHolder.fromBranch(counterpartyClassResult.getStatements());
+
+                return setupLinks ? allCombinations.checkIfMatchesAndDraw(counterpartyAllCombinations)
+                        : allCombinations.checkIfMatches(counterpartyAllCombinations);
+            } catch (CombinationsBudgetExceededException e) {
+                //too many paths to be compared one by one, we fall back on the cheaper automata
+                LOGGER.warn("Class {}: {}, the protocol is checked in an approximate way{}",
+                        classDescription.getNameWithParent(), e.getMessage(),
+                        CombinationsHolder.isSessionProjection() ? " and without session projection" : "");
+                protocolFullyVerified = false;
+                sessionProjectionSkipped = CombinationsHolder.isSessionProjection();
+                return checkIfAutomataMatch(setupLinks);
+            }
         } else {
             //then if it's NOT an initiatingFlow we check that it doesn't call any send or receive
             //(remember that we inline the inlinable non initiating flow, so they won't be analyzed here
@@ -74,6 +163,37 @@ public class AnalysisResult {
         }
     }
 
+    //then if it's an initiatingFlow we check that the automata of the two flows have a matching path
+    private boolean checkIfAutomataMatch(boolean setupLinks) {
+        final ProtocolAutomaton automaton = ProtocolAutomaton.fromStatements(statements);
+        final ProtocolAutomaton counterpartyAutomaton =
+                ProtocolAutomaton.fromStatements(counterpartyClassResult.getStatements());
+        final boolean res = setupLinks ? automaton.checkIfMatchesAndDraw(counterpartyAutomaton)
+                : automaton.checkIfMatches(counterpartyAutomaton);
+        if(!automaton.isLastCheckComplete()) {
+            protocolFullyVerified = false;
+        }
+        return res;
+    }
+
+    /**
+     * @return false if the protocol check of this flow or of one of the initiating subflows of the two flows
+     * exceeded the {@link MatchingBudget} and the result is only approximate
+     */
+    public boolean isProtocolFullyVerified() {
+        return protocolFullyVerified && statements.allInitiatingFlowsFullyVerified()
+                && (!hasCounterpartyResult()
+                || counterpartyClassResult.getStatements().allInitiatingFlowsFullyVerified());
+    }
+
+    /**
+     * @return true if the session projection was enabled, but the protocol of this flow was checked on the automata,
+     * which don't project the events on the sessions, because the paths were too many for the {@link MatchingBudget}
+     */
+    public boolean isSessionProjectionSkipped() {
+        return sessionProjectionSkipped;
+    }
+
     public ClassDescriptionContainer getClassDescription() {
         return classDescription;
     }
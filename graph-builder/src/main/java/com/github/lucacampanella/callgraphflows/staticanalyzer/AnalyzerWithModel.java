@@ -1,5 +1,6 @@
 package com.github.lucacampanella.callgraphflows.staticanalyzer;
 
+import com.github.lucacampanella.callgraphflows.staticanalyzer.matchers.ElementClassificationCache;
 import com.github.lucacampanella.callgraphflows.staticanalyzer.matchers.MatcherHelper;
 import net.corda.core.flows.FlowLogic;
 import net.corda.core.flows.InitiatedBy;
@@ -7,18 +8,22 @@ import net.corda.core.flows.StartableByRPC;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import spoon.reflect.CtModel;
-import spoon.reflect.code.CtExpression;
-import spoon.reflect.declaration.CtAnnotation;
 import spoon.reflect.declaration.CtClass;
 import spoon.reflect.declaration.CtElement;
 import spoon.reflect.declaration.CtMethod;
+import spoon.reflect.declaration.CtType;
+import spoon.reflect.reference.CtTypeReference;
 import spoon.reflect.visitor.filter.AnnotationFilter;
 import spoon.reflect.visitor.filter.NamedElementFilter;
 import spoon.reflect.visitor.filter.TypeFilter;
-import spoon.support.reflect.code.CtFieldReadImpl;
 
-import java.lang.annotation.Annotation;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 
 public class AnalyzerWithModel {
@@ -27,20 +32,62 @@ public class AnalyzerWithModel {
 
     private static boolean drawArrows = true;
 
+    private static int analysisThreads = 1;
+
     protected CtModel model;
     protected String analysisName;
-    protected ClassCallStackHolder currClassCallStackHolder = null;
-
-    private Map<CtClass, AnalysisResult> classToAnalysisResultMap = new HashMap<>();
+    //each thread analyzes its own flows, see analyzeFlowLogicClassesInParallel
+    private final ThreadLocal<ClassCallStackHolder> currClassCallStackHolder = new ThreadLocal<>();
+
+    //each class is analyzed only once, also when it's needed by flows analyzed in parallel
+    private final Map<CtClass, PendingAnalysis> classToAnalysisResultMap = new ConcurrentHashMap<>();
+    //the analysis each thread is waiting for, to detect flows that depend on their own analysis. The check and the
+    //registration of a thread are done together while holding the map, see waitForAnalysis
+    private final Map<Thread, PendingAnalysis> waitingFor = new HashMap<>();
+    //the top level classes the analysis running on each thread depends on, see AnalysisResult#getDependencies
+    private final ThreadLocal<Set<String>> currDependencies = new ThreadLocal<>();
+    //the results of the flows used by the analysis running on each thread, see AnalysisResult#getAnalyzedFlows
+    private final ThreadLocal<List<AnalysisResult>> currAnalyzedFlows = new ThreadLocal<>();
+    //true on the threads of the parallel analysis, which don't set up the links, see #setupLinks
+    private final ThreadLocal<Boolean> linksDeferred = ThreadLocal.withInitial(() -> false);
+
+    private final MessageTypeTable messageTypeTable = new MessageTypeTable();
+
+    private final ElementClassificationCache classificationCache = new ElementClassificationCache();
+    private final MethodBodySummaryCache methodBodySummaryCache = new MethodBodySummaryCache();
+    private final SubtypeCache subtypeCache = new SubtypeCache();
+    //a class without call method is mapped to an empty optional
+    private final Map<CtClass, Optional<CtMethod>> callMethods = Collections.synchronizedMap(new IdentityHashMap<>());
+
+    private final Map<Class, List<CtClass>> classesByAnnotation = new ConcurrentHashMap<>();
+    private InitiatedByIndex initiatedByIndex = null;
+    private TypeHierarchyIndex typeHierarchyIndex = null;
+
+    private static final class PendingAnalysis {
+        private final CompletableFuture<AnalysisResult> result = new CompletableFuture<>();
+        private final Thread owner = Thread.currentThread();
+    }
 
     public CtModel getModel() {
         return model;
     }
 
+    public static boolean isDrawArrows() {
+        return drawArrows;
+    }
+
     public static void setDrawArrows(boolean drawArrows) {
         AnalyzerWithModel.drawArrows = drawArrows;
     }
 
+    public static int getAnalysisThreads() {
+        return analysisThreads;
+    }
+
+    public static void setAnalysisThreads(int analysisThreads) {
+        AnalyzerWithModel.analysisThreads = Math.max(1, analysisThreads);
+    }
+
     public <T> CtClass<T> getClass(Class<T> klass) {
         final List<CtClass> results = model.getElements(new NamedElementFilter(CtClass.class, klass.getSimpleName()));
         for(CtClass ctClass : results) {
@@ -60,132 +107,360 @@ public class AnalyzerWithModel {
     }
 
     public AnalysisResult analyzeFlowLogicClass(CtClass klass) throws AnalysisErrorException {
-        if(classToAnalysisResultMap.containsKey(klass)) {
+        final PendingAnalysis newAnalysis = new PendingAnalysis();
+        final PendingAnalysis pendingAnalysis = classToAnalysisResultMap.putIfAbsent(klass, newAnalysis);
+        if(pendingAnalysis != null) {
             LOGGER.info("*** class {} already analyzed, using cached result", klass.getQualifiedName());
-            return classToAnalysisResultMap.get(klass);
+            final AnalysisResult res = waitForAnalysis(pendingAnalysis, klass);
+            addDependencies(res.getDependencies());
+            addAnalyzedFlow(res);
+            return res;
         }
-        else {
-            if(!klass.isSubtypeOf(MatcherHelper.getTypeReference(FlowLogic.class))) {
-                throw new IllegalArgumentException("Class " +klass.getQualifiedName() +" doesn't extend FlowLogic");
+        final ClassCallStackHolder previousClassCallStackHolder = currClassCallStackHolder.get();
+        final Set<String> enclosingDependencies = beginDependencies();
+        final List<AnalysisResult> enclosingAnalyzedFlows = currAnalyzedFlows.get();
+        currAnalyzedFlows.set(new ArrayList<>());
+        try {
+            final AnalysisResult res = analyzeNotCachedFlowLogicClass(klass);
+            res.setDependencies(Collections.unmodifiableSet(currDependencies.get()));
+            res.setAnalyzedFlows(Collections.unmodifiableList(currAnalyzedFlows.get()));
+            newAnalysis.result.complete(res);
+            if(enclosingAnalyzedFlows != null) {
+                enclosingAnalyzedFlows.add(res);
             }
-            LOGGER.info("*** analyzing class {}", klass.getQualifiedName());
-            final CtMethod callMethod = StaticAnalyzerUtils.findCallMethod(klass);
-            if (callMethod == null) {
-                throw new AnalysisErrorException(klass, "No call method found");
-            }
-            if (callMethod.isAbstract()) {
-                String exMessage = "Found only an abstract call method";
-                if (callMethod.getParent() instanceof CtClass) {
-                    exMessage += " in class " + ((CtClass) (callMethod).getParent()).getQualifiedName();
-                }
-                throw new AnalysisErrorException(klass, exMessage);
+            return res;
+        } catch (AnalysisErrorException | RuntimeException | Error e) {
+            //a class that couldn't be analyzed is not cached, the following calls try again
+            classToAnalysisResultMap.remove(klass, newAnalysis);
+            newAnalysis.result.completeExceptionally(e);
+            throw e;
+        } finally {
+            endDependencies(enclosingDependencies);
+            currAnalyzedFlows.set(enclosingAnalyzedFlows);
+            //the analysis of a subflow or of a responder doesn't change the class of the flow that needs it
+            currClassCallStackHolder.set(previousClassCallStackHolder);
+        }
+    }
+
+    private AnalysisResult analyzeNotCachedFlowLogicClass(CtClass klass) throws AnalysisErrorException {
+        if(!subtypeCache.isSubtypeOf(klass.getReference(), FlowLogic.class)) {
+            throw new IllegalArgumentException("Class " +klass.getQualifiedName() +" doesn't extend FlowLogic");
+        }
+        LOGGER.info("*** analyzing class {}", klass.getQualifiedName());
+        final CtMethod callMethod = getCallMethod(klass);
+        if (callMethod == null) {
+            throw new AnalysisErrorException(klass, "No call method found");
+        }
+        if (callMethod.isAbstract()) {
+            String exMessage = "Found only an abstract call method";
+            if (callMethod.getParent() instanceof CtClass) {
+                exMessage += " in class " + ((CtClass) (callMethod).getParent()).getQualifiedName();
             }
+            throw new AnalysisErrorException(klass, exMessage);
+        }
 
-            setCurrentAnalyzingClass(klass);
+        setCurrentAnalyzingClass(klass);
+        for(CtTypeReference<?> stackClass : getCurrClassCallStackHolder().getClassStack()) {
+            addDependency(stackClass.getTypeDeclaration());
+        }
 
-            AnalysisResult res = new AnalysisResult(ClassDescriptionContainer.fromClass(klass));
-            res.getClassDescription().setReturnType(StaticAnalyzerUtils.nullifyIfVoidTypeAndGetString(callMethod.getType()));
+        AnalysisResult res = new AnalysisResult(ClassDescriptionContainer.fromClass(klass));
+        res.getClassDescription().setReturnType(StaticAnalyzerUtils.nullifyIfVoidTypeAndGetString(callMethod.getType(),
+                this));
 
-            final Branch interestingStatements = MatcherHelper.fromCtStatementsToStatements(
-                    callMethod.getBody().getStatements(), this);
-            res.setStatements(interestingStatements);
+        final Branch interestingStatements = MatcherHelper.fromCtStatementsToStatements(
+                callMethod.getBody().getStatements(), this);
+        res.setStatements(interestingStatements);
 
-            //is it only a "container" flow with no initiating call or also calls initiateFlow(...)?
-            final boolean isInitiatingFlow =
-                    interestingStatements.getInitiateFlowStatementAtThisLevel().isPresent();
+        //is it only a "container" flow with no initiating call or also calls initiateFlow(...)?
+        final boolean isInitiatingFlow =
+                interestingStatements.getInitiateFlowStatementAtThisLevel().isPresent();
 
-            LOGGER.debug("Contains initiate call? {}", isInitiatingFlow);
-            if (isInitiatingFlow) {
-                CtClass initiatedFlowClass = getDeeperClassInitiatedBy(klass);
+        LOGGER.debug("Contains initiate call? {}", isInitiatingFlow);
+        if (isInitiatingFlow) {
+            CtClass initiatedFlowClass = getDeeperClassInitiatedBy(klass);
 
-                if (initiatedFlowClass != null) {
-                    res.setCounterpartyClassResult(analyzeFlowLogicClass(initiatedFlowClass));
-                }
-                else {
-                    LOGGER.error("Class {} contains initiateFlow call, but can't find corresponding class", klass.getQualifiedName());
-                }
-                if(drawArrows) {
-                    final boolean validProtocol =
-                            res.checkIfContainsValidProtocolAndSetupLinks();//check the protocol and draws possible links
-                    LOGGER.info("Class {} contains valid protocol? {}", klass.getQualifiedName(), validProtocol);
+            if (initiatedFlowClass != null) {
+                res.setCounterpartyClassResult(analyzeFlowLogicClass(initiatedFlowClass));
+            }
+            else {
+                LOGGER.error("Class {} contains initiateFlow call, but can't find corresponding class", klass.getQualifiedName());
+            }
+            if(drawArrows && linksDeferred.get()) {
+                LOGGER.debug("Analyzing in parallel, the links are set up before drawing the class");
+            }
+            else if(drawArrows) {
+                //the links are published all together once found, see CompanionEvent#publishLinks
+                final boolean validProtocol = res.checkIfContainsValidProtocolAndSetupLinks();
+                LOGGER.info("Class {} contains valid protocol? {}", klass.getQualifiedName(), validProtocol);
+            }
+            else {
+                LOGGER.info("Set on not drawing arrows, the protocol is not figured out");
+            }
+        }
+
+        return res;
+    }
+
+    private AnalysisResult waitForAnalysis(PendingAnalysis pendingAnalysis, CtClass klass)
+            throws AnalysisErrorException {
+        if(!pendingAnalysis.result.isDone()) {
+            //otherwise two threads waiting for each other could both register before seeing the other one
+            synchronized (waitingFor) {
+                if(isWaitedByOwner(pendingAnalysis)) {
+                    throw new AnalysisErrorException(klass, "The analysis of the class depends on itself");
                 }
-                else {
-                    LOGGER.info("Set on not drawing arrows, the protocol is not figured out");
+                waitingFor.put(Thread.currentThread(), pendingAnalysis);
+            }
+        }
+        try {
+            return pendingAnalysis.result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AnalysisErrorException(klass, "Interrupted while waiting for the analysis");
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if(cause instanceof AnalysisErrorException) {
+                throw (AnalysisErrorException) cause;
+            }
+            if(cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw (RuntimeException) cause;
+        } finally {
+            synchronized (waitingFor) {
+                waitingFor.remove(Thread.currentThread());
+            }
+        }
+    }
+
+    //true if the thread analyzing the class is, directly or not, waiting for the current thread.
+    //Called holding waitingFor
+    private boolean isWaitedByOwner(PendingAnalysis pendingAnalysis) {
+        PendingAnalysis curr = pendingAnalysis;
+        for(int i = 0; curr != null && i <= waitingFor.size(); ++i) {
+            if(curr.owner == Thread.currentThread()) {
+                return true;
+            }
+            curr = waitingFor.get(curr.owner);
+        }
+        return false;
+    }
+
+    /**
+     * Analyzes the classes with {@link #getAnalysisThreads()} threads. The results are cached, so that the following
+     * calls to {@link #analyzeFlowLogicClass(CtClass)} return them. The subflows and responders shared by several
+     * classes are analyzed only once. The links of the classes are not set up, see {@link #setupLinks(AnalysisResult)}.
+     * Errors are not reported here: a class that couldn't be analyzed is analyzed again, and the error reported,
+     * when {@link #analyzeFlowLogicClass(CtClass)} is called for it.
+     */
+    public void analyzeFlowLogicClassesInParallel(List<CtClass> classes) {
+        if(analysisThreads <= 1 || classes.size() <= 1) {
+            return;
+        }
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.min(analysisThreads, classes.size()));
+        try {
+            List<Future<AnalysisResult>> results = new ArrayList<>(classes.size());
+            for(CtClass klass : classes) {
+                results.add(executor.submit(() -> analyzeFlowLogicClassDeferringLinks(klass)));
+            }
+            //all the analyses must be over before returning, also if some of them failed
+            for(Future<AnalysisResult> result : results) {
+                try {
+                    result.get();
+                } catch (ExecutionException e) {
+                    LOGGER.debug("Couldn't analyze a class in parallel, it will be analyzed again", e.getCause());
                 }
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            executor.shutdown();
+        }
+    }
 
-            classToAnalysisResultMap.put(klass, res);
-            return res;
+    private AnalysisResult analyzeFlowLogicClassDeferringLinks(CtClass klass) throws AnalysisErrorException {
+        linksDeferred.set(true);
+        try {
+            return analyzeFlowLogicClass(klass);
+        } finally {
+            linksDeferred.set(false);
+        }
+    }
+
+    /**
+     * Sets up the links of the analysis and of the flows it used, in the same order as the analysis on a single
+     * thread does: the links of each flow right after the ones of the flows it used. The parallel analysis doesn't
+     * set up the links, since the order in which the threads would do it changes the graphs, for example when two
+     * initiators share a responder. The links already set up are not set up again.
+     */
+    public void setupLinks(AnalysisResult analysisResult) {
+        if(drawArrows) {
+            setupLinks(analysisResult, Collections.newSetFromMap(new IdentityHashMap<>()));
+        }
+    }
+
+    private static void setupLinks(AnalysisResult analysisResult, Set<AnalysisResult> visited) {
+        if(!visited.add(analysisResult)) {
+            return;
+        }
+        for(AnalysisResult analyzedFlow : analysisResult.getAnalyzedFlows()) {
+            setupLinks(analyzedFlow, visited);
+        }
+        if(analysisResult.hasCounterpartyResult()) {
+            analysisResult.checkIfContainsValidProtocolAndSetupLinks();
+        }
+    }
+
+    private void addAnalyzedFlow(AnalysisResult analysisResult) {
+        final List<AnalysisResult> analyzedFlows = currAnalyzedFlows.get();
+        if(analyzedFlows != null) {
+            analyzedFlows.add(analysisResult);
         }
     }
 
     public void setCurrentAnalyzingClass(CtClass<?> klass) {
-        currClassCallStackHolder = ClassCallStackHolder.fromCtClass(klass);
+        currClassCallStackHolder.set(ClassCallStackHolder.fromCtClass(klass, subtypeCache));
     }
 
     public ClassCallStackHolder getCurrClassCallStackHolder() {
-        return currClassCallStackHolder;
+        return currClassCallStackHolder.get();
     }
 
-    public List<CtClass> getClassesByAnnotation(Class annotationClass) {
-        List<CtElement> elements = model.getElements(new AnnotationFilter<>(annotationClass));
+    /**
+     * Records that the analysis running on this thread depends on the source of the type
+     */
+    public void addDependency(CtType<?> type) {
+        final Set<String> dependencies = currDependencies.get();
+        if(dependencies != null && type != null) {
+            dependencies.add(type.getTopLevelType().getQualifiedName());
+        }
+    }
 
-        return  elements.stream()
-                .map(CtClass.class::cast)
-                .collect(Collectors.toList());
+    public void addDependencies(Collection<String> dependencies) {
+        final Set<String> currentDependencies = currDependencies.get();
+        if(currentDependencies != null) {
+            currentDependencies.addAll(dependencies);
+        }
+    }
+
+    /**
+     * Starts collecting separately the dependencies of a step of the analysis
+     * @return the dependencies collected until now, to be passed to {@link #endDependencies(Set)}
+     */
+    public Set<String> beginDependencies() {
+        final Set<String> enclosingDependencies = currDependencies.get();
+        currDependencies.set(new HashSet<>());
+        return enclosingDependencies;
+    }
+
+    /**
+     * Ends the step started with {@link #beginDependencies()}, its dependencies are added to the enclosing ones
+     * @return the dependencies of the step
+     */
+    public Set<String> endDependencies(Set<String> enclosingDependencies) {
+        final Set<String> stepDependencies = currDependencies.get();
+        currDependencies.set(enclosingDependencies);
+        if(enclosingDependencies != null) {
+            enclosingDependencies.addAll(stepDependencies);
+        }
+        return stepDependencies;
+    }
+
+    public MessageTypeTable getMessageTypeTable() {
+        return messageTypeTable;
+    }
+
+    /**
+     * @return the cache of the matchers and relevant invocations found under the elements of the model
+     */
+    public ElementClassificationCache getClassificationCache() {
+        return classificationCache;
+    }
+
+    /**
+     * @return the cache of the bodies of the methods inlined by the method invocations
+     */
+    public MethodBodySummaryCache getMethodBodySummaryCache() {
+        return methodBodySummaryCache;
+    }
+
+    /**
+     * Same result as {@link StaticAnalyzerUtils#findCallMethod(CtClass)}, looked up only once per class
+     */
+    public CtMethod getCallMethod(CtClass klass) {
+        Optional<CtMethod> res = callMethods.get(klass);
+        if(res == null) {
+            res = Optional.ofNullable(StaticAnalyzerUtils.findCallMethod(klass));
+            callMethods.put(klass, res);
+        }
+        return res.orElse(null);
+    }
+
+    /**
+     * @return the cache of the subtype checks between the types of the model
+     */
+    public SubtypeCache getSubtypeCache() {
+        return subtypeCache;
+    }
+
+    public List<CtClass> getClassesByAnnotation(Class annotationClass) {
+        //the model doesn't change once loaded, so each annotation is looked for only once
+        final List<CtClass> classes = classesByAnnotation.computeIfAbsent(annotationClass, key -> {
+            List<CtElement> elements = model.getElements(new AnnotationFilter<>(annotationClass));
+
+            return  elements.stream()
+                    .map(CtClass.class::cast)
+                    .collect(Collectors.toList());
+        });
+        return new ArrayList<>(classes);
     }
 
     public List<CtClass> getClassesToBeAnalyzed() {
         return getClassesByAnnotation(StartableByRPC.class);
     }
 
+    private synchronized InitiatedByIndex getInitiatedByIndex() {
+        if(initiatedByIndex == null) {
+            initiatedByIndex = InitiatedByIndex.fromClasses(getClassesByAnnotation(InitiatedBy.class));
+        }
+        return initiatedByIndex;
+    }
 
-        public CtClass getDeeperClassInitiatedBy(CtClass initiatingClass) {
+    public CtClass getDeeperClassInitiatedBy(CtClass initiatingClass) {
         CtClass deeperInitiatedByClass = null;
-        final List<CtClass> generalInitiatedByList = getClassesByAnnotation(InitiatedBy.class);
-        for(CtClass klass : generalInitiatedByList) {
-
-            Optional<CtAnnotation<? extends Annotation>> initiatedByAnnotationOptional =
-                    klass.getAnnotations().stream().filter(ctAnnotation -> {
-                        boolean result = false;
-                        try {
-                            result = ctAnnotation.getActualAnnotation().annotationType() == InitiatedBy.class;
-                        } catch (Exception e) {
-                            LOGGER.warn("Couldn't retrieve real representation for annotation {} for class {}, " +
-                                    "continuing without analyzing this one", ctAnnotation, klass.getQualifiedName());
-                        }
-                        return result;
-                    }).findFirst();
-            if(initiatedByAnnotationOptional.isPresent()) {
-                final CtExpression referenceToClass =
-                        initiatedByAnnotationOptional.get().getAllValues().get("value");
-
-                if(((CtFieldReadImpl) referenceToClass).getVariable().getDeclaringType() == null){
-                    LOGGER.warn("Couldn't retrieve declaration of class declared in the @InitiatedBy " +
-                            "annotation. Skipping this class in finding the responder flow " +
-                            "\nThis could result in a problem in the produced graph." +
-                            " \nDeclared reference: {} \nDeclaring class: {} " +
-                            "\nInitiatingClass {}", referenceToClass, klass, initiatingClass);
-                    continue;
-                }
-
-                final CtClass correspondingInitiatingClass = (CtClass) ((CtFieldReadImpl) referenceToClass).getVariable()
-                        .getDeclaringType().getTypeDeclaration();
-
-                if ((correspondingInitiatingClass.getReference().isSubtypeOf(initiatingClass.getReference())
-                || initiatingClass.getReference().isSubtypeOf(correspondingInitiatingClass.getReference())) &&
-                        (deeperInitiatedByClass == null ||
-                                klass.getReference().isSubtypeOf(deeperInitiatedByClass.getReference()))) {
-                    deeperInitiatedByClass = klass;
-                }
+        final TypeHierarchyIndex index = getTypeHierarchyIndex();
+        for(CtClass klass : getInitiatedByIndex().getCandidateResponders(initiatingClass)) {
+            if (deeperInitiatedByClass == null || isSubclassOf(index, klass, deeperInitiatedByClass)) {
+                deeperInitiatedByClass = klass;
             }
-
         }
 
         return deeperInitiatedByClass;
     }
 
+    //the classes that are not part of the model are compared on their references
+    private static boolean isSubclassOf(TypeHierarchyIndex index, CtClass klass, CtClass superClass) {
+        if(index.contains(klass) && index.contains(superClass)) {
+            return index.isSubclassOf(klass, superClass);
+        }
+        return klass.getReference().isSubtypeOf(superClass.getReference());
+    }
+
+    private synchronized TypeHierarchyIndex getTypeHierarchyIndex() {
+        if(typeHierarchyIndex == null) {
+            typeHierarchyIndex = TypeHierarchyIndex.fromClasses(model.getElements(new TypeFilter<>(CtClass.class)));
+        }
+        return typeHierarchyIndex;
+    }
+
     public CtClass getFurthestAwaySubclass(CtClass superClass) {
+        final TypeHierarchyIndex index = getTypeHierarchyIndex();
+        if(index.contains(superClass)) {
+            return index.getFurthestAwaySubclass(superClass);
+        }
+
+        //the class is not part of the model, its subclasses are looked for in the whole model
         List<CtClass> allClasses = model.getElements(new TypeFilter<>(CtClass.class));
 
         CtClass furthestAway = superClass;
@@ -201,6 +476,11 @@ public class AnalyzerWithModel {
     }
 
     public List<CtClass> getAllSubClassesIncludingThis(CtClass superClass) {
+        final TypeHierarchyIndex index = getTypeHierarchyIndex();
+        if(index.contains(superClass)) {
+            return index.getSubClassesIncludingThis(superClass);
+        }
+
         List<CtClass> allClasses = model.getElements(new TypeFilter<>(CtClass.class));
 
         return allClasses.stream().filter(klass -> klass.isSubtypeOf(superClass.getReference()))
@@ -106,6 +106,15 @@ public class Branch implements Iterable<StatementInterface> {
         return statements.stream().allMatch(StatementInterface::checkIfContainsValidProtocolAndSetupLinks);
     }
 
+    //same as allInitiatingFlowsHaveValidProtocolAndSetupLinks, without creating any link
+    public boolean allInitiatingFlowsHaveValidProtocol() {
+        return statements.stream().allMatch(StatementInterface::checkIfContainsValidProtocol);
+    }
+
+    public boolean allInitiatingFlowsFullyVerified() {
+        return statements.stream().allMatch(StatementInterface::isProtocolFullyVerified);
+    }
+
     public boolean containsSameStatementsAs(Branch otherBranch) {
         final List<StatementInterface> otherStatements = otherBranch.getStatements();
         if(this.statements.size() != otherStatements.size()) {
@@ -0,0 +1,26 @@
+package com.github.lucacampanella.callgraphflows.staticanalyzer;
+
+import java.util.function.Supplier;
+
+/**
+ * Immutable summary of the combinations of a statement, computed the first time it's requested and then reused
+ * every time the statement is walked again, for example by an enclosing branch or by the different flows that
+ * inline the same subflow.
+ */
+public final class CachedCombinations {
+
+    private volatile CombinationsHolder summary = null;
+
+    /**
+     * @param computation computes the combinations of the statement, called only if not yet cached
+     * @return the cached combinations, immutable
+     */
+    public CombinationsHolder get(Supplier<CombinationsHolder> computation) {
+        CombinationsHolder res = summary;
+        if(res == null) {
+            res = computation.get().toImmutable();
+            summary = res;
+        }
+        return res;
+    }
+}
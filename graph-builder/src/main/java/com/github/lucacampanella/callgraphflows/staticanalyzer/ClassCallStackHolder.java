@@ -1,25 +1,41 @@
 package com.github.lucacampanella.callgraphflows.staticanalyzer;
 
-import com.github.lucacampanella.callgraphflows.staticanalyzer.matchers.MatcherHelper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import spoon.reflect.code.CtInvocation;
 import spoon.reflect.code.CtThisAccess;
 import spoon.reflect.declaration.CtClass;
 import spoon.reflect.declaration.CtMethod;
+import spoon.reflect.declaration.CtTypeParameter;
 import spoon.reflect.reference.CtTypeParameterReference;
 import spoon.reflect.reference.CtTypeReference;
 
 import java.util.*;
+import java.util.stream.Collectors;
 
 public class ClassCallStackHolder {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(ClassCallStackHolder.class);
 
     private List<CtTypeReference<?>> classStack = new ArrayList<>(1);
+    private List<String> classStackDescription = null;
+    //for each reference in the stack, the type parameters its actual type arguments are bound to
+    private final Map<CtTypeReference<?>, List<CtTypeParameter>> boundTypeParameters = new IdentityHashMap<>();
+    private final SubtypeCache subtypeCache;
+
+    private ClassCallStackHolder(SubtypeCache subtypeCache) {
+        this.subtypeCache = subtypeCache;
+    }
 
     public static ClassCallStackHolder fromCtClass(CtClass klass) {
-        ClassCallStackHolder classCallStackHolder = new ClassCallStackHolder();
+        return fromCtClass(klass, new SubtypeCache());
+    }
+
+    /**
+     * @param subtypeCache the cache of the model the class belongs to
+     */
+    public static ClassCallStackHolder fromCtClass(CtClass klass, SubtypeCache subtypeCache) {
+        ClassCallStackHolder classCallStackHolder = new ClassCallStackHolder(subtypeCache);
 
         classCallStackHolder.classStack.add(klass.getReference());
 
@@ -72,11 +88,14 @@ public class ClassCallStackHolder {
     public CtTypeReference resolveEventualGenerics(CtTypeReference elem) {
         if(elem instanceof CtTypeParameterReference) { //is a generics
             CtTypeParameterReference typeParameterRef = (CtTypeParameterReference) elem;
+            final CtTypeParameter typeParameter = typeParameterRef.getTypeDeclaration();
             //klass.getSuperclass().getActualTypeArguments().get(0).getTypeParameterDeclaration()
-            for(CtTypeReference currRef : classStack) {
+            for(CtTypeReference<?> currRef : classStack) {
                 final List<CtTypeReference<?>> actualTypeArguments = currRef.getActualTypeArguments();
-                for(CtTypeReference actualTypeArg : actualTypeArguments) {
-                    if(actualTypeArg.getTypeParameterDeclaration().equals(typeParameterRef.getTypeDeclaration())) {
+                final List<CtTypeParameter> boundParameters = getBoundTypeParameters(currRef);
+                for(int i = 0; i < actualTypeArguments.size(); ++i) {
+                    if(boundParameters.get(i).equals(typeParameter)) {
+                        final CtTypeReference actualTypeArg = actualTypeArguments.get(i);
                         if(actualTypeArg == elem) {
                             LOGGER.warn("Couldn't retrieve generics for type {}, continuing without." +
                                     "This can result in the arrows not drawn correctly", elem);
@@ -87,7 +106,7 @@ public class ClassCallStackHolder {
                 }
             }
         }
-        else if(elem.isSubtypeOf(MatcherHelper.getTypeReference(Class.class))) {
+        else if(subtypeCache.isSubtypeOf(elem, Class.class)) {
             final List<CtTypeReference<?>> typeArgs = elem.getActualTypeArguments();
             if(typeArgs != null && !typeArgs.isEmpty()) {
                 return resolveEventualGenerics(typeArgs.get(0));
@@ -97,7 +116,25 @@ public class ClassCallStackHolder {
         return elem;
     }
 
+    //the declarations are looked up once per holder, instead of at every resolution
+    private List<CtTypeParameter> getBoundTypeParameters(CtTypeReference<?> ref) {
+        return boundTypeParameters.computeIfAbsent(ref, key -> key.getActualTypeArguments().stream()
+                .map(CtTypeReference::getTypeParameterDeclaration).collect(Collectors.toList()));
+    }
+
     public List<CtTypeReference<?>> getClassStack() {
         return classStack;
     }
+
+    /**
+     * @return the references in the class stack, with their generics. Two holders with the same description
+     * dispatch the methods and resolve the generics in the same way
+     */
+    public List<String> getClassStackDescription() {
+        if(classStackDescription == null) {
+            classStackDescription = Collections.unmodifiableList(
+                    classStack.stream().map(CtTypeReference::toString).collect(Collectors.toList()));
+        }
+        return classStackDescription;
+    }
 }
@@ -0,0 +1,10 @@
+package com.github.lucacampanella.callgraphflows.staticanalyzer;
+
+/**
+ * Thrown by {@link CombinationsHolder} when the limits of the {@link MatchingBudget} are exceeded
+ */
+public class CombinationsBudgetExceededException extends RuntimeException {
+    public CombinationsBudgetExceededException(String message) {
+        super(message);
+    }
+}
@@ -4,14 +4,67 @@ import com.github.lucacampanella.callgraphflows.staticanalyzer.instructions.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.stream.Collectors;
 
 public class CombinationsHolder {
 
-    private static class LockingBranch extends Branch {
+    /**
+     * Immutable cell of a persistent list of statements. A node points to the statement that precedes it, so
+     * that all the combinations that share a common prefix share the same nodes and appending to a combination
+     * doesn't need to copy it. Each node also holds the fingerprint of the identities of all the statements
+     * up to itself, computed incrementally when the node is created, and the list of these statements, computed
+     * the first time it's needed.
+     */
+    private static final class StatementNode {
+        private final StatementInterface statement;
+        private final StatementNode previous;
+        private final int size;
+        private final int fingerprint;
+        //a node can be shared by combinations used on several threads, at worst the list is computed twice
+        private volatile List<StatementInterface> statements = null;
+
+        private StatementNode(StatementInterface statement, StatementNode previous) {
+            this.statement = statement;
+            this.previous = previous;
+            this.size = previous == null ? 1 : previous.size + 1;
+            this.fingerprint = 31 * (previous == null ? 1 : previous.fingerprint)
+                    + System.identityHashCode(statement);
+        }
+
+        private List<StatementInterface> getStatements() {
+            List<StatementInterface> res = statements;
+            if(res == null) {
+                StatementInterface[] statementsArray = new StatementInterface[size];
+                int i = size - 1;
+                for(StatementNode node = this; node != null; node = node.previous) {
+                    statementsArray[i--] = node.statement;
+                }
+                res = Collections.unmodifiableList(Arrays.asList(statementsArray));
+                statements = res;
+            }
+            return res;
+        }
+    }
+
+    static class LockingBranch implements Iterable<StatementInterface> {
         private enum LockStatus {
             NO_LOCK,
             LOOP_BREAK_LOCKED, //break
@@ -19,6 +72,7 @@ public class CombinationsHolder {
             METHOD_LOCKED //return or throw
         }
 
+        private StatementNode last = null; //null if the branch is empty
         private LockStatus lockStatus = LockStatus.NO_LOCK;
 
         public LockingBranch() {
@@ -26,27 +80,36 @@ public class CombinationsHolder {
         }
 
         public LockingBranch(LockingBranch toCopy) {
-            this.statements = new ArrayList<>(toCopy.getStatements());
+            this.last = toCopy.last; //the nodes are immutable, no need to copy them
             this.lockStatus = toCopy.lockStatus;
         }
 
         public LockingBranch(StatementInterface singleInstr) {
-            super(singleInstr);
-            setLockStatusIfLockingInstr(singleInstr);
+            add(singleInstr);
         }
 
-        @Override
         public void add(StatementInterface instr) {
             if(instr != null && !isLocked()) { //add only if branch is not locked
-                statements.add(instr);
+                last = new StatementNode(instr, last);
                 setLockStatusIfLockingInstr(instr);
             }
         }
 
+        public void add(Branch branch) {
+            for (StatementInterface stmt : branch) {
+                add(stmt);
+            }
+        }
+
         public void add(LockingBranch branch) {
             if(!isLocked()) {
-                for (StatementInterface stmt : branch) {
-                    add(stmt);
+                if(last == null) {
+                    last = branch.last; //we can share all the nodes of the other branch
+                }
+                else {
+                    for (StatementInterface stmt : branch) {
+                        add(stmt);
+                    }
                 }
                 lockStatus = branch.lockStatus;
             }
@@ -64,6 +127,36 @@ public class CombinationsHolder {
             }
         }
 
+        public int size() {
+            return last == null ? 0 : last.size;
+        }
+
+        /**
+         * @return a hash of the identities of the statements and of the lock status, two branches for which
+         * {@link #containsSameStatementsAndLockStatusAs(LockingBranch)} is true have the same fingerprint
+         */
+        public int getFingerprint() {
+            return 31 * (last == null ? 1 : last.fingerprint) + lockStatus.ordinal();
+        }
+
+        /**
+         * @return the statements in order, not modifiable. The list is computed once for each last node, so
+         * iterating again on the same combination doesn't copy the statements again
+         */
+        public List<StatementInterface> getStatements() {
+            return last == null ? Collections.emptyList() : last.getStatements();
+        }
+
+        public List<StatementWithCompanionInterface> getOnlyStatementWithCompanionStatements() {
+            return getStatements().stream().filter(StatementInterface::needsCompanion)
+                    .map(StatementWithCompanionInterface.class::cast).collect(Collectors.toList());
+        }
+
+        @Override
+        public Iterator<StatementInterface> iterator() {
+            return getStatements().iterator();
+        }
+
         public boolean isLocked() {
             return lockStatus != LockStatus.NO_LOCK;
         }
@@ -104,13 +197,67 @@ public class CombinationsHolder {
         }
 
         public boolean containsSameStatementsAndLockStatusAs(LockingBranch otherBranch) {
-            return lockStatus == otherBranch.lockStatus && super.containsSameStatementsAs(otherBranch);
+            if(lockStatus != otherBranch.lockStatus || size() != otherBranch.size()) {
+                return false;
+            }
+            StatementNode node = last;
+            StatementNode otherNode = otherBranch.last;
+            while(node != otherNode) { //once the two reach the same node the rest of the prefix is shared
+                if(node.statement != otherNode.statement) {
+                    return false;
+                }
+                node = node.previous;
+                otherNode = otherNode.previous;
+            }
+            return true;
+        }
+
+        @Override
+        public String toString() {
+            return getStatements().toString();
+        }
+    }
+
+    //wrapper used to find the duplicate combinations with a hash set
+    private static final class CombinationKey {
+        private final LockingBranch combination;
+        private final int fingerprint;
+
+        private CombinationKey(LockingBranch combination) {
+            this.combination = combination;
+            this.fingerprint = combination.getFingerprint();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            CombinationKey that = (CombinationKey) o;
+            return fingerprint == that.fingerprint
+                    && combination.containsSameStatementsAndLockStatusAs(that.combination);
+        }
+
+        @Override
+        public int hashCode() {
+            return fingerprint;
         }
     }
     
     private static final Logger LOGGER = LoggerFactory.getLogger(CombinationsHolder.class);
+
+    //minimum number of pairs of combinations compared by a single task when matching in parallel
+    private static final int COMPARISONS_PER_TASK = 1024;
+
+    private static int matchingThreads = 1;
+    private static boolean sessionProjection = false;
+    private static ForkJoinPool matchingPool = null;
     
     private List<LockingBranch> allCombinations = new LinkedList<>();
+    private boolean immutable = false;
 
     public CombinationsHolder(boolean addEmptyCombination) {
         if(addEmptyCombination) {
@@ -133,28 +280,35 @@ public class CombinationsHolder {
     }
 
     private void addCombination(LockingBranch comb) {
+        checkModifiable();
         allCombinations.add(comb);
     }
 
     public void appendToAllCombinations(StatementInterface statement) {
+        checkModifiable();
         allCombinations.forEach(branch -> branch.add(statement));
     }
 
     public void appendToAllCombinations(Branch statements) {
+        checkModifiable();
         allCombinations.forEach(branch -> branch.add(statements));
     }
 
     public void combineWithBranch(Branch branch) {
+        checkModifiable();
         combineWith(fromBranch(branch));
     }
 
     public void mergeWith(CombinationsHolder otherHolder) {
+        checkModifiable();
         for(LockingBranch comb : otherHolder.allCombinations) {
             allCombinations.add(new LockingBranch(comb));
         }
+        checkCombinationsBudget(allCombinations.size());
     }
 
     public void combineWith(CombinationsHolder otherHolder) {
+        checkModifiable();
         if(allCombinations.isEmpty()) {
             for(LockingBranch comb : otherHolder.allCombinations) {
                 allCombinations.add(new LockingBranch(comb));
@@ -172,6 +326,7 @@ public class CombinationsHolder {
                         bothTogether.add(newBranch);
                         newAllCombinations.add(bothTogether);
                     }
+                    checkCombinationsBudget(newAllCombinations.size());
                 }
             }
             allCombinations = newAllCombinations;
@@ -201,137 +356,625 @@ public class CombinationsHolder {
         return holder;
     }
 
+    /**
+     * Checks if at least one combination of the first branch matches a combination of the second one, without
+     * creating any link. Differently from {@link #fromBranch(Branch)} the combinations of the two branches are
+     * generated one at a time, and the check stops at the first match: the combinations of the single statements
+     * of the branches, for example the paths of an if or of a loop, are still computed and cached, but not all the
+     * combinations of the branches. The compiled combinations of the second branch are kept, to compare them with
+     * each combination of the first branch without generating them again, only while they're at most
+     * {@link MatchingBudget#getMaxCombinations()}: after that they're generated again for each combination of the
+     * first branch, so that the memory used doesn't depend on the number of combinations of the branches.
+     * @param initiatingBranch the statements of the initiating flow
+     * @param initiatedBranch the statements of the initiated flow
+     * @return true if at least one pair of combinations matches
+     * @throws CombinationsBudgetExceededException if no match is found within the comparisons allowed by the
+     * {@link MatchingBudget}
+     */
+    public static boolean anyCombinationsMatch(Branch initiatingBranch, Branch initiatedBranch) {
+        long comparisons = 0;
+        final Iterator<LockingBranch> leftIterator = lazyCombinations(initiatingBranch);
+        final List<CompiledCombination> rightCombinations = new ArrayList<>();
+        boolean rightCombinationsComplete = false;
+        boolean rightCombinationsKept = true;
+        while(leftIterator.hasNext()) {
+            final CompiledCombination combLeft = compile(leftIterator.next());
+            final Iterator<CompiledCombination> rightIterator = rightCombinationsComplete
+                    ? rightCombinations.iterator() : compiledCombinations(initiatedBranch);
+            while(rightIterator.hasNext()) {
+                final CompiledCombination combRight = rightIterator.next();
+                if(!rightCombinationsComplete && rightCombinationsKept) {
+                    if(rightCombinations.size() < MatchingBudget.getMaxCombinations()) {
+                        rightCombinations.add(combRight);
+                    } else {
+                        rightCombinationsKept = false;
+                        rightCombinations.clear();
+                    }
+                }
+                if(++comparisons > MatchingBudget.getMaxComparisons()) {
+                    throw new CombinationsBudgetExceededException("No match found in "
+                            + MatchingBudget.getMaxComparisons() + " comparisons");
+                }
+                if(combLeft.matches(combRight)) {
+                    LOGGER.trace("Found a match after {} comparisons", comparisons);
+                    return true;
+                }
+            }
+            rightCombinationsComplete = rightCombinationsKept;
+        }
+        return false;
+    }
+
+    private static Iterator<CompiledCombination> compiledCombinations(Branch branch) {
+        final Iterator<LockingBranch> combinations = lazyCombinations(branch);
+        return new Iterator<CompiledCombination>() {
+            @Override
+            public boolean hasNext() {
+                return combinations.hasNext();
+            }
+
+            @Override
+            public CompiledCombination next() {
+                return compile(combinations.next());
+            }
+        };
+    }
+
+    static Iterator<LockingBranch> lazyCombinations(Branch branch) {
+        final CombinationsIterator iterator = new CombinationsIterator(branch.getStatements());
+        if(iterator.hasNext()) {
+            return iterator;
+        }
+        //every path ends in a flow break before a statement with multiple combinations, in this case
+        //fromBranch doesn't simply drop the paths, see combineWith
+        return fromBranch(branch).allCombinations.iterator();
+    }
+
+    /**
+     * Generates the combinations of a branch one at a time, in the same order as {@link #fromBranch(Branch)}.
+     * It's a depth first visit of the choices between the combinations of each statement: only the choices taken
+     * on the current path are kept, and all the paths generated from the same choice share its prefix.
+     */
+    private static final class CombinationsIterator implements Iterator<LockingBranch> {
+
+        private static final class Choice {
+            private final int nextStatementIndex;
+            private final LockingBranch prefix;
+            private final Iterator<LockingBranch> alternatives;
+
+            private Choice(int nextStatementIndex, LockingBranch prefix, Iterator<LockingBranch> alternatives) {
+                this.nextStatementIndex = nextStatementIndex;
+                this.prefix = prefix;
+                this.alternatives = alternatives;
+            }
+
+            private LockingBranch takeNextAlternative() {
+                LockingBranch res = new LockingBranch(prefix);
+                res.add(alternatives.next());
+                return res;
+            }
+        }
+
+        private final List<StatementInterface> statements;
+        private final Deque<Choice> choices = new ArrayDeque<>();
+        private boolean started = false;
+        private LockingBranch next = null;
+
+        private CombinationsIterator(List<StatementInterface> statements) {
+            this.statements = statements;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if(next == null) {
+                next = computeNext();
+            }
+            return next != null;
+        }
+
+        @Override
+        public LockingBranch next() {
+            if(!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            LockingBranch res = next;
+            next = null;
+            return res;
+        }
+
+        private LockingBranch computeNext() {
+            if(!started) {
+                started = true;
+                final LockingBranch res = completePath(new LockingBranch(), 0);
+                if(res != null) {
+                    return res;
+                }
+            }
+            while(!choices.isEmpty()) {
+                final Choice choice = choices.peek();
+                if(!choice.alternatives.hasNext()) {
+                    choices.pop();
+                    continue;
+                }
+                final LockingBranch res = completePath(choice.takeNextAlternative(), choice.nextStatementIndex);
+                if(res != null) {
+                    return res;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Adds to the path the statements starting from the given index, taking the first alternative at every
+         * statement with multiple combinations, as combineWith does
+         * @return the complete path or null if it is dropped because it is locked before a choice
+         */
+        private LockingBranch completePath(LockingBranch path, int fromIndex) {
+            for(int i = fromIndex; i < statements.size(); ++i) {
+                final StatementInterface instr = statements.get(i);
+                if(instr.isContinueLoopFlowBreak()) {
+                    path.setContinueLoopLock();
+                    return path;
+                }
+                if(instr.isBreakLoopFlowBreak()) {
+                    path.setBreakLoopLock();
+                    return path;
+                }
+                if(instr.isMethodFlowBreak()) {
+                    path.setMethodLock();
+                    return path;
+                }
+                final List<LockingBranch> alternatives = instr.getResultingCombinations().allCombinations;
+                if(alternatives.size() == 1) {
+                    alternatives.get(0).forEach(path::add);
+                }
+                else if(alternatives.size() > 1) {
+                    if(path.isLocked()) {
+                        return null;
+                    }
+                    final Choice choice = new Choice(i + 1, path, alternatives.iterator());
+                    choices.push(choice);
+                    path = choice.takeNextAlternative();
+                }
+            }
+            return path;
+        }
+    }
+
     public boolean isEmpty() {
         return allCombinations.isEmpty();
     }
 
+    /**
+     * Makes this holder immutable, so that it can be cached and shared: any further modification throws an
+     * {@link IllegalStateException}. A modifiable copy can be obtained with {@link #fromOtherCombination(CombinationsHolder)}
+     * @return this holder
+     */
+    public CombinationsHolder toImmutable() {
+        immutable = true;
+        return this;
+    }
+
+    public boolean isImmutable() {
+        return immutable;
+    }
+
+    private void checkModifiable() {
+        if(immutable) {
+            throw new IllegalStateException("Cached combinations can't be modified, copy them with fromOtherCombination");
+        }
+    }
+
+    private static void checkCombinationsBudget(int numberOfCombinations) {
+        if(numberOfCombinations > MatchingBudget.getMaxCombinations()) {
+            throw new CombinationsBudgetExceededException("More than " + MatchingBudget.getMaxCombinations()
+                    + " combinations");
+        }
+    }
+
+    /**
+     * Compares every combination of this holder with every combination of the other one and creates the links
+     * between the matching statements. The comparisons don't modify the statements, so when
+     * {@link #setMatchingThreads(int)} is more than one they are split in chunks and run in a fork join pool.
+     * The links are always created afterwards in the order of the sequential comparisons, so that the graph
+     * doesn't depend on the number of threads.
+     * @param otherCombinationsHolder the combinations of the initiated flow
+     * @return true if at least one pair of combinations matches
+     * @throws CombinationsBudgetExceededException if the number of comparisons would exceed the
+     * {@link MatchingBudget}, in this case no link is created
+     */
     public boolean checkIfMatchesAndDraw(CombinationsHolder otherCombinationsHolder) {
+        return checkIfMatches(otherCombinationsHolder, true);
+    }
+
+    /**
+     * Same as {@link #checkIfMatchesAndDraw(CombinationsHolder)}, without creating any link
+     */
+    public boolean checkIfMatches(CombinationsHolder otherCombinationsHolder) {
+        return checkIfMatches(otherCombinationsHolder, false);
+    }
+
+    private boolean checkIfMatches(CombinationsHolder otherCombinationsHolder, boolean createLinks) {
+        if(sessionProjection) {
+            return checkIfProjectionsMatch(otherCombinationsHolder, createLinks);
+        }
+        checkComparisonsBudget((long) allCombinations.size() * otherCombinationsHolder.allCombinations.size());
+        final List<CompiledCombination> leftCombinations = compile(this.allCombinations);
+        final List<CompiledCombination> rightCombinations = compile(otherCombinationsHolder.allCombinations);
+
+        final List<Match> matches = matchAll(leftCombinations, rightCombinations);
+
+        if(createLinks) {
+            CompanionEvent.publishLinks(() -> matches.forEach(Match::createGraphLinks));
+        }
+        return !matches.isEmpty();
+    }
+
+    /**
+     * Same as {@link #checkIfMatchesAndDraw(CombinationsHolder)}, but each combination of this holder is first
+     * split by target session: a combination matches if the events of each of its sessions match a combination
+     * of the other holder. The same projection is shared by many combinations, so it is compared only once.
+     */
+    private boolean checkIfProjectionsMatch(CombinationsHolder otherCombinationsHolder, boolean createLinks) {
+        final Map<List<CompanionEvent>, Integer> projectionIndexes = new HashMap<>();
+        final List<CompiledCombination> projections = new ArrayList<>();
+        final List<int[]> projectionsOfCombinations = new ArrayList<>(allCombinations.size());
+        for(LockingBranch comb : allCombinations) {
+            final Collection<List<CompanionEvent>> combProjections = projectOnSessions(eventsOf(comb));
+            final int[] indexes = new int[combProjections.size()];
+            int i = 0;
+            for(List<CompanionEvent> projection : combProjections) {
+                Integer index = projectionIndexes.get(projection);
+                if(index == null) {
+                    index = projections.size();
+                    projectionIndexes.put(projection, index);
+                    projections.add(new CompiledCombination(projection.toArray(new CompanionEvent[0])));
+                }
+                indexes[i++] = index;
+            }
+            projectionsOfCombinations.add(indexes);
+        }
+        LOGGER.trace("{} combinations projected on {} different session streams", allCombinations.size(),
+                projections.size());
+
+        checkComparisonsBudget((long) projections.size() * otherCombinationsHolder.allCombinations.size());
+        final List<CompiledCombination> rightCombinations = compile(otherCombinationsHolder.allCombinations);
+        final List<List<Match>> matchesOfProjections = new ArrayList<>(projections.size());
+        for(int i = 0; i < projections.size(); ++i) {
+            matchesOfProjections.add(new ArrayList<>());
+        }
+        matchAll(projections, rightCombinations).forEach(match -> matchesOfProjections.get(match.leftIndex).add(match));
+
         boolean foundOneMatch = false;
-        for(Branch combLeft : this.allCombinations) {
-            for(Branch combRight : otherCombinationsHolder.allCombinations) {
-                final List<MatchingStatements> matchingStatements = twoCombinationsMatch(combLeft, combRight);
-                if(matchingStatements != null) {
-                    foundOneMatch = true;
-                    matchingStatements.forEach(MatchingStatements::createGraphLink);
+        final boolean[] linked = new boolean[projections.size()];
+        final List<Match> matchesToLink = new ArrayList<>();
+        for(int[] indexes : projectionsOfCombinations) {
+            if(Arrays.stream(indexes).noneMatch(index -> matchesOfProjections.get(index).isEmpty())) {
+                foundOneMatch = true;
+                for(int index : indexes) {
+                    if(!linked[index]) {
+                        linked[index] = true;
+                        matchesToLink.addAll(matchesOfProjections.get(index));
+                    }
                 }
             }
         }
+        if(createLinks) {
+            CompanionEvent.publishLinks(() -> matchesToLink.forEach(Match::createGraphLinks));
+        }
         return foundOneMatch;
     }
 
+    /**
+     * @return the events grouped by target session, in order of first appearance. The events without a session,
+     * for example a subflow that receives a list of sessions, belong to every session and are put in each group at
+     * their original position. A combination without sessions gives a single projection with all its events
+     */
+    private static Collection<List<CompanionEvent>> projectOnSessions(List<CompanionEvent> events) {
+        Map<String, List<CompanionEvent>> bySession = new LinkedHashMap<>();
+        for(CompanionEvent event : events) {
+            event.getStatement().getTargetSessionName()
+                    .ifPresent(session -> bySession.putIfAbsent(session, new ArrayList<>()));
+        }
+        if(bySession.isEmpty()) {
+            return Collections.singletonList(events);
+        }
+        for(CompanionEvent event : events) {
+            final Optional<String> session = event.getStatement().getTargetSessionName();
+            if(session.isPresent()) {
+                bySession.get(session.get()).add(event);
+            }
+            else {
+                bySession.values().forEach(projection -> projection.add(event));
+            }
+        }
+        return bySession.values();
+    }
+
+    private static void checkComparisonsBudget(long comparisons) {
+        if(comparisons > MatchingBudget.getMaxComparisons()) {
+            throw new CombinationsBudgetExceededException(comparisons + " comparisons needed, more than "
+                    + MatchingBudget.getMaxComparisons());
+        }
+    }
+
+    /**
+     * @return the pairs of combinations that match, in the order of the sequential comparisons: the pair made of the
+     * left combination i and the right combination j has index i * rightCombinations.size() + j. Only the pairs that
+     * match are kept
+     */
+    private static List<Match> matchAll(List<CompiledCombination> leftCombinations,
+                                        List<CompiledCombination> rightCombinations) {
+        final long numberOfPairs = (long) leftCombinations.size() * rightCombinations.size();
+        if(matchingThreads > 1 && numberOfPairs > COMPARISONS_PER_TASK) {
+            return getMatchingPool().invoke(new MatchingTask(leftCombinations, rightCombinations, 0, numberOfPairs));
+        }
+        return matchPairs(leftCombinations, rightCombinations, 0, numberOfPairs);
+    }
+
+    //the pairs with index in [from, to) that match, see matchAll
+    private static List<Match> matchPairs(List<CompiledCombination> leftCombinations,
+                                          List<CompiledCombination> rightCombinations, long from, long to) {
+        List<Match> res = new ArrayList<>();
+        for(long i = from; i < to; ++i) {
+            final int leftIndex = (int) (i / rightCombinations.size());
+            final List<MatchingStatements> matchingStatements = twoCombinationsMatch(leftCombinations.get(leftIndex),
+                    rightCombinations.get((int) (i % rightCombinations.size())));
+            if(matchingStatements != null) {
+                res.add(new Match(leftIndex, matchingStatements));
+            }
+        }
+        return res;
+    }
+
+    //a single pool shared by all the comparisons, replaced only when the number of threads changes. Its threads
+    //are daemon threads that terminate when idle, so it doesn't need to be shut down
+    private static synchronized ForkJoinPool getMatchingPool() {
+        if(matchingPool == null || matchingPool.getParallelism() != matchingThreads) {
+            matchingPool = new ForkJoinPool(matchingThreads);
+        }
+        return matchingPool;
+    }
+
+    public static boolean isSessionProjection() {
+        return sessionProjection;
+    }
+
+    /**
+     * @param sessionProjection true to match the events of each session of the initiating flow separately,
+     *                          see {@link #checkIfProjectionsMatchAndDraw(CombinationsHolder)}
+     */
+    public static void setSessionProjection(boolean sessionProjection) {
+        CombinationsHolder.sessionProjection = sessionProjection;
+    }
+
+    public static int getMatchingThreads() {
+        return matchingThreads;
+    }
+
+    /**
+     * @param matchingThreads number of threads used to compare the combinations of two flows, 1 to compare them
+     *                        sequentially
+     */
+    public static void setMatchingThreads(int matchingThreads) {
+        CombinationsHolder.matchingThreads = Math.max(1, matchingThreads);
+    }
+
+    private static List<CompiledCombination> compile(List<LockingBranch> combinations) {
+        List<CompiledCombination> res = new ArrayList<>(combinations.size());
+        for(LockingBranch comb : combinations) {
+            res.add(compile(comb));
+        }
+        return res;
+    }
+
+    private static CompiledCombination compile(LockingBranch comb) {
+        return new CompiledCombination(eventsOf(comb).toArray(new CompanionEvent[0]));
+    }
+
+    static List<CompanionEvent> eventsOf(LockingBranch comb) {
+        List<CompanionEvent> events = new ArrayList<>();
+        comb.getOnlyStatementWithCompanionStatements().forEach(
+                stmt -> events.addAll(CompanionEvent.fromStatement(stmt)));
+        return events;
+    }
+
+    /**
+     * Compares the pairs of combinations with index in [from, to), see {@link #matchAll(List, List)}. The matches
+     * of the two halves are concatenated as soon as both are complete, so that the order is the same as the one
+     * of the sequential comparisons and the pairs that don't match are never kept
+     */
+    private static final class MatchingTask extends RecursiveTask<List<Match>> {
+        private final List<CompiledCombination> leftCombinations;
+        private final List<CompiledCombination> rightCombinations;
+        private final long from;
+        private final long to;
+
+        private MatchingTask(List<CompiledCombination> leftCombinations, List<CompiledCombination> rightCombinations,
+                             long from, long to) {
+            this.leftCombinations = leftCombinations;
+            this.rightCombinations = rightCombinations;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected List<Match> compute() {
+            if(to - from <= COMPARISONS_PER_TASK) {
+                return matchPairs(leftCombinations, rightCombinations, from, to);
+            }
+            final long middle = (from + to) >>> 1;
+            final MatchingTask firstHalf = new MatchingTask(leftCombinations, rightCombinations, from, middle);
+            firstHalf.fork();
+            final List<Match> secondHalfMatches =
+                    new MatchingTask(leftCombinations, rightCombinations, middle, to).compute();
+            final List<Match> res = firstHalf.join();
+            res.addAll(secondHalfMatches);
+            return res;
+        }
+    }
+
     public void removeAllContinueLoopLocks() {
+        checkModifiable();
         allCombinations.forEach(LockingBranch::removeContinuekLoopLock);
     }
 
     public void removeAllLoopLocks() {
+        checkModifiable();
         allCombinations.forEach(LockingBranch::removeAnyLoopLock);
         filterOutDuplicates();
     }
 
     public void removeAllLocks() {
+        checkModifiable();
         allCombinations.forEach(LockingBranch::removeAnyLock);
         filterOutDuplicates();
     }
 
     public void setAllBreakLoopLocks() {
+        checkModifiable();
         allCombinations.forEach(LockingBranch::setBreakLoopLock);
     }
 
     public void setAllContinueLoopLocks() {
+        checkModifiable();
         allCombinations.forEach(LockingBranch::setContinueLoopLock);
     }
 
     public void setAllMethodLocks() {
+        checkModifiable();
         allCombinations.forEach(LockingBranch::setMethodLock);
     }
 
+    /**
+     * The send / receive events of a combination, together with their codes: the id of the message type in the
+     * {@link MessageTypeTable} shifted left plus the direction. Two events with a direction
+     * and a message type match if and only if their codes differ only in the last bit, so that most of the
+     * comparisons are done on primitive values. The events whose matching can't be decided on the type, like the
+     * Corda subflows, get the {@link #OTHER_CODE} and are compared on the objects.
+     */
+    static final class CompiledCombination {
+        private static final int SEND_CODE = 0;
+        private static final int RECEIVE_CODE = 1;
+        private static final int OTHER_CODE = 2;
+        private static final int UNTYPED_CODE = 3; //never matches
+        private static final int TYPE_SHIFT = 2;
+
+        private final CompanionEvent[] events;
+        private final int[] codes;
+
+        CompiledCombination(CompanionEvent[] events) {
+            this.events = events;
+            this.codes = new int[events.length];
+            for(int i = 0; i < events.length; ++i) {
+                codes[i] = encode(events[i]);
+            }
+        }
+
+        private static int encode(CompanionEvent event) {
+            if(event.getDirection() == CompanionEvent.Direction.OTHER) {
+                return OTHER_CODE;
+            }
+            final int typeId = event.getMessageTypeId();
+            if(typeId == MessageTypeTable.NO_TYPE) {
+                return UNTYPED_CODE;
+            }
+            return (typeId << TYPE_SHIFT)
+                    | (event.getDirection() == CompanionEvent.Direction.SEND ? SEND_CODE : RECEIVE_CODE);
+        }
+
+        boolean matches(CompiledCombination other) {
+            if(codes.length != other.codes.length) {
+                return false; //one of the two combinations has more events than the other
+            }
+            for(int i = 0; i < codes.length; ++i) {
+                if(!matchesAt(other, i)) {
+                    LOGGER.trace("error in this flow logic! Round {}: {} doesn't match {}", i, events[i],
+                            other.events[i]);
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private boolean matchesAt(CompiledCombination other, int i) {
+            final int code = codes[i];
+            final int otherCode = other.codes[i];
+            if(code == OTHER_CODE || otherCode == OTHER_CODE) {
+                return code == otherCode && events[i].matches(other.events[i]);
+            }
+            //same message type, one send and one receive
+            return (code ^ otherCode) == 1;
+        }
+    }
+
+    //a pair of combinations that match
+    private static final class Match {
+        private final int leftIndex;
+        private final List<MatchingStatements> matchingStatements;
+
+        private Match(int leftIndex, List<MatchingStatements> matchingStatements) {
+            this.leftIndex = leftIndex;
+            this.matchingStatements = matchingStatements;
+        }
+
+        private void createGraphLinks() {
+            matchingStatements.forEach(MatchingStatements::createGraphLink);
+        }
+    }
+
     private static class MatchingStatements {
-        StatementWithCompanionInterface leftStatement;
-        StatementWithCompanionInterface rightStatement;
+        CompanionEvent leftEvent;
+        CompanionEvent rightEvent;
 
-        public MatchingStatements(StatementWithCompanionInterface leftStatement, StatementWithCompanionInterface rightStatement) {
-            this.leftStatement = leftStatement;
-            this.rightStatement = rightStatement;
+        public MatchingStatements(CompanionEvent leftEvent, CompanionEvent rightEvent) {
+            this.leftEvent = leftEvent;
+            this.rightEvent = rightEvent;
         }
 
         public void createGraphLink() {
-            leftStatement.createGraphLink(rightStatement);
+            leftEvent.createGraphLink(rightEvent);
         }
     }
 
     /**
-     * Checks if two branches have a matching combination and returns a list of all the
+     * Checks if two combinations match and returns a list of all the
      * matching statements if they match, an empty list if there is nothing to match (still a valid
-     * protocol) or null if the two combinations don't match
-     * @param combLeft initiating branch
-     * @param combRight initiated branch
+     * protocol) or null if the two combinations don't match.
+     * A {@link SendAndReceive} is split in its two events, so the comparison is done one event at a time and
+     * doesn't modify the statements. Nothing is allocated unless the two combinations match.
+     * @param combLeft initiating combination
+     * @param combRight initiated combination
      * @return a list of all the
      *       matching statements if they match, an empty list if there is nothing to match (still a valid
      *       protocol) or null if the two combinations don't match
      */
-    private static List<MatchingStatements> twoCombinationsMatch(Branch combLeft,
-                                                Branch combRight) {
-        Deque<StatementWithCompanionInterface> initiatingQueue =
-                new LinkedList<>(combLeft.getOnlyStatementWithCompanionStatements()); //they should all be already fo this type
-        Deque<StatementWithCompanionInterface> initiatedQueue =
-                new LinkedList<>(combRight.getOnlyStatementWithCompanionStatements());
-
-        List<MatchingStatements> matchingStatements = new ArrayList<>();
-        int i = 0;
-
-        while(!initiatingQueue.isEmpty() || !initiatedQueue.isEmpty()) {
-
-            StatementWithCompanionInterface instrLeft = initiatingQueue.peek();
-            StatementWithCompanionInterface instrRight = initiatedQueue.peek();
-            if (instrLeft == null && instrRight == null) {
-                return matchingStatements;
-            }
-            if(instrLeft == null || instrRight == null) {
-                return null; //one fot the two queues still has elements, while the other doesn't
-            }
-
-            LOGGER.trace("\n Round {}", i++);
-            LOGGER.trace("{}", instrLeft);
-            LOGGER.trace("{}", instrRight);
-
-            if(!instrLeft.acceptCompanion(instrRight)) {
-                LOGGER.info("error in this flow logic!");
-                return null;
-            }
-            else {
-                matchingStatements.add(new MatchingStatements(instrLeft, instrRight));
-            }
-
-            if(instrLeft.isConsumedForCompanionAnalysis()) {
-                initiatingQueue.remove(); //we remove the statement of the queue
-            }
-
-            if(instrRight.isConsumedForCompanionAnalysis()) {
-                initiatedQueue.remove(); //we remove the statement of the queue
-            }
+    private static List<MatchingStatements> twoCombinationsMatch(CompiledCombination combLeft,
+                                                                 CompiledCombination combRight) {
+        if(!combLeft.matches(combRight)) {
+            return null;
+        }
+        List<MatchingStatements> matchingStatements = new ArrayList<>(combLeft.events.length);
+        for(int i = 0; i < combLeft.events.length; ++i) {
+            matchingStatements.add(new MatchingStatements(combLeft.events[i], combRight.events[i]));
         }
-
         return matchingStatements;
     }
 
     public List<LockingBranch> getAllCombinations() {
-        return allCombinations;
+        return immutable ? Collections.unmodifiableList(allCombinations) : allCombinations;
     }
 
     /**
-     * Removes all the combinations that are a duplicate, expensive operation, use with care
+     * Removes all the combinations that are a duplicate, keeping the first occurrence of each. Linear in the
+     * number of combinations thanks to the fingerprint of each combination.
      */
     public void filterOutDuplicates() {
+        checkModifiable();
+        Set<CombinationKey> alreadyAdded = new HashSet<>();
         List<LockingBranch> newCombinations = new LinkedList<>();
         for(LockingBranch comb : allCombinations) {
-            boolean alreadyAdded = false;
-            for(LockingBranch newComb : newCombinations) {
-                if(newComb.containsSameStatementsAndLockStatusAs(comb)) {
-                    alreadyAdded = true;
-                    break;
-                }
-            }
-            if(!alreadyAdded) {
+            if(alreadyAdded.add(new CombinationKey(comb))) {
                 newCombinations.add(comb);
             }
         }
@@ -0,0 +1,152 @@
+package com.github.lucacampanella.callgraphflows.staticanalyzer;
+
+import com.github.lucacampanella.callgraphflows.staticanalyzer.instructions.Receive;
+import com.github.lucacampanella.callgraphflows.staticanalyzer.instructions.Send;
+import com.github.lucacampanella.callgraphflows.staticanalyzer.instructions.SendAndReceive;
+import com.github.lucacampanella.callgraphflows.staticanalyzer.instructions.StatementWithCompanionInterface;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A single send / receive event of a {@link StatementWithCompanionInterface}. Most statements produce just one
+ * event, a {@link SendAndReceive} produces two: first the send half and then the receive half.
+ * Differently from {@link StatementWithCompanionInterface#acceptCompanion(StatementWithCompanionInterface)} the
+ * comparison between two events doesn't modify the statements, so it can be repeated in any order.
+ */
+final class CompanionEvent {
+
+    enum Direction {
+        SEND,
+        RECEIVE,
+        OTHER //for example Corda subflows, compared with acceptCompanion
+    }
+
+    private static final Object LINKS_LOCK = new Object();
+
+    private final StatementWithCompanionInterface statement;
+    private final Direction direction;
+    private final String messageType;
+    private final int messageTypeId;
+    private final boolean secondHalf;
+
+    private CompanionEvent(StatementWithCompanionInterface statement, Direction direction, String messageType,
+                           int messageTypeId, boolean secondHalf) {
+        this.statement = statement;
+        this.direction = direction;
+        this.messageType = messageType;
+        this.messageTypeId = messageTypeId;
+        this.secondHalf = secondHalf;
+    }
+
+    static List<CompanionEvent> fromStatement(StatementWithCompanionInterface statement) {
+        List<CompanionEvent> res = new ArrayList<>(2);
+        if(statement instanceof SendAndReceive) {
+            SendAndReceive sendAndReceive = (SendAndReceive) statement;
+            res.add(new CompanionEvent(statement, Direction.SEND, sendAndReceive.getSentType(),
+                    sendAndReceive.getSentTypeId(), false));
+            res.add(new CompanionEvent(statement, Direction.RECEIVE, sendAndReceive.getReceivedType(),
+                    sendAndReceive.getReceivedTypeId(), true));
+        }
+        else if(statement instanceof Send) {
+            final Send send = (Send) statement;
+            res.add(new CompanionEvent(statement, Direction.SEND, send.getSentType(), send.getSentTypeId(), false));
+        }
+        else if(statement instanceof Receive) {
+            final Receive receive = (Receive) statement;
+            res.add(new CompanionEvent(statement, Direction.RECEIVE, receive.getReceivedType(),
+                    receive.getReceivedTypeId(), false));
+        }
+        else {
+            res.add(new CompanionEvent(statement, Direction.OTHER, null, MessageTypeTable.NO_TYPE, false));
+        }
+        return res;
+    }
+
+    StatementWithCompanionInterface getStatement() {
+        return statement;
+    }
+
+    Direction getDirection() {
+        return direction;
+    }
+
+    String getMessageType() {
+        return messageType;
+    }
+
+    /**
+     * @return the id of the type in the {@link MessageTypeTable} of the analysis
+     */
+    int getMessageTypeId() {
+        return messageTypeId;
+    }
+
+    boolean matches(CompanionEvent other) {
+        if(direction == Direction.OTHER || other.direction == Direction.OTHER) {
+            return direction == other.direction && statement.acceptCompanion(other.statement);
+        }
+        //a send must face a receive of exactly the same type
+        return direction != other.direction && messageTypeId != MessageTypeTable.NO_TYPE
+                && messageTypeId == other.messageTypeId;
+    }
+
+    /**
+     * Creates the links between the statements of two flows, found beforehand. The flows are checked in parallel
+     * and a responder can be shared by several of them, so the links of each check are created all together, one
+     * check at a time, while the checks themselves run without holding any lock.
+     * @param linksCreation creates the links of one check, see {@link #createGraphLink(CompanionEvent)}
+     */
+    static void publishLinks(Runnable linksCreation) {
+        synchronized (LINKS_LOCK) {
+            linksCreation.run();
+        }
+    }
+
+    /**
+     * Links the two statements in the graph. The {@link SendAndReceive} statements are put in the state
+     * corresponding to the half they represent before the link and reset afterwards.
+     */
+    void createGraphLink(CompanionEvent other) {
+        if(statement instanceof SendAndReceive) {
+            ((SendAndReceive) statement).setSentConsumed(secondHalf);
+        }
+        if(other.statement instanceof SendAndReceive) {
+            ((SendAndReceive) other.statement).setSentConsumed(other.secondHalf);
+        }
+        statement.createGraphLink(other.statement);
+        resetIfSendAndReceive(statement);
+        resetIfSendAndReceive(other.statement);
+    }
+
+    private static void resetIfSendAndReceive(StatementWithCompanionInterface statement) {
+        if(statement instanceof SendAndReceive) {
+            ((SendAndReceive) statement).setSentConsumed(false);
+        }
+    }
+
+    //two events are the same if they represent the same half of the same statement, even if the statement
+    //has been unfolded multiple times
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        CompanionEvent that = (CompanionEvent) o;
+        return statement == that.statement && secondHalf == that.secondHalf;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * System.identityHashCode(statement) + (secondHalf ? 1 : 0);
+    }
+
+    @Override
+    public String toString() {
+        return direction + (messageType != null ? "(" + messageType + ")" : "") + " of " + statement;
+    }
+}
@@ -10,7 +10,9 @@ import spoon.decompiler.Decompiler;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Paths;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 //
 // Source code recreated from a .class file by IntelliJ IDEA
@@ -62,6 +64,11 @@ public class CustomJarLauncher extends Launcher {
             LOGGER.trace("decompilerEnum = {}", decompilerEnum);
             LOGGER.trace("decompiler = {}", decompiler);
 
+            if (DecompilationCache.isEnabled() && decompiler == null && this.decompile) {
+                addCachedSources(customJarLauncher);
+                return customJarLauncher;
+            }
+
             File decompiledDirectory = new File(decompiledSrcPath);
             if (decompiledDirectory.exists() && !decompiledDirectory.canWrite()) {
                 throw new SpoonException("Dir " + decompiledDirectory.getPath() + " already exists and is not deletable.");
@@ -98,6 +105,20 @@ public class CustomJarLauncher extends Launcher {
 
             return customJarLauncher;
         }
+
+        //the sources of each jar come from the cache, a class contained in several jars is taken from the last one
+        private void addCachedSources(CustomJarLauncher customJarLauncher) {
+            Set<String> addedClassesNamesSet = new HashSet<>();
+            try {
+                final List<File> decompiledSrcFolders = SourceAndJarAnalyzer.decompileJars(jarPaths, decompilerEnum);
+                for (int i = decompiledSrcFolders.size() - 1; i >= 0; --i) {
+                    SourceAndJarAnalyzer.addFolderToModel(addedClassesNamesSet, customJarLauncher,
+                            decompiledSrcFolders.get(i));
+                }
+            } catch (IOException e) {
+                throw new SpoonException("Couldn't use the decompilation cache", e);
+            }
+        }
     }
 
     private CustomJarLauncher(){
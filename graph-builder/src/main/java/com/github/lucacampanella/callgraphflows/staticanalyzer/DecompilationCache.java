@@ -0,0 +1,138 @@
+package com.github.lucacampanella.callgraphflows.staticanalyzer;
+
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import spoon.SpoonException;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Keeps the sources decompiled from each jar across runs, in a folder named after the hash of the content of the jar
+ * and after the decompiler and its version. A jar that didn't change, for example a dependency, is then decompiled
+ * only once, regardless of the timestamps of the files.
+ * The cache is disabled until a directory is set.
+ */
+public final class DecompilationCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DecompilationCache.class);
+
+    private static Path directory = null;
+
+    private DecompilationCache() {
+        //private constructor to hide public one
+    }
+
+    /**
+     * @param directory the directory of the cache, null to disable it
+     */
+    public static void setDirectory(String directory) {
+        DecompilationCache.directory = directory == null ? null : Paths.get(directory);
+    }
+
+    public static boolean isEnabled() {
+        return directory != null;
+    }
+
+    /**
+     * @return the folder containing the sources decompiled from the jar, the jar is decompiled only if they
+     * are not in the cache yet
+     */
+    public static File getDecompiledSources(String jarPath, DecompilerEnum decompilerEnum) throws IOException {
+        return getDecompiledSources(jarPath, decompilerEnum, false);
+    }
+
+    /**
+     * @param inNewProcess whether the jar is decompiled by a {@link DecompilerProcess}, when other jars are
+     *                     decompiled at the same time
+     * @return the folder containing the sources decompiled from the jar, the jar is decompiled only if they
+     * are not in the cache yet
+     */
+    public static File getDecompiledSources(String jarPath, DecompilerEnum decompilerEnum, boolean inNewProcess)
+            throws IOException {
+        final File jar = new File(jarPath);
+        if (!jar.isFile()) {
+            throw new SpoonException("Jar " + jar.getPath() + " not found.");
+        }
+        final Path target = directory.resolve(getKey(jar, decompilerEnum));
+        if(Files.isDirectory(target)) {
+            LOGGER.info("Jar {} already decompiled in {}", jarPath, target);
+            return target.toFile();
+        }
+
+        //the sources are moved in place only once complete, so that an interrupted or failed run doesn't leave a
+        //partial or empty entry
+        Files.createDirectories(directory);
+        final Path temporary = Files.createTempDirectory(directory, target.getFileName() + ".tmp");
+        try {
+            decompile(jar, decompilerEnum, temporary.toFile(), inNewProcess);
+            Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            if(!Files.isDirectory(target)) {
+                throw e;
+            }
+            LOGGER.debug("Jar {} decompiled at the same time by another run, using its sources", jarPath);
+        } finally {
+            if(Files.exists(temporary)) {
+                FileUtils.deleteDirectory(temporary.toFile());
+            }
+        }
+        return target.toFile();
+    }
+
+    private static void decompile(File jar, DecompilerEnum decompilerEnum, File outputDir, boolean inNewProcess)
+            throws IOException {
+        try {
+            if(inNewProcess) {
+                DecompilerProcess.decompile(jar.getAbsolutePath(), outputDir, decompilerEnum);
+            }
+            else {
+                decompilerEnum.getDecompiler(outputDir).decompile(jar.getAbsolutePath());
+            }
+        } catch (RuntimeException e) {
+            throw new SpoonException("Couldn't decompile jar " + jar.getPath() + " with " + decompilerEnum, e);
+        }
+        if(FileUtils.listFiles(outputDir, new String[]{"java"}, true).isEmpty()) {
+            throw new SpoonException("Decompiler " + decompilerEnum + " produced no sources for jar " + jar.getPath());
+        }
+    }
+
+    static String getKey(File jar, DecompilerEnum decompilerEnum) throws IOException {
+        final MessageDigest digest = newDigest();
+        try(InputStream in = Files.newInputStream(jar.toPath())) {
+            final byte[] buffer = new byte[64 * 1024];
+            int read;
+            while((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        digest.update((decompilerEnum.name() + "\n" + decompilerEnum.getDecompilerVersion())
+                .getBytes(StandardCharsets.UTF_8));
+        return decompilerEnum.name().toLowerCase() + "-" + toHex(digest.digest());
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder res = new StringBuilder(bytes.length * 2);
+        for(byte b : bytes) {
+            res.append(String.format("%02x", b));
+        }
+        return res.toString();
+    }
+}
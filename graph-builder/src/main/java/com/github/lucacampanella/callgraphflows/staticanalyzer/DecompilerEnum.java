@@ -7,6 +7,7 @@ import spoon.decompiler.Decompiler;
 import spoon.decompiler.FernflowerDecompiler;
 
 import java.io.File;
+import java.security.CodeSource;
 
 public enum DecompilerEnum {
     CFR, FERNFLOWER;
@@ -20,6 +21,27 @@ public enum DecompilerEnum {
         return new CFRDecompiler(decompiledSrc);
     }
 
+    /**
+     * @return the version of the decompiler library, from its manifest or from the name of its jar
+     */
+    public String getDecompilerVersion() {
+        final String decompilerClassName = this == FERNFLOWER ?
+                "org.jetbrains.java.decompiler.main.Fernflower" : "org.benf.cfr.reader.Main";
+        try {
+            final Class<?> decompilerClass = Class.forName(decompilerClassName);
+            if(decompilerClass.getPackage() != null && decompilerClass.getPackage().getImplementationVersion() != null) {
+                return decompilerClass.getPackage().getImplementationVersion();
+            }
+            final CodeSource codeSource = decompilerClass.getProtectionDomain().getCodeSource();
+            if(codeSource != null && codeSource.getLocation() != null) {
+                return new File(codeSource.getLocation().getPath()).getName();
+            }
+        } catch (ClassNotFoundException | SecurityException e) {
+            LOGGER.warn("Couldn't find the version of decompiler {}", this, e);
+        }
+        return "unknown";
+    }
+
     public static DecompilerEnum getDefault() {
         return CFR;
     }
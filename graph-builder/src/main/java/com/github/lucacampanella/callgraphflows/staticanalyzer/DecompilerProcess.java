@@ -0,0 +1,64 @@
+package com.github.lucacampanella.callgraphflows.staticanalyzer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import spoon.SpoonException;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Decompiles a jar in a new JVM, with the same classpath as the current one.
+ * Neither CFR nor Fernflower is known to be thread safe, both keep some of their state in static fields, so when
+ * several jars are decompiled at the same time each one is decompiled by its own process.
+ */
+public final class DecompilerProcess {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DecompilerProcess.class);
+
+    private DecompilerProcess() {
+        //private constructor to hide public one
+    }
+
+    /**
+     * Decompiles the jar in a new process and waits for it to end
+     * @throws SpoonException if the process doesn't end successfully
+     */
+    public static void decompile(String jarPath, File outputDir, DecompilerEnum decompilerEnum) throws IOException {
+        final List<String> command = Arrays.asList(
+                Paths.get(System.getProperty("java.home"), "bin", "java").toString(),
+                "-cp", System.getProperty("java.class.path"),
+                DecompilerProcess.class.getName(),
+                jarPath, outputDir.getAbsolutePath(), decompilerEnum.name());
+        LOGGER.debug("Decompiling jar {} in a new process", jarPath);
+        final Process process = new ProcessBuilder(command).redirectErrorStream(true)
+                .redirectOutput(ProcessBuilder.Redirect.INHERIT).start();
+        final int exitValue;
+        try {
+            exitValue = process.waitFor();
+        } catch (InterruptedException e) {
+            process.destroyForcibly();
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while decompiling jar " + jarPath);
+        }
+        if(exitValue != 0) {
+            throw new SpoonException("The decompilation of jar " + jarPath + " ended with status " + exitValue);
+        }
+    }
+
+    /**
+     * @param args the path of the jar, the output directory and the name of the decompiler
+     */
+    public static void main(String[] args) {
+        try {
+            DecompilerEnum.valueOf(args[2]).getDecompiler(new File(args[1])).decompile(args[0]);
+        } catch (RuntimeException e) {
+            LOGGER.error("Couldn't decompile jar {}", args[0], e);
+            System.exit(1);
+        }
+    }
+}
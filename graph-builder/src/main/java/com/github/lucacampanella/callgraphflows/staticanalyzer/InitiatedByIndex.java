@@ -0,0 +1,136 @@
+package com.github.lucacampanella.callgraphflows.staticanalyzer;
+
+import net.corda.core.flows.InitiatedBy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import spoon.reflect.code.CtExpression;
+import spoon.reflect.declaration.CtAnnotation;
+import spoon.reflect.declaration.CtClass;
+import spoon.reflect.reference.CtTypeReference;
+import spoon.support.reflect.code.CtFieldReadImpl;
+
+import java.lang.annotation.Annotation;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Index of the classes annotated with {@link InitiatedBy}, built once per model. For each responder the class
+ * declared in the annotation is resolved only once, and the responders are indexed by the qualified names of the
+ * declared class and of all its supertypes, so that the candidates for an initiating class are found with
+ * hash lookups instead of comparing it with every responder.
+ */
+final class InitiatedByIndex {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(InitiatedByIndex.class);
+
+    //the responders, in the order of the model
+    private final List<CtClass> responders = new ArrayList<>();
+    //qualified name of the class declared in the annotation -> positions of the responders
+    private final Map<String, List<Integer>> respondersByDeclaredClass = new HashMap<>();
+    //qualified name of a supertype of the class declared in the annotation (itself included) -> positions
+    private final Map<String, List<Integer>> respondersByDeclaredSupertype = new HashMap<>();
+
+    private InitiatedByIndex() {
+        //private constructor to hide public one
+    }
+
+    /**
+     * @param initiatedByClasses the classes annotated with {@link InitiatedBy}, in the order of the model
+     */
+    static InitiatedByIndex fromClasses(List<CtClass> initiatedByClasses) {
+        InitiatedByIndex res = new InitiatedByIndex();
+        for(CtClass klass : initiatedByClasses) {
+            final CtClass declaredClass = findDeclaredInitiatingClass(klass);
+            if(declaredClass == null) {
+                continue;
+            }
+            final int position = res.responders.size();
+            res.responders.add(klass);
+            final CtTypeReference declaredReference = declaredClass.getReference();
+            res.respondersByDeclaredClass.computeIfAbsent(declaredReference.getQualifiedName(),
+                    key -> new ArrayList<>(1)).add(position);
+            for(String supertype : getSelfAndSupertypesNames(declaredReference)) {
+                res.respondersByDeclaredSupertype.computeIfAbsent(supertype, key -> new ArrayList<>(1)).add(position);
+            }
+        }
+        return res;
+    }
+
+    /**
+     * @return the responders whose {@link InitiatedBy} annotation declares a subtype or a supertype of the
+     * initiating class, in the order of the model
+     */
+    List<CtClass> getCandidateResponders(CtClass initiatingClass) {
+        final CtTypeReference initiatingReference = initiatingClass.getReference();
+        Set<Integer> positions = new TreeSet<>();
+        //the declared class is a subtype of the initiating class
+        positions.addAll(respondersByDeclaredSupertype.getOrDefault(initiatingReference.getQualifiedName(),
+                Collections.emptyList()));
+        //the declared class is a supertype of the initiating class
+        for(String supertype : getSelfAndSupertypesNames(initiatingReference)) {
+            positions.addAll(respondersByDeclaredClass.getOrDefault(supertype, Collections.emptyList()));
+        }
+        List<CtClass> res = new ArrayList<>(positions.size());
+        positions.forEach(position -> res.add(responders.get(position)));
+        return res;
+    }
+
+    private static CtClass findDeclaredInitiatingClass(CtClass klass) {
+        Optional<CtAnnotation<? extends Annotation>> initiatedByAnnotationOptional =
+                klass.getAnnotations().stream().filter(ctAnnotation -> {
+                    boolean result = false;
+                    try {
+                        result = ctAnnotation.getActualAnnotation().annotationType() == InitiatedBy.class;
+                    } catch (Exception e) {
+                        LOGGER.warn("Couldn't retrieve real representation for annotation {} for class {}, " +
+                                "continuing without analyzing this one", ctAnnotation, klass.getQualifiedName());
+                    }
+                    return result;
+                }).findFirst();
+        if(!initiatedByAnnotationOptional.isPresent()) {
+            return null;
+        }
+        final CtExpression referenceToClass = initiatedByAnnotationOptional.get().getAllValues().get("value");
+
+        if(((CtFieldReadImpl) referenceToClass).getVariable().getDeclaringType() == null) {
+            LOGGER.warn("Couldn't retrieve declaration of class declared in the @InitiatedBy " +
+                    "annotation. Skipping this class in finding the responder flow " +
+                    "\nThis could result in a problem in the produced graph." +
+                    " \nDeclared reference: {} \nDeclaring class: {} ", referenceToClass, klass);
+            return null;
+        }
+
+        return (CtClass) ((CtFieldReadImpl) referenceToClass).getVariable().getDeclaringType().getTypeDeclaration();
+    }
+
+    private static Set<String> getSelfAndSupertypesNames(CtTypeReference reference) {
+        Set<String> res = new HashSet<>();
+        Deque<CtTypeReference> toVisit = new ArrayDeque<>();
+        toVisit.add(reference);
+        while(!toVisit.isEmpty()) {
+            final CtTypeReference curr = toVisit.poll();
+            if(!res.add(curr.getQualifiedName())) {
+                continue;
+            }
+            final CtTypeReference superclass = curr.getSuperclass();
+            if(superclass != null) {
+                toVisit.add(superclass);
+            }
+            for(Object superInterface : curr.getSuperInterfaces()) {
+                if(superInterface != null) {
+                    toVisit.add((CtTypeReference) superInterface);
+                }
+            }
+        }
+        return res;
+    }
+}
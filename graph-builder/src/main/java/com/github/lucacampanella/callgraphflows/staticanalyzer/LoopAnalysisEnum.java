@@ -0,0 +1,30 @@
+package com.github.lucacampanella.callgraphflows.staticanalyzer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The ways the loops are taken into account when checking the protocol of two flows
+ */
+public enum LoopAnalysisEnum {
+    BOUNDED, //the body of the loop is unfolded a fixed number of times
+    FIXPOINT; //the loop is kept in the automaton, the product is explored until no new state is reachable
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(LoopAnalysisEnum.class);
+
+    public static LoopAnalysisEnum getDefault() {
+        return BOUNDED;
+    }
+
+    public static LoopAnalysisEnum fromStringOrDefault(String value) {
+
+        LoopAnalysisEnum result;
+        try {
+            result = LoopAnalysisEnum.valueOf(value.toUpperCase());
+        } catch (Exception e) {
+            result = getDefault();
+            LOGGER.error("Could not find loop analysis {}, defaulting on {}", value, result);
+        }
+        return result;
+    }
+}
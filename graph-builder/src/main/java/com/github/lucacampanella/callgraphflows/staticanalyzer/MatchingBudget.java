@@ -0,0 +1,41 @@
+package com.github.lucacampanella.callgraphflows.staticanalyzer;
+
+/**
+ * Limits to the work done when checking that the protocols of two flows match. When the limits are exceeded
+ * the protocol is checked in an approximate way and the class is reported as not fully verified.
+ */
+public final class MatchingBudget {
+
+    public static final int DEFAULT_MAX_COMBINATIONS = 10000;
+    public static final long DEFAULT_MAX_COMPARISONS = 1000000L;
+
+    private static int maxCombinations = DEFAULT_MAX_COMBINATIONS;
+    private static long maxComparisons = DEFAULT_MAX_COMPARISONS;
+
+    private MatchingBudget() {
+        //private constructor to hide public one
+    }
+
+    /**
+     * @return the maximum number of combinations a single {@link CombinationsHolder} can contain
+     */
+    public static int getMaxCombinations() {
+        return maxCombinations;
+    }
+
+    public static void setMaxCombinations(int maxCombinations) {
+        MatchingBudget.maxCombinations = maxCombinations;
+    }
+
+    /**
+     * @return the maximum number of comparisons between the paths of the two flows, for the enumerator these are
+     * the pairs of combinations, for the automaton the pairs of transitions
+     */
+    public static long getMaxComparisons() {
+        return maxComparisons;
+    }
+
+    public static void setMaxComparisons(long maxComparisons) {
+        MatchingBudget.maxComparisons = maxComparisons;
+    }
+}
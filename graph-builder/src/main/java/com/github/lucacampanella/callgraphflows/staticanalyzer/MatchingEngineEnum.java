@@ -0,0 +1,30 @@
+package com.github.lucacampanella.callgraphflows.staticanalyzer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The engines that can be used to check if the send and receive protocol of two flows match
+ */
+public enum MatchingEngineEnum {
+    ENUMERATOR, //enumerates all the possible paths, see CombinationsHolder
+    AUTOMATON; //explores the product of the two automata, see ProtocolAutomaton
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MatchingEngineEnum.class);
+
+    public static MatchingEngineEnum getDefault() {
+        return ENUMERATOR;
+    }
+
+    public static MatchingEngineEnum fromStringOrDefault(String value) {
+
+        MatchingEngineEnum result;
+        try {
+            result = MatchingEngineEnum.valueOf(value.toUpperCase());
+        } catch (Exception e) {
+            result = getDefault();
+            LOGGER.error("Could not find matching engine {}, defaulting on {}", value, result);
+        }
+        return result;
+    }
+}
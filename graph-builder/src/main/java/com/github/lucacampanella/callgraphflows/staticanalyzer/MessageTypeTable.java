@@ -0,0 +1,51 @@
+package com.github.lucacampanella.callgraphflows.staticanalyzer;
+
+import spoon.reflect.reference.CtTypeReference;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Table of the types of the messages sent and received during an analysis. Each type is interned once, when
+ * the send or receive statement is built, so that the statements can be matched comparing small integers and all
+ * the statements with the same type share the same string.
+ * The ids can only be compared between statements built by the same {@link AnalyzerWithModel}.
+ */
+public class MessageTypeTable {
+
+    public static final int NO_TYPE = -1;
+
+    private final Map<String, Integer> ids = new HashMap<>();
+    private final List<String> names = new ArrayList<>();
+
+    /**
+     * @param type the resolved type of the message, primitive types are boxed
+     * @return the id of the type, the same for all the references to the same type
+     */
+    public int intern(CtTypeReference type) {
+        return intern(type.box().toString());
+    }
+
+    public synchronized int intern(String typeName) {
+        Integer id = ids.get(typeName);
+        if(id == null) {
+            id = names.size();
+            names.add(typeName);
+            ids.put(typeName, id);
+        }
+        return id;
+    }
+
+    /**
+     * @return the canonical name of the type with this id, null for {@link #NO_TYPE}
+     */
+    public synchronized String getName(int id) {
+        return id == NO_TYPE ? null : names.get(id);
+    }
+
+    public synchronized int size() {
+        return names.size();
+    }
+}
@@ -0,0 +1,116 @@
+package com.github.lucacampanella.callgraphflows.staticanalyzer;
+
+import com.github.lucacampanella.callgraphflows.staticanalyzer.matchers.MatcherHelper;
+import spoon.reflect.code.CtStatement;
+import spoon.reflect.declaration.CtExecutable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Remembers, for each method body inlined by a method invocation, which of its statements are relevant for the
+ * analysis. Most helper methods called from the flows don't contain any, and their bodies are then analyzed only
+ * once per class stack instead of once per call site.
+ * The relevant statements are analyzed again at each call site: every call site needs its own statements, since
+ * they are linked and drawn one by one. The other statements of the body are skipped.
+ */
+public final class MethodBodySummaryCache {
+
+    private final Map<SummaryKey, BodySummary> summaries = new ConcurrentHashMap<>();
+
+    private static final class BodySummary {
+        //the indexes of the statements of the body that are relevant, in order
+        private final int[] relevantStatements;
+        //the top level classes the analysis of the whole body depended on
+        private final Set<String> dependencies;
+
+        private BodySummary(int[] relevantStatements, Set<String> dependencies) {
+            this.relevantStatements = relevantStatements;
+            this.dependencies = dependencies;
+        }
+    }
+
+    /**
+     * @return the statements of the body of the executable that are relevant for the analysis, with the methods
+     * dispatched and the generics resolved through the class stack the analyzer is currently using
+     */
+    public Branch getRelevantBodyStatements(CtExecutable executable, AnalyzerWithModel analyzer) {
+        final SummaryKey key = new SummaryKey(executable, analyzer.getCurrClassCallStackHolder());
+        final List<CtStatement> bodyStatements = executable.getBody().getStatements();
+        Branch res = new Branch();
+        final BodySummary summary = summaries.get(key);
+        if(summary != null) {
+            analyzer.addDependencies(summary.dependencies);
+            for(int index : summary.relevantStatements) {
+                res.addIfRelevantForLoopFlowBreakAnalysis(MatcherHelper.fromCtStatementsToStatements(
+                        Collections.singletonList(bodyStatements.get(index)), analyzer));
+            }
+            return res;
+        }
+        final List<Integer> relevantStatements = new ArrayList<>();
+        final Set<String> enclosingDependencies = analyzer.beginDependencies();
+        final Set<String> bodyDependencies;
+        try {
+            for(int i = 0; i < bodyStatements.size(); ++i) {
+                final int previousSize = res.getStatements().size();
+                res.addIfRelevantForLoopFlowBreakAnalysis(MatcherHelper.fromCtStatementsToStatements(
+                        Collections.singletonList(bodyStatements.get(i)), analyzer));
+                if(res.getStatements().size() > previousSize) {
+                    relevantStatements.add(i);
+                }
+            }
+        } finally {
+            bodyDependencies = analyzer.endDependencies(enclosingDependencies);
+        }
+        summaries.put(key, new BodySummary(relevantStatements.stream().mapToInt(Integer::intValue).toArray(),
+                Collections.unmodifiableSet(bodyDependencies)));
+        return res;
+    }
+
+    boolean isKnownIrrelevant(CtExecutable executable, ClassCallStackHolder classCallStackHolder) {
+        final int[] relevantStatements = getRelevantStatementIndexes(executable, classCallStackHolder);
+        return relevantStatements != null && relevantStatements.length == 0;
+    }
+
+    /**
+     * @return the indexes of the relevant statements of the body, null if the body wasn't analyzed yet with this
+     * class stack
+     */
+    int[] getRelevantStatementIndexes(CtExecutable executable, ClassCallStackHolder classCallStackHolder) {
+        final BodySummary summary = summaries.get(new SummaryKey(executable, classCallStackHolder));
+        return summary == null ? null : summary.relevantStatements.clone();
+    }
+
+    //the executable is compared by identity, the class stack by the references with their generics
+    private static final class SummaryKey {
+        private final CtExecutable executable;
+        private final List<String> classStack;
+
+        private SummaryKey(CtExecutable executable, ClassCallStackHolder classCallStackHolder) {
+            this.executable = executable;
+            this.classStack = classCallStackHolder == null ? Collections.emptyList()
+                    : classCallStackHolder.getClassStackDescription();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            SummaryKey that = (SummaryKey) o;
+            return executable == that.executable && classStack.equals(that.classStack);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(executable) + classStack.hashCode();
+        }
+    }
+}
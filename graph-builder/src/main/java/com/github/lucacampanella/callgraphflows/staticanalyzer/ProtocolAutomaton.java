@@ -0,0 +1,568 @@
+package com.github.lucacampanella.callgraphflows.staticanalyzer;
+
+import com.github.lucacampanella.callgraphflows.staticanalyzer.instructions.StatementInterface;
+import com.github.lucacampanella.callgraphflows.staticanalyzer.instructions.StatementWithCompanionInterface;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.AbstractMap;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Non deterministic finite automaton over the send / receive events of a flow. It is the alternative to
+ * {@link CombinationsHolder}: instead of enumerating every possible path of the flow, the statements are compiled
+ * into an automaton whose size is linear in the size of the code, and two flows are matched by exploring the
+ * product of their automata.
+ * The body of a loop is compiled only once also when the number of its iterations is bounded: the automaton
+ * counts how many times each loop has been repeated, see {@link #newLoop(int)}, instead of containing a copy of
+ * the body for each iteration. A state of the exploration is then a configuration, made of a state of the automaton
+ * and of the counters of the loops it is in.
+ */
+public class ProtocolAutomaton {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ProtocolAutomaton.class);
+
+    public static final int UNBOUNDED_REPETITIONS = -1;
+
+    /**
+     * Piece of automaton built from a statement or a branch. Besides the normal exit, a fragment has one exit for
+     * each flow break: the statements that follow a flow break are skipped, and the statement that contains the
+     * fragment decides where these exits lead, the same way the locks are removed in {@link CombinationsHolder}.
+     */
+    public static final class Fragment {
+        private final int start;
+        private final int end;
+        private final int breakExit;
+        private final int continueExit;
+        private final int methodExit;
+
+        private Fragment(int start, int end, int breakExit, int continueExit, int methodExit) {
+            this.start = start;
+            this.end = end;
+            this.breakExit = breakExit;
+            this.continueExit = continueExit;
+            this.methodExit = methodExit;
+        }
+
+        public int getStart() {
+            return start;
+        }
+
+        public int getEnd() {
+            return end;
+        }
+
+        public int getBreakExit() {
+            return breakExit;
+        }
+
+        public int getContinueExit() {
+            return continueExit;
+        }
+
+        public int getMethodExit() {
+            return methodExit;
+        }
+    }
+
+    private static final class EventTransition {
+        private final CompanionEvent event;
+        private final int target;
+
+        private EventTransition(CompanionEvent event, int target) {
+            this.event = event;
+            this.target = target;
+        }
+    }
+
+    private enum LoopAction { ENTER, REPEAT, EXIT }
+
+    //an epsilon transition that enters, repeats or leaves a loop, see newLoop
+    private static final class LoopTransition {
+        private final int target;
+        private final int loop;
+        private final LoopAction action;
+
+        private LoopTransition(int target, int loop, LoopAction action) {
+            this.target = target;
+            this.loop = loop;
+            this.action = action;
+        }
+    }
+
+    //a state together with the number of times each loop it is in has been repeated, only the loops whose
+    //iterations are bounded are counted
+    private static final class Configuration {
+        private static final int[] NO_COUNTERS = new int[0];
+
+        private final int state;
+        private final int[] counters; //pairs of loop and repetitions, sorted by loop
+
+        private Configuration(int state, int[] counters) {
+            this.state = state;
+            this.counters = counters;
+        }
+
+        private Configuration withState(int newState) {
+            return new Configuration(newState, counters);
+        }
+
+        private int getRepetitions(int loop) {
+            for(int i = 0; i < counters.length; i += 2) {
+                if(counters[i] == loop) {
+                    return counters[i + 1];
+                }
+            }
+            return 0;
+        }
+
+        private Configuration withRepetitions(int newState, int loop, int repetitions) {
+            final Configuration without = without(newState, loop);
+            int[] newCounters = new int[without.counters.length + 2];
+            int j = 0;
+            boolean added = false;
+            for(int i = 0; i < without.counters.length; i += 2) {
+                if(!added && without.counters[i] > loop) {
+                    newCounters[j++] = loop;
+                    newCounters[j++] = repetitions;
+                    added = true;
+                }
+                newCounters[j++] = without.counters[i];
+                newCounters[j++] = without.counters[i + 1];
+            }
+            if(!added) {
+                newCounters[j++] = loop;
+                newCounters[j] = repetitions;
+            }
+            return new Configuration(newState, newCounters);
+        }
+
+        private Configuration without(int newState, int loop) {
+            for(int i = 0; i < counters.length; i += 2) {
+                if(counters[i] == loop) {
+                    int[] newCounters = new int[counters.length - 2];
+                    System.arraycopy(counters, 0, newCounters, 0, i);
+                    System.arraycopy(counters, i + 2, newCounters, i, counters.length - i - 2);
+                    return new Configuration(newState, newCounters);
+                }
+            }
+            return withState(newState);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Configuration that = (Configuration) o;
+            return state == that.state && Arrays.equals(counters, that.counters);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * state + Arrays.hashCode(counters);
+        }
+    }
+
+    //all the event transitions reachable from a configuration through epsilon transitions, their targets are
+    //configurations
+    private static final class Closure {
+        private final List<EventTransition> transitions = new ArrayList<>();
+        private boolean accepting = false;
+    }
+
+    private final List<List<Integer>> epsilonTransitions = new ArrayList<>();
+    private final List<List<EventTransition>> eventTransitions = new ArrayList<>();
+    private final List<List<LoopTransition>> loopTransitions = new ArrayList<>();
+    //for each loop, how many times its body can be executed again after the first time
+    private final List<Integer> loopsMaxRepetitions = new ArrayList<>();
+    private final Map<Configuration, Integer> configurationIds = new HashMap<>();
+    private final List<Configuration> configurations = new ArrayList<>();
+    private final Map<Integer, Closure> closures = new HashMap<>();
+    private int initialState;
+    private int acceptingState;
+    private boolean lastCheckComplete = true;
+
+    private ProtocolAutomaton() {
+        //private constructor to hide public one
+    }
+
+    /**
+     * Compiles the statements of a flow into an automaton.
+     * @param statements the desugared statements of the call method of the flow
+     * @return the automaton that accepts all the sequences of events the flow can produce
+     */
+    public static ProtocolAutomaton fromStatements(Branch statements) {
+        ProtocolAutomaton automaton = new ProtocolAutomaton();
+        final Fragment root = automaton.compileMethodBody(statements);
+        automaton.initialState = root.getStart();
+        automaton.acceptingState = root.getEnd();
+        LOGGER.trace("Built automaton with {} states", automaton.getNumberOfStates());
+        return automaton;
+    }
+
+    public int getNumberOfStates() {
+        return epsilonTransitions.size();
+    }
+
+    public int newState() {
+        epsilonTransitions.add(new ArrayList<>(2));
+        eventTransitions.add(new ArrayList<>(1));
+        loopTransitions.add(new ArrayList<>(0));
+        return epsilonTransitions.size() - 1;
+    }
+
+    /**
+     * Creates a loop whose body is compiled once: the body is entered with {@link #addLoopEntry(int, int, int)},
+     * executed again with {@link #addLoopRepeat(int, int, int)} and left with {@link #addLoopExit(int, int, int)}.
+     * @param maxRepetitions how many times the body can be executed again after the first time, or
+     *                       {@link #UNBOUNDED_REPETITIONS}, in which case the loop transitions are simple
+     *                       epsilon transitions
+     * @return the id of the loop
+     */
+    public int newLoop(int maxRepetitions) {
+        loopsMaxRepetitions.add(maxRepetitions);
+        return loopsMaxRepetitions.size() - 1;
+    }
+
+    public void addLoopEntry(int from, int to, int loop) {
+        addLoopTransition(from, to, loop, LoopAction.ENTER);
+    }
+
+    public void addLoopRepeat(int from, int to, int loop) {
+        addLoopTransition(from, to, loop, LoopAction.REPEAT);
+    }
+
+    public void addLoopExit(int from, int to, int loop) {
+        addLoopTransition(from, to, loop, LoopAction.EXIT);
+    }
+
+    private void addLoopTransition(int from, int to, int loop, LoopAction action) {
+        if(loopsMaxRepetitions.get(loop) == UNBOUNDED_REPETITIONS) {
+            addEpsilon(from, to);
+        }
+        else {
+            loopTransitions.get(from).add(new LoopTransition(to, loop, action));
+        }
+    }
+
+    public Fragment newFragment() {
+        return new Fragment(newState(), newState(), newState(), newState(), newState());
+    }
+
+    public Fragment emptyFragment() {
+        Fragment res = newFragment();
+        addEpsilon(res.getStart(), res.getEnd());
+        return res;
+    }
+
+    public void addEpsilon(int from, int to) {
+        epsilonTransitions.get(from).add(to);
+    }
+
+    /**
+     * @return a fragment that produces in order all the events of the statement
+     */
+    public Fragment fromCompanionStatement(StatementWithCompanionInterface statement) {
+        Fragment res = newFragment();
+        int curr = res.getStart();
+        for(CompanionEvent event : CompanionEvent.fromStatement(statement)) {
+            int next = newState();
+            eventTransitions.get(curr).add(new EventTransition(event, next));
+            curr = next;
+        }
+        addEpsilon(curr, res.getEnd());
+        return res;
+    }
+
+    /**
+     * Compiles a desugared branch. As in {@link CombinationsHolder#fromBranch(Branch)} the statements after the first
+     * flow break are not reachable.
+     */
+    public Fragment compileBranch(Branch branch) {
+        Fragment res = newFragment();
+        addEpsilon(appendBranch(res, res.getStart(), branch), res.getEnd());
+        return res;
+    }
+
+    /**
+     * Compiles the body of a method, where every flow break simply ends the method
+     */
+    public Fragment compileMethodBody(Branch body) {
+        Fragment inner = compileBranch(body);
+        Fragment res = newFragment();
+        addEpsilon(res.getStart(), inner.getStart());
+        addEpsilon(inner.getEnd(), res.getEnd());
+        addEpsilon(inner.getBreakExit(), res.getEnd());
+        addEpsilon(inner.getContinueExit(), res.getEnd());
+        addEpsilon(inner.getMethodExit(), res.getEnd());
+        return res;
+    }
+
+    /**
+     * Appends the statements of the branch starting from the state <code>from</code>, the flow breaks are
+     * connected to the exits of <code>container</code>
+     * @return the state reached once all the statements are executed
+     */
+    public int appendBranch(Fragment container, int from, Branch branch) {
+        int curr = from;
+        for(StatementInterface instr : branch) {
+            if(instr.isContinueLoopFlowBreak()) {
+                addEpsilon(curr, container.getContinueExit());
+                return newState(); //nothing can follow
+            }
+            if(instr.isBreakLoopFlowBreak()) {
+                addEpsilon(curr, container.getBreakExit());
+                return newState();
+            }
+            if(instr.isMethodFlowBreak()) {
+                addEpsilon(curr, container.getMethodExit());
+                return newState();
+            }
+            curr = appendStatement(container, curr, instr);
+        }
+        return curr;
+    }
+
+    /**
+     * Appends a single statement starting from the state <code>from</code>, the flow breaks are
+     * connected to the exits of <code>container</code>
+     * @return the state reached once the statement is executed
+     */
+    public int appendStatement(Fragment container, int from, StatementInterface statement) {
+        Fragment fragment = statement.toAutomatonFragment(this);
+        addEpsilon(from, fragment.getStart());
+        addEpsilon(fragment.getBreakExit(), container.getBreakExit());
+        addEpsilon(fragment.getContinueExit(), container.getContinueExit());
+        addEpsilon(fragment.getMethodExit(), container.getMethodExit());
+        return fragment.getEnd();
+    }
+
+    private int getConfigurationId(Configuration configuration) {
+        Integer id = configurationIds.get(configuration);
+        if(id == null) {
+            id = configurations.size();
+            configurations.add(configuration);
+            configurationIds.put(configuration, id);
+        }
+        return id;
+    }
+
+    private int getInitialConfiguration() {
+        return getConfigurationId(new Configuration(initialState, Configuration.NO_COUNTERS));
+    }
+
+    private Closure getClosure(int configuration) {
+        Closure closure = closures.get(configuration);
+        if(closure == null) {
+            closure = computeClosure(configuration);
+            closures.put(configuration, closure);
+        }
+        return closure;
+    }
+
+    private Closure computeClosure(int configuration) {
+        Closure closure = new Closure();
+        Set<Integer> visited = new HashSet<>();
+        Deque<Integer> toVisit = new ArrayDeque<>();
+        toVisit.push(configuration);
+        visited.add(configuration);
+        while(!toVisit.isEmpty()) {
+            final Configuration curr = configurations.get(toVisit.pop());
+            if(curr.state == acceptingState) {
+                closure.accepting = true;
+            }
+            for(EventTransition transition : eventTransitions.get(curr.state)) {
+                closure.transitions.add(new EventTransition(transition.event,
+                        getConfigurationId(curr.withState(transition.target))));
+            }
+            List<Configuration> nextConfigurations = new ArrayList<>();
+            for(int next : epsilonTransitions.get(curr.state)) {
+                nextConfigurations.add(curr.withState(next));
+            }
+            for(LoopTransition transition : loopTransitions.get(curr.state)) {
+                final Configuration next = followLoopTransition(curr, transition);
+                if(next != null) {
+                    nextConfigurations.add(next);
+                }
+            }
+            for(Configuration next : nextConfigurations) {
+                final int nextId = getConfigurationId(next);
+                if(visited.add(nextId)) {
+                    toVisit.push(nextId);
+                }
+            }
+        }
+        return closure;
+    }
+
+    //null if the loop has already been repeated as many times as allowed
+    private Configuration followLoopTransition(Configuration configuration, LoopTransition transition) {
+        switch (transition.action) {
+            case ENTER:
+                return configuration.withRepetitions(transition.target, transition.loop, 0);
+            case REPEAT:
+                final int repetitions = configuration.getRepetitions(transition.loop);
+                if(repetitions >= loopsMaxRepetitions.get(transition.loop)) {
+                    return null;
+                }
+                return configuration.withRepetitions(transition.target, transition.loop, repetitions + 1);
+            default:
+                return configuration.without(transition.target, transition.loop);
+        }
+    }
+
+    private static final class ProductEdge {
+        private final int from;
+        private final int to;
+        private final CompanionEvent leftEvent;
+        private final CompanionEvent rightEvent;
+
+        private ProductEdge(int from, int to, CompanionEvent leftEvent, CompanionEvent rightEvent) {
+            this.from = from;
+            this.to = to;
+            this.leftEvent = leftEvent;
+            this.rightEvent = rightEvent;
+        }
+    }
+
+    /**
+     * Explores the product of the two automata, equivalent of
+     * {@link CombinationsHolder#checkIfMatchesAndDraw(CombinationsHolder)}. The links are created only for the
+     * events that are part of at least one pair of sequences that match entirely.
+     * If the comparisons exceed the {@link MatchingBudget} the exploration stops and only the links found in the
+     * part of the product explored until then are created, see {@link #isLastCheckComplete()}.
+     * @param other the automaton of the initiated flow
+     * @return true if at least one sequence of this automaton matches a sequence of the other one, or if the
+     * exploration stopped before finding one, since the part of the product not explored could contain it
+     */
+    public boolean checkIfMatchesAndDraw(ProtocolAutomaton other) {
+        return checkIfMatches(other, true);
+    }
+
+    /**
+     * Same as {@link #checkIfMatchesAndDraw(ProtocolAutomaton)}, without creating any link
+     */
+    public boolean checkIfMatches(ProtocolAutomaton other) {
+        return checkIfMatches(other, false);
+    }
+
+    private boolean checkIfMatches(ProtocolAutomaton other, boolean createLinks) {
+        lastCheckComplete = true;
+        long comparisons = 0;
+        Map<Long, Integer> productStates = new HashMap<>();
+        List<int[]> statesPairs = new ArrayList<>();
+        List<ProductEdge> edges = new ArrayList<>();
+        List<Integer> acceptingProductStates = new ArrayList<>();
+
+        Deque<Integer> toVisit = new ArrayDeque<>();
+        toVisit.add(getOrAddProductState(productStates, statesPairs, getInitialConfiguration(),
+                other.getInitialConfiguration(), toVisit));
+
+        while(!toVisit.isEmpty()) {
+            final int curr = toVisit.poll();
+            final int[] pair = statesPairs.get(curr);
+            final Closure leftClosure = getClosure(pair[0]);
+            final Closure rightClosure = other.getClosure(pair[1]);
+            if(leftClosure.accepting && rightClosure.accepting) {
+                acceptingProductStates.add(curr);
+            }
+            comparisons += (long) leftClosure.transitions.size() * rightClosure.transitions.size();
+            if(comparisons > MatchingBudget.getMaxComparisons()) {
+                LOGGER.warn("More than {} comparisons needed, the product of the automata is only partially explored",
+                        MatchingBudget.getMaxComparisons());
+                lastCheckComplete = false;
+                break;
+            }
+            for(EventTransition leftTransition : leftClosure.transitions) {
+                for(EventTransition rightTransition : rightClosure.transitions) {
+                    if(leftTransition.event.matches(rightTransition.event)) {
+                        int next = getOrAddProductState(productStates, statesPairs,
+                                leftTransition.target, rightTransition.target, toVisit);
+                        edges.add(new ProductEdge(curr, next, leftTransition.event, rightTransition.event));
+                    }
+                }
+            }
+        }
+        LOGGER.trace("Explored {} product states", statesPairs.size());
+
+        final boolean[] canAccept = findStatesThatCanAccept(statesPairs.size(), edges, acceptingProductStates);
+
+        if(createLinks) {
+            //the same pair can be found multiple times, for example when a loop is unfolded
+            Set<Map.Entry<CompanionEvent, CompanionEvent>> links = new LinkedHashSet<>();
+            for(ProductEdge edge : edges) {
+                if(canAccept[edge.to]) {
+                    links.add(new AbstractMap.SimpleImmutableEntry<>(edge.leftEvent, edge.rightEvent));
+                }
+            }
+            CompanionEvent.publishLinks(
+                    () -> links.forEach(link -> link.getKey().createGraphLink(link.getValue())));
+        }
+
+        if(!lastCheckComplete) {
+            //the protocol is reported as not fully verified, but not as invalid
+            return true;
+        }
+        return canAccept[0];
+    }
+
+    /**
+     * @return false if the last call to {@link #checkIfMatchesAndDraw(ProtocolAutomaton)} stopped before exploring
+     * the whole product because of the {@link MatchingBudget}
+     */
+    public boolean isLastCheckComplete() {
+        return lastCheckComplete;
+    }
+
+    private static int getOrAddProductState(Map<Long, Integer> productStates, List<int[]> statesPairs,
+                                            int leftConfiguration, int rightConfiguration, Deque<Integer> toVisit) {
+        final long key = ((long) leftConfiguration << 32) | (rightConfiguration & 0xFFFFFFFFL);
+        Integer index = productStates.get(key);
+        if(index == null) {
+            index = statesPairs.size();
+            statesPairs.add(new int[]{leftConfiguration, rightConfiguration});
+            productStates.put(key, index);
+            toVisit.add(index);
+        }
+        return index;
+    }
+
+    //backwards visit starting from the accepting states
+    private static boolean[] findStatesThatCanAccept(int numberOfStates, List<ProductEdge> edges,
+                                                     List<Integer> acceptingStates) {
+        List<List<Integer>> incoming = new ArrayList<>(numberOfStates);
+        for(int i = 0; i < numberOfStates; ++i) {
+            incoming.add(new ArrayList<>(1));
+        }
+        edges.forEach(edge -> incoming.get(edge.to).add(edge.from));
+
+        boolean[] canAccept = new boolean[numberOfStates];
+        Deque<Integer> toVisit = new ArrayDeque<>();
+        for(int state : acceptingStates) {
+            canAccept[state] = true;
+            toVisit.add(state);
+        }
+        while(!toVisit.isEmpty()) {
+            for(int previous : incoming.get(toVisit.poll())) {
+                if(!canAccept[previous]) {
+                    canAccept[previous] = true;
+                    toVisit.add(previous);
+                }
+            }
+        }
+        return canAccept;
+    }
+}
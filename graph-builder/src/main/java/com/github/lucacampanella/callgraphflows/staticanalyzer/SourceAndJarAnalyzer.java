@@ -11,8 +11,14 @@ import spoon.reflect.declaration.CtClass;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 
 public class SourceAndJarAnalyzer extends AnalyzerWithModel {
@@ -22,6 +28,11 @@ public class SourceAndJarAnalyzer extends AnalyzerWithModel {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(SourceAndJarAnalyzer.class);
 
+    private static final String DECOMPILED_SRC_PATH =
+            Paths.get(System.getProperty("java.io.tmpdir"), "spoon-camp-tmp", "decompiledSrc").toString();
+
+    private static int decompilerThreads = 1;
+
     public SourceAndJarAnalyzer(List<String> pathsToFoldersOrSrc) throws IOException {
         init(pathsToFoldersOrSrc, null, null, false);
     }
@@ -78,20 +89,106 @@ public class SourceAndJarAnalyzer extends AnalyzerWithModel {
         }
 
         if(pathsToJars != null) {
-            String decompiledSrcPath =
-                    Paths.get(System.getProperty("java.io.tmpdir"), "spoon-camp-tmp", "decompiledSrc").toString();
-            final File decompiledSrcFolder = new File(decompiledSrcPath);
-            FileUtils.deleteDirectory(decompiledSrcFolder);
-            for(String path : pathsToJars) {
-                decompileJarToFolder(path, decompiledSrcPath, decompilerEnum);
+            //each jar has its own folder, they are added from the last one so that, as when they were all decompiled
+            //in the same folder, a class contained in several jars is taken from the last one
+            final List<File> decompiledSrcFolders = decompileJars(pathsToJars, decompilerEnum);
+            for(int i = decompiledSrcFolders.size() - 1; i >= 0; --i) {
+                addFolderToModel(addedClassesNamesSet, spoon, decompiledSrcFolders.get(i));
             }
-            addFolderToModel(addedClassesNamesSet, spoon, decompiledSrcFolder);
         }
         spoon.buildModel();
         model = spoon.getModel();
     }
 
-    private static void addFolderToModel(Set<String> addedClassesNamesSet, Launcher spoon, File folder) throws IOException {
+    public static int getDecompilerThreads() {
+        return decompilerThreads;
+    }
+
+    public static void setDecompilerThreads(int decompilerThreads) {
+        SourceAndJarAnalyzer.decompilerThreads = Math.max(1, decompilerThreads);
+    }
+
+    /**
+     * Decompiles each jar in its own folder, taken from the {@link DecompilationCache} if it's enabled, with up to
+     * {@link #getDecompilerThreads()} jars decompiled at the same time. The decompilers are not known to be thread
+     * safe, so when several jars are decompiled at the same time each one is decompiled by a {@link DecompilerProcess}
+     * @return the folders with the sources of the jars, in the same order as the jars
+     */
+    static List<File> decompileJars(List<String> pathsToJars, DecompilerEnum decompilerEnum) throws IOException {
+        if(!DecompilationCache.isEnabled()) {
+            FileUtils.deleteDirectory(new File(DECOMPILED_SRC_PATH));
+        }
+        final boolean inParallel = decompilerThreads > 1 && pathsToJars.size() > 1;
+        List<Callable<File>> tasks = new ArrayList<>(pathsToJars.size());
+        for(int i = 0; i < pathsToJars.size(); ++i) {
+            final String path = pathsToJars.get(i);
+            final String decompiledSrcPath = Paths.get(DECOMPILED_SRC_PATH, i + "-" + new File(path).getName())
+                    .toString();
+            tasks.add(() -> {
+                if(DecompilationCache.isEnabled()) {
+                    return DecompilationCache.getDecompiledSources(path, decompilerEnum, inParallel);
+                }
+                if(inParallel) {
+                    final File decompiledDirectory = new File(decompiledSrcPath);
+                    decompiledDirectory.mkdirs();
+                    DecompilerProcess.decompile(path, decompiledDirectory, decompilerEnum);
+                }
+                else {
+                    decompileJarToFolder(path, decompiledSrcPath, decompilerEnum);
+                }
+                return new File(decompiledSrcPath);
+            });
+        }
+
+        List<File> res = new ArrayList<>(tasks.size());
+        if(!inParallel) {
+            for(Callable<File> task : tasks) {
+                res.add(callDecompilation(task));
+            }
+            return res;
+        }
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.min(decompilerThreads, tasks.size()));
+        try {
+            List<Future<File>> results = new ArrayList<>(tasks.size());
+            for(Callable<File> task : tasks) {
+                results.add(executor.submit(task));
+            }
+            for(Future<File> result : results) {
+                res.add(result.get());
+            }
+        } catch (ExecutionException e) {
+            throw rethrowDecompilationFailure(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while decompiling the jars");
+        } finally {
+            executor.shutdownNow();
+        }
+        return res;
+    }
+
+    private static File callDecompilation(Callable<File> task) throws IOException {
+        try {
+            return task.call();
+        } catch (Exception e) {
+            throw rethrowDecompilationFailure(e);
+        }
+    }
+
+    private static IOException rethrowDecompilationFailure(Throwable cause) {
+        if(cause instanceof IOException) {
+            return (IOException) cause;
+        }
+        if(cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+        }
+        if(cause instanceof Error) {
+            throw (Error) cause;
+        }
+        throw new SpoonException("Couldn't decompile the jars", cause);
+    }
+
+    static void addFolderToModel(Set<String> addedClassesNamesSet, Launcher spoon, File folder) throws IOException {
         final Collection<File> sourceFiles =
                 FileUtils.listFiles(folder, new String[]{"java"}, true);
         for (File srcFile : sourceFiles) {
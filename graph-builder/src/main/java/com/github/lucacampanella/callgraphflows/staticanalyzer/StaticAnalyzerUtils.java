@@ -7,14 +7,13 @@ import net.corda.core.flows.FlowSession;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import spoon.reflect.code.CtAbstractInvocation;
-import spoon.reflect.code.CtLiteral;
 import spoon.reflect.code.CtStatement;
 import spoon.reflect.code.CtVariableRead;
 import spoon.reflect.declaration.CtClass;
 import spoon.reflect.declaration.CtElement;
 import spoon.reflect.declaration.CtMethod;
+import spoon.reflect.declaration.CtTypeMember;
 import spoon.reflect.reference.CtTypeReference;
-import spoon.reflect.visitor.filter.NamedElementFilter;
 import spoon.reflect.visitor.filter.TypeFilter;
 
 import java.util.*;
@@ -36,14 +35,12 @@ public class StaticAnalyzerUtils {
     }
 
     public static CtMethod findCallMethod(CtClass klass) {
-        List<CtMethod> call;
           //we look in the class and if it's not there in the superclasses
         CtClass currClass = klass;
         while(true) {
-            call = currClass.getElements(new NamedElementFilter(CtMethod.class,
-                    "call"));
-            if(!call.isEmpty()) {
-                return call.get(0);
+            final CtMethod call = findDeclaredCallMethod(currClass);
+            if(call != null) {
+                return call;
             }
             try {
                 currClass = (CtClass) currClass.getSuperclass().getTypeDeclaration();
@@ -57,6 +54,16 @@ public class StaticAnalyzerUtils {
         }
     }
 
+    //only the methods declared by the class itself, not the ones of its inner classes or lambdas
+    private static CtMethod findDeclaredCallMethod(CtClass<?> klass) {
+        for(CtTypeMember member : klass.getTypeMembers()) {
+            if(member instanceof CtMethod && "call".equals(member.getSimpleName())) {
+                return (CtMethod) member;
+            }
+        }
+        return null;
+    }
+
     public static List<CtClass> getAllWronglyDoubleAnnotatedClasses(List<CtClass> initiatingClasses) {
         List<CtClass> wronglyDoubleAnnotated = new ArrayList<>();
 
@@ -72,16 +79,16 @@ public class StaticAnalyzerUtils {
         return wronglyDoubleAnnotated;
     }
 
-    public static CtTypeReference nullifyIfVoidType(CtTypeReference typeRef) {
-        if(typeRef.box().isSubtypeOf(MatcherHelper.getTypeReference(Void.class)) ||
-        typeRef.isSubtypeOf(MatcherHelper.getTypeReference(Unit.class))) {
+    public static CtTypeReference nullifyIfVoidType(CtTypeReference typeRef, AnalyzerWithModel analyzer) {
+        final SubtypeCache subtypeCache = analyzer.getSubtypeCache();
+        if(subtypeCache.isSubtypeOf(typeRef.box(), Void.class) || subtypeCache.isSubtypeOf(typeRef, Unit.class)) {
             return null;
         }
         return typeRef;
     }
 
-    public static String nullifyIfVoidTypeAndGetString(CtTypeReference typeRef) {
-        final CtTypeReference possiblyNullRef = nullifyIfVoidType(typeRef);
+    public static String nullifyIfVoidTypeAndGetString(CtTypeReference typeRef, AnalyzerWithModel analyzer) {
+        final CtTypeReference possiblyNullRef = nullifyIfVoidType(typeRef, analyzer);
         if(possiblyNullRef == null) {
             return null;
         }
@@ -370,20 +377,11 @@ public class StaticAnalyzerUtils {
     public static Branch getAllRelevantMethodInvocations(CtElement statement, AnalyzerWithModel analyzer) {
         Branch res = new Branch();
 
-        if(statement instanceof CtAbstractInvocation) { //it's a method call
-            CtAbstractInvocation inv = (CtAbstractInvocation) statement;
-            if(!MatcherHelper.isCordaMethod(inv)) {
-                MethodInvocation methodInvocation = MethodInvocation.fromCtStatement((CtStatement) inv, analyzer);
-                res.addIfRelevantForLoopFlowBreakAnalysis(methodInvocation);
-                return res;
-            }
-        }
-        if(!(statement instanceof CtLiteral)) {
-            final List<CtElement> directChildren = statement.getDirectChildren();
-
-            for (CtElement elem : directChildren) {
-                res.addIfRelevantForLoopFlowBreakAnalysis(getAllRelevantMethodInvocations(elem, analyzer));
-            }
+        //the invocations found under the element are cached, the statements are created anew every time since
+        //they depend on the current state of the analysis
+        for(CtAbstractInvocation inv : analyzer.getClassificationCache().getRelevantInvocations(statement)) {
+            MethodInvocation methodInvocation = MethodInvocation.fromCtStatement((CtStatement) inv, analyzer);
+            res.addIfRelevantForLoopFlowBreakAnalysis(methodInvocation);
         }
 
         return res;
@@ -0,0 +1,47 @@
+package com.github.lucacampanella.callgraphflows.staticanalyzer;
+
+import com.github.lucacampanella.callgraphflows.staticanalyzer.matchers.MatcherHelper;
+import spoon.reflect.reference.CtTypeParameterReference;
+import spoon.reflect.reference.CtTypeReference;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Memoizes the subtype checks between the types of a model. Spoon walks the hierarchy of the type at each
+ * {@link CtTypeReference#isSubtypeOf(CtTypeReference)}, while the analysis asks the same few questions (is it a
+ * FlowSession? a FlowLogic? Void?) for almost every statement.
+ * The answers are keyed by the qualified names, which identify a type in a model. Type parameters and supertypes
+ * with type arguments are not cached, since their name alone doesn't decide the answer.
+ */
+public final class SubtypeCache {
+
+    //qualified name of the supertype -> qualified name of the type -> answer
+    private final Map<String, Map<String, Boolean>> answers = new ConcurrentHashMap<>();
+
+    public boolean isSubtypeOf(CtTypeReference<?> type, Class<?> superClass) {
+        return isSubtypeOf(type, MatcherHelper.getTypeReference(superClass));
+    }
+
+    public boolean isSubtypeOf(CtTypeReference<?> type, CtTypeReference<?> superType) {
+        if(!isCacheable(type) || !isCacheable(superType) || !superType.getActualTypeArguments().isEmpty()) {
+            return type.isSubtypeOf(superType);
+        }
+        final Map<String, Boolean> typesAnswers =
+                answers.computeIfAbsent(superType.getQualifiedName(), key -> new ConcurrentHashMap<>());
+        Boolean res = typesAnswers.get(type.getQualifiedName());
+        if(res == null) {
+            res = type.isSubtypeOf(superType);
+            typesAnswers.put(type.getQualifiedName(), res);
+        }
+        return res;
+    }
+
+    private static boolean isCacheable(CtTypeReference<?> type) {
+        return !(type instanceof CtTypeParameterReference) && type.getQualifiedName() != null;
+    }
+
+    int size() {
+        return answers.values().stream().mapToInt(Map::size).sum();
+    }
+}
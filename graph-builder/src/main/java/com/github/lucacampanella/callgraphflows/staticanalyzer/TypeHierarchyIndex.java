@@ -0,0 +1,164 @@
+package com.github.lucacampanella.callgraphflows.staticanalyzer;
+
+import spoon.reflect.declaration.CtClass;
+import spoon.reflect.reference.CtTypeReference;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Superclass tree of the classes of a model, built once per model. A class can only be a subtype of another class
+ * through its chain of superclasses, so the classes form a forest. The forest is visited depth first and each class
+ * is numbered with the interval of the visit of its subtree: a class is a subclass of another one if and only if its
+ * interval is contained in the interval of the other one.
+ */
+final class TypeHierarchyIndex {
+
+    private final List<CtClass> classes; //in the order of the model
+    private final Map<CtClass, Integer> positions = new IdentityHashMap<>();
+    private final int[] enter;
+    private final int[] exit;
+    //positions of the classes ordered by their enter number, so that each subtree is a contiguous range
+    private final int[] byEnter;
+
+    private TypeHierarchyIndex(List<CtClass> classes) {
+        this.classes = classes;
+        enter = new int[classes.size()];
+        exit = new int[classes.size()];
+        byEnter = new int[classes.size()];
+    }
+
+    /**
+     * @param classes all the classes of the model, in the order of the model
+     */
+    static TypeHierarchyIndex fromClasses(List<CtClass> classes) {
+        TypeHierarchyIndex res = new TypeHierarchyIndex(new ArrayList<>(classes));
+        Map<String, Integer> positionsByName = new HashMap<>();
+        for(int i = 0; i < res.classes.size(); ++i) {
+            res.positions.put(res.classes.get(i), i);
+            positionsByName.putIfAbsent(res.classes.get(i).getQualifiedName(), i);
+        }
+
+        List<List<Integer>> children = new ArrayList<>(res.classes.size());
+        List<Integer> roots = new ArrayList<>();
+        for(int i = 0; i < res.classes.size(); ++i) {
+            children.add(new ArrayList<>(1));
+        }
+        for(int i = 0; i < res.classes.size(); ++i) {
+            final int parent = findParent(res.classes.get(i), i, positionsByName);
+            if(parent >= 0) {
+                children.get(parent).add(i);
+            }
+            else {
+                roots.add(i);
+            }
+        }
+        res.number(roots, children);
+        return res;
+    }
+
+    //the closest superclass that is in the model, -1 if there is none
+    private static int findParent(CtClass klass, int position, Map<String, Integer> positionsByName) {
+        Set<String> visited = new HashSet<>();
+        CtTypeReference superclass = klass.getSuperclass();
+        while(superclass != null && visited.add(superclass.getQualifiedName())) {
+            final Integer parent = positionsByName.get(superclass.getQualifiedName());
+            if(parent != null) {
+                return parent != position ? parent : -1;
+            }
+            superclass = superclass.getSuperclass();
+        }
+        return -1;
+    }
+
+    private void number(List<Integer> roots, List<List<Integer>> children) {
+        int counter = 0;
+        boolean[] visited = new boolean[classes.size()];
+        //the second element of the frame is the index of the next child to visit
+        Deque<int[]> stack = new ArrayDeque<>();
+        for(int root : roots) {
+            stack.push(new int[]{root, 0});
+            visited[root] = true;
+            byEnter[counter] = root;
+            enter[root] = counter++;
+            while(!stack.isEmpty()) {
+                final int[] frame = stack.peek();
+                final List<Integer> nodeChildren = children.get(frame[0]);
+                if(frame[1] < nodeChildren.size()) {
+                    final int child = nodeChildren.get(frame[1]++);
+                    if(!visited[child]) {
+                        visited[child] = true;
+                        byEnter[counter] = child;
+                        enter[child] = counter++;
+                        stack.push(new int[]{child, 0});
+                    }
+                }
+                else {
+                    exit[frame[0]] = counter - 1;
+                    stack.pop();
+                }
+            }
+        }
+        //classes in a cycle of superclasses are not reachable from a root, they are left alone
+        for(int i = 0; i < classes.size(); ++i) {
+            if(!visited[i]) {
+                byEnter[counter] = i;
+                enter[i] = counter;
+                exit[i] = counter++;
+            }
+        }
+    }
+
+    boolean contains(CtClass klass) {
+        return positions.containsKey(klass);
+    }
+
+    /**
+     * @return true if the class is the other class or one of its subclasses, both must be in the index
+     */
+    boolean isSubclassOf(CtClass klass, CtClass superClass) {
+        final int position = positions.get(klass);
+        final int superPosition = positions.get(superClass);
+        return enter[superPosition] <= enter[position] && exit[position] <= exit[superPosition];
+    }
+
+    /**
+     * @return the class and all its subclasses in the model, in the order of the model
+     */
+    List<CtClass> getSubClassesIncludingThis(CtClass superClass) {
+        final int[] subtree = getSubtreePositions(positions.get(superClass));
+        List<CtClass> res = new ArrayList<>(subtree.length);
+        for(int position : subtree) {
+            res.add(classes.get(position));
+        }
+        return res;
+    }
+
+    /**
+     * Same result as {@link AnalyzerWithModel#getFurthestAwaySubclass(CtClass)}: going through the subclasses in the
+     * order of the model, the last one that extends all the ones found until then
+     */
+    CtClass getFurthestAwaySubclass(CtClass superClass) {
+        int furthestAway = positions.get(superClass);
+        for(int position : getSubtreePositions(furthestAway)) {
+            if(enter[furthestAway] <= enter[position] && exit[position] <= exit[furthestAway]) {
+                furthestAway = position;
+            }
+        }
+        return classes.get(furthestAway);
+    }
+
+    private int[] getSubtreePositions(int root) {
+        final int[] res = Arrays.copyOfRange(byEnter, enter[root], exit[root] + 1);
+        Arrays.sort(res);
+        return res;
+    }
+}
@@ -4,6 +4,8 @@ import com.github.lucacampanella.callgraphflows.graphics.components2.GBaseText;
 import com.github.lucacampanella.callgraphflows.graphics.components2.GInstruction;
 import com.github.lucacampanella.callgraphflows.staticanalyzer.AnalyzerWithModel;
 import com.github.lucacampanella.callgraphflows.staticanalyzer.Branch;
+import com.github.lucacampanella.callgraphflows.staticanalyzer.CachedCombinations;
+import com.github.lucacampanella.callgraphflows.staticanalyzer.CombinationsHolder;
 import com.github.lucacampanella.callgraphflows.staticanalyzer.StaticAnalyzerUtils;
 import com.github.lucacampanella.callgraphflows.staticanalyzer.matchers.MatcherHelper;
 import com.github.lucacampanella.callgraphflows.utils.Utils;
@@ -23,7 +25,7 @@ public abstract class BranchingStatement implements StatementWithCompanionInterf
     StatementWithCompanionInterface blockingStatementInCondition;
     GInstruction conditionInstruction = null;
     Branch internalMethodInvocations = new Branch();
-
+    private final CachedCombinations resultingCombinations = new CachedCombinations();
 
     protected BranchingStatement(){}
 
@@ -62,6 +64,17 @@ public abstract class BranchingStatement implements StatementWithCompanionInterf
         return hasBlockingStatementInCondition();
     }
 
+    @Override
+    public CombinationsHolder getResultingCombinations() {
+        return resultingCombinations.get(this::computeResultingCombinations);
+    }
+
+    /**
+     * Called only once per statement, the result is cached by {@link #getResultingCombinations()}
+     * @return all the possible combinations that can originate by this statement
+     */
+    protected abstract CombinationsHolder computeResultingCombinations();
+
     @Override
     public boolean isConsumedForCompanionAnalysis() {
         return !hasBlockingStatementInCondition() || blockingStatementInCondition.isConsumedForCompanionAnalysis();
@@ -3,6 +3,7 @@ package com.github.lucacampanella.callgraphflows.staticanalyzer.instructions;
 import com.github.lucacampanella.callgraphflows.staticanalyzer.AnalyzerWithModel;
 import com.github.lucacampanella.callgraphflows.staticanalyzer.Branch;
 import com.github.lucacampanella.callgraphflows.staticanalyzer.CombinationsHolder;
+import com.github.lucacampanella.callgraphflows.staticanalyzer.ProtocolAutomaton;
 import com.github.lucacampanella.callgraphflows.staticanalyzer.matchers.MatcherHelper;
 import spoon.reflect.code.CtDo;
 import spoon.reflect.code.CtStatement;
@@ -54,7 +55,7 @@ public class DoWhile extends LoopBranchingStatement {
     }
 
     @Override
-    public CombinationsHolder getResultingCombinations() {
+    protected CombinationsHolder computeResultingCombinations() {
         List<CombinationsHolder> unfoldedCombinations = new ArrayList<>(UNFOLD_ITERATIONS+1);
         CombinationsHolder bodyComb = CombinationsHolder.fromBranch(getBody());
 
@@ -69,4 +70,12 @@ public class DoWhile extends LoopBranchingStatement {
 
         return unfoldBody(unfoldedCombinations, bodyComb);
     }
+
+    @Override
+    public ProtocolAutomaton.Fragment toAutomatonFragment(ProtocolAutomaton automaton) {
+        ProtocolAutomaton.Fragment res = automaton.newFragment();
+        //at least once the body is executed, then it can be executed again as many times as the other loops
+        appendBodyInAutomaton(automaton, res, res.getStart(), UNFOLD_ITERATIONS);
+        return res;
+    }
 }
@@ -3,7 +3,6 @@ package com.github.lucacampanella.callgraphflows.staticanalyzer.instructions;
 import com.github.lucacampanella.callgraphflows.graphics.components2.GBaseText;
 import com.github.lucacampanella.callgraphflows.staticanalyzer.AnalyzerWithModel;
 import com.github.lucacampanella.callgraphflows.staticanalyzer.StaticAnalyzerUtils;
-import com.github.lucacampanella.callgraphflows.staticanalyzer.matchers.MatcherHelper;
 import net.corda.core.flows.FlowLogic;
 import spoon.reflect.code.CtAssignment;
 import spoon.reflect.code.CtLocalVariable;
@@ -28,7 +27,7 @@ public class FlowAssignment extends InstructionStatement {
     }
 
     public static FlowAssignment fromCtStatement(CtStatement statement, AnalyzerWithModel analyzer) {
-        if(!((CtTypedElement) statement).getType().isSubtypeOf(MatcherHelper.getTypeReference(FlowLogic.class))) {
+        if(!analyzer.getSubtypeCache().isSubtypeOf(((CtTypedElement) statement).getType(), FlowLogic.class)) {
             return null;
         }
 
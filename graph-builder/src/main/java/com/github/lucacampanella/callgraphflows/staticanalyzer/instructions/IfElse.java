@@ -6,6 +6,7 @@ import com.github.lucacampanella.callgraphflows.graphics.components2.GInstructio
 import com.github.lucacampanella.callgraphflows.staticanalyzer.AnalyzerWithModel;
 import com.github.lucacampanella.callgraphflows.staticanalyzer.Branch;
 import com.github.lucacampanella.callgraphflows.staticanalyzer.CombinationsHolder;
+import com.github.lucacampanella.callgraphflows.staticanalyzer.ProtocolAutomaton;
 import com.github.lucacampanella.callgraphflows.staticanalyzer.matchers.MatcherHelper;
 import spoon.reflect.code.CtExpression;
 import spoon.reflect.code.CtIf;
@@ -140,7 +141,7 @@ public class IfElse extends BranchingStatement {
     }
 
     @Override
-    public CombinationsHolder getResultingCombinations() {
+    protected CombinationsHolder computeResultingCombinations() {
         CombinationsHolder mergedCombination = new CombinationsHolder(false);
         if(getBranchTrue() != null) {
             mergedCombination.mergeWith(CombinationsHolder.fromBranch(getBranchTrue()));
@@ -150,7 +151,8 @@ public class IfElse extends BranchingStatement {
         }
         CombinationsHolder res;
         if(hasBlockingStatementInCondition()) {
-            res = getBlockingStatementInCondition().getResultingCombinations();
+            res = CombinationsHolder.fromOtherCombination(
+                    getBlockingStatementInCondition().getResultingCombinations());
             res.combineWith(mergedCombination);
         }
         else {
@@ -159,6 +161,18 @@ public class IfElse extends BranchingStatement {
         return res;
     }
 
+    @Override
+    public ProtocolAutomaton.Fragment toAutomatonFragment(ProtocolAutomaton automaton) {
+        ProtocolAutomaton.Fragment res = automaton.newFragment();
+        int afterCondition = res.getStart();
+        if(hasBlockingStatementInCondition()) {
+            afterCondition = automaton.appendStatement(res, afterCondition, getBlockingStatementInCondition());
+        }
+        automaton.addEpsilon(automaton.appendBranch(res, afterCondition, getBranchTrue()), res.getEnd());
+        automaton.addEpsilon(automaton.appendBranch(res, afterCondition, getBranchFalse()), res.getEnd());
+        return res;
+    }
+
     public Branch getBranchTrue() {
         return branchTrue;
     }
@@ -175,6 +189,24 @@ public class IfElse extends BranchingStatement {
                 getBranchFalse().allInitiatingFlowsHaveValidProtocolAndSetupLinks();
     }
 
+    @Override
+    public boolean checkIfContainsValidProtocol() {
+        return super.checkIfContainsValidProtocol()
+                && (!hasBlockingStatementInCondition()
+                || getBlockingStatementInCondition().checkIfContainsValidProtocol()) &&
+                getBranchTrue().allInitiatingFlowsHaveValidProtocol() &&
+                getBranchFalse().allInitiatingFlowsHaveValidProtocol();
+    }
+
+    @Override
+    public boolean isProtocolFullyVerified() {
+        return super.isProtocolFullyVerified()
+                && (!hasBlockingStatementInCondition()
+                || getBlockingStatementInCondition().isProtocolFullyVerified()) &&
+                getBranchTrue().allInitiatingFlowsFullyVerified() &&
+                getBranchFalse().allInitiatingFlowsFullyVerified();
+    }
+
     @Override
     public boolean hasSendOrReceiveAtThisLevel() {
         return super.hasSendOrReceiveAtThisLevel() ||
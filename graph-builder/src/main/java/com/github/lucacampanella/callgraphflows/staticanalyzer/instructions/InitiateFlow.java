@@ -45,7 +45,7 @@ public class InitiateFlow extends InstructionStatement {
             initiateFlow.targetSessionName = Optional.ofNullable(((CtAssignment) statement).getAssigned().toString());
         }
 
-        CtAbstractInvocation inv = MatcherHelper.getFirstMatchedExpression(statement, "initiateFlowMatcher");
+        CtAbstractInvocation inv = MatcherHelper.getFirstMatchedExpression(statement, "initiateFlowMatcher", analyzer);
         try {
             initiateFlow.partyArgument = inv.getArguments().get(0).toString();
         } catch (NullPointerException e) {
@@ -42,6 +42,16 @@ public class InitiatingSubFlow extends SubFlowBaseWithAnalysis {
         return super.checkIfContainsValidProtocolAndSetupLinks() &&
                 resultOfClassAnalysis.checkIfContainsValidProtocolAndSetupLinks();
     }
+
+    @Override
+    public boolean checkIfContainsValidProtocol() {
+        return super.checkIfContainsValidProtocol() && resultOfClassAnalysis.checkIfContainsValidProtocol();
+    }
+
+    @Override
+    public boolean isProtocolFullyVerified() {
+        return super.isProtocolFullyVerified() && resultOfClassAnalysis.isProtocolFullyVerified();
+    }
 }
 
 
@@ -1,12 +1,15 @@
 package com.github.lucacampanella.callgraphflows.staticanalyzer.instructions;
 
 import com.github.lucacampanella.callgraphflows.graphics.components2.GSubFlowIndented;
+import com.github.lucacampanella.callgraphflows.staticanalyzer.CachedCombinations;
 import com.github.lucacampanella.callgraphflows.staticanalyzer.CombinationsHolder;
+import com.github.lucacampanella.callgraphflows.staticanalyzer.ProtocolAutomaton;
 
 
 public class InlinableSubFlow extends SubFlowBaseWithAnalysis {
 
     GSubFlowIndented graphElem = new GSubFlowIndented();
+    private final CachedCombinations resultingCombinations = new CachedCombinations();
 
     protected InlinableSubFlow() {
 
@@ -29,9 +32,17 @@ public class InlinableSubFlow extends SubFlowBaseWithAnalysis {
 
     @Override
     public CombinationsHolder getResultingCombinations() {
-        final CombinationsHolder res = CombinationsHolder.fromBranch(resultOfClassAnalysis.getStatements());
-        res.removeAllLocks(); //the method here is the call method of the flow
-        return res;
+        return resultingCombinations.get(() -> {
+            final CombinationsHolder res = CombinationsHolder.fromBranch(resultOfClassAnalysis.getStatements());
+            res.removeAllLocks(); //the method here is the call method of the flow
+            return res;
+        });
+    }
+
+    @Override
+    public ProtocolAutomaton.Fragment toAutomatonFragment(ProtocolAutomaton automaton) {
+        //the method here is the call method of the flow
+        return automaton.compileMethodBody(resultOfClassAnalysis.getStatements());
     }
 
     @Override
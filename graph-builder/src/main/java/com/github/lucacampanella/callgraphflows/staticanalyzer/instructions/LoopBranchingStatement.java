@@ -3,6 +3,8 @@ package com.github.lucacampanella.callgraphflows.staticanalyzer.instructions;
 import com.github.lucacampanella.callgraphflows.graphics.components2.GConditionalBranchIndented;
 import com.github.lucacampanella.callgraphflows.staticanalyzer.Branch;
 import com.github.lucacampanella.callgraphflows.staticanalyzer.CombinationsHolder;
+import com.github.lucacampanella.callgraphflows.staticanalyzer.LoopAnalysisEnum;
+import com.github.lucacampanella.callgraphflows.staticanalyzer.ProtocolAutomaton;
 import org.jetbrains.annotations.NotNull;
 
 import java.util.ArrayList;
@@ -12,6 +14,8 @@ import java.util.Optional;
 public abstract class LoopBranchingStatement extends BranchingStatement {
     protected static final int UNFOLD_ITERATIONS = 2;
 
+    private static LoopAnalysisEnum loopAnalysis = LoopAnalysisEnum.getDefault();
+
     GConditionalBranchIndented graphElem = new GConditionalBranchIndented();
     Branch body = new Branch();
 
@@ -60,8 +64,16 @@ public abstract class LoopBranchingStatement extends BranchingStatement {
         return body;
     }
 
+    public static LoopAnalysisEnum getLoopAnalysis() {
+        return loopAnalysis;
+    }
+
+    public static void setLoopAnalysis(LoopAnalysisEnum loopAnalysis) {
+        LoopBranchingStatement.loopAnalysis = loopAnalysis;
+    }
+
     @Override
-    public CombinationsHolder getResultingCombinations() {
+    protected CombinationsHolder computeResultingCombinations() {
         List<CombinationsHolder> unfoldedCombinations = new ArrayList<>(UNFOLD_ITERATIONS+1);
         CombinationsHolder bodyComb = CombinationsHolder.fromBranch(getBody());
 
@@ -96,6 +108,52 @@ public abstract class LoopBranchingStatement extends BranchingStatement {
         return res;
     }
 
+    @Override
+    public ProtocolAutomaton.Fragment toAutomatonFragment(ProtocolAutomaton automaton) {
+        ProtocolAutomaton.Fragment res = automaton.newFragment();
+        //the loop is skipped if the condition is false the first time
+        final int afterCondition = appendCondition(automaton, res, res.getStart());
+        automaton.addEpsilon(afterCondition, res.getEnd());
+        appendBodyInAutomaton(automaton, res, afterCondition, UNFOLD_ITERATIONS - 1);
+        return res;
+    }
+
+    /**
+     * Same unfolding as {@link #unfoldBody(List, CombinationsHolder)}, each iteration can be the last one.
+     * The body is compiled only once: the automaton counts how many times it is executed again, at most
+     * <code>maxRepetitions</code> times, see {@link ProtocolAutomaton#newLoop(int)}. With
+     * {@link LoopAnalysisEnum#FIXPOINT} the repetitions are not counted, the exploration of the product of the
+     * automata then stops when no new state is found, whatever the number of iterations needed
+     */
+    protected void appendBodyInAutomaton(ProtocolAutomaton automaton, ProtocolAutomaton.Fragment res, int from,
+                                         int maxRepetitions) {
+        final int loop = automaton.newLoop(loopAnalysis == LoopAnalysisEnum.FIXPOINT ?
+                ProtocolAutomaton.UNBOUNDED_REPETITIONS : maxRepetitions);
+        final ProtocolAutomaton.Fragment bodyFragment = automaton.compileBranch(getBody());
+        automaton.addLoopEntry(from, bodyFragment.getStart(), loop);
+
+        final int iterationEnd = automaton.newState();
+        //to exit the loop we need to check the blocking condition, its flow breaks leave the loop as well
+        final ProtocolAutomaton.Fragment conditionExits = automaton.newFragment();
+        automaton.addEpsilon(appendCondition(automaton, conditionExits, bodyFragment.getEnd()), iterationEnd);
+        automaton.addLoopExit(conditionExits.getBreakExit(), res.getBreakExit(), loop);
+        automaton.addLoopExit(conditionExits.getContinueExit(), res.getContinueExit(), loop);
+        automaton.addLoopExit(conditionExits.getMethodExit(), res.getMethodExit(), loop);
+
+        automaton.addEpsilon(bodyFragment.getContinueExit(), iterationEnd);
+        automaton.addLoopRepeat(iterationEnd, bodyFragment.getStart(), loop);
+        automaton.addLoopExit(iterationEnd, res.getEnd(), loop);
+        automaton.addLoopExit(bodyFragment.getBreakExit(), res.getEnd(), loop);
+        automaton.addLoopExit(bodyFragment.getMethodExit(), res.getMethodExit(), loop);
+    }
+
+    protected int appendCondition(ProtocolAutomaton automaton, ProtocolAutomaton.Fragment res, int from) {
+        if(hasBlockingStatementInCondition()) {
+            return automaton.appendStatement(res, from, getBlockingStatementInCondition());
+        }
+        return from;
+    }
+
     @Override
     public boolean checkIfContainsValidProtocolAndSetupLinks() {
         return super.checkIfContainsValidProtocolAndSetupLinks()
@@ -104,6 +162,22 @@ public abstract class LoopBranchingStatement extends BranchingStatement {
                 getBody().allInitiatingFlowsHaveValidProtocolAndSetupLinks();
     }
 
+    @Override
+    public boolean checkIfContainsValidProtocol() {
+        return super.checkIfContainsValidProtocol()
+                && (!hasBlockingStatementInCondition()
+                || getBlockingStatementInCondition().checkIfContainsValidProtocol()) &&
+                getBody().allInitiatingFlowsHaveValidProtocol();
+    }
+
+    @Override
+    public boolean isProtocolFullyVerified() {
+        return super.isProtocolFullyVerified()
+                && (!hasBlockingStatementInCondition()
+                || getBlockingStatementInCondition().isProtocolFullyVerified()) &&
+                getBody().allInitiatingFlowsFullyVerified();
+    }
+
     @Override
     public Optional<InitiateFlow> getInitiateFlowStatementAtThisLevel() {
         Optional<InitiateFlow>
@@ -16,6 +16,8 @@ import spoon.reflect.declaration.CtClass;
 import spoon.reflect.declaration.CtExecutable;
 import spoon.reflect.declaration.CtMethod;
 import spoon.reflect.declaration.CtParameter;
+import spoon.reflect.declaration.CtType;
+import spoon.reflect.reference.CtTypeReference;
 import spoon.support.reflect.code.CtSuperAccessImpl;
 
 import java.util.HashMap;
@@ -32,6 +34,7 @@ public class MethodInvocation extends InstructionStatement {
     Map<String, String> callerFlowNameToCalleeFlowName = new HashMap<>();
     GConditionalBranchIndented indentedComponent = new GConditionalBranchIndented();
     String returnType = null;
+    private final CachedCombinations resultingCombinations = new CachedCombinations();
 
     protected MethodInvocation(CtStatement statement) {
         super(statement.getPosition() instanceof  NoSourcePosition ? 0 : statement.getPosition().getLine(),
@@ -89,38 +92,43 @@ public class MethodInvocation extends InstructionStatement {
                 dynamicallyDispatchedExecutable = declaration;
             }
 
+            if(dynamicallyDispatchedExecutable != null) {
+                analyzer.addDependency(dynamicallyDispatchedExecutable.getParent(CtType.class));
+            }
+
             try {
                 methodInvocation.returnType = StaticAnalyzerUtils
                         .nullifyIfVoidTypeAndGetString(
                                 analyzer.getCurrClassCallStackHolder().resolveEventualGenerics(
-                                        inv.getExecutable().getDeclaration().getType()));
+                                        inv.getExecutable().getDeclaration().getType()), analyzer);
             } catch(NullPointerException e) {
                 LOGGER.warn("Couldn't figure out the return type of method {}, continuing without", inv);
             }
 
+            final SubtypeCache subtypeCache = analyzer.getSubtypeCache();
             final List<CtExpression> arguments = inv.getArguments();
             for(int i = 0; i < arguments.size(); ++i) {
                 CtExpression expr = arguments.get(i);
                 if(expr instanceof CtVariableRead && expr.getType() != null) {
                     CtVariableRead varRead = (CtVariableRead) expr;
-                    if(analyzer.getCurrClassCallStackHolder().resolveEventualGenerics(varRead.getType())
-                            .isSubtypeOf(MatcherHelper.getTypeReference(FlowSession.class))) {
+                    final CtTypeReference argumentType =
+                            analyzer.getCurrClassCallStackHolder().resolveEventualGenerics(varRead.getType());
+                    if(subtypeCache.isSubtypeOf(argumentType, FlowSession.class)) {
                         addToMapIfNoException(methodInvocation.callerSessionNameToCalleeSessionName, inv, i);
                     }
-                    else if(analyzer.getCurrClassCallStackHolder().resolveEventualGenerics(varRead.getType())
-                            .isSubtypeOf(MatcherHelper.getTypeReference(FlowLogic.class))) {
+                    else if(subtypeCache.isSubtypeOf(argumentType, FlowLogic.class)) {
                         addToMapIfNoException(methodInvocation.callerFlowNameToCalleeFlowName, inv, i);
                     }
                 }
                 else {
                     LOGGER.trace("expr: {} of type {} {}", expr, expr.getType(), expr.getShortRepresentation());
                     if(expr.getType() != null) {
-                        if (analyzer.getCurrClassCallStackHolder().resolveEventualGenerics(expr.getType())
-                                .isSubtypeOf(MatcherHelper.getTypeReference(FlowSession.class))) {
+                        final CtTypeReference argumentType =
+                                analyzer.getCurrClassCallStackHolder().resolveEventualGenerics(expr.getType());
+                        if (subtypeCache.isSubtypeOf(argumentType, FlowSession.class)) {
                             addToMapIfNoException(methodInvocation.callerSessionNameToCalleeSessionName, inv, i);
                             //todo: how to handle methods here?
-                        } else if (analyzer.getCurrClassCallStackHolder().resolveEventualGenerics(expr.getType())
-                                .isSubtypeOf(MatcherHelper.getTypeReference(FlowLogic.class))) {
+                        } else if (subtypeCache.isSubtypeOf(argumentType, FlowLogic.class)) {
                             addToMapIfNoException(methodInvocation.callerFlowNameToCalleeFlowName, inv, i);
                             //todo: how to handle methods here?
                         }
@@ -131,9 +139,8 @@ public class MethodInvocation extends InstructionStatement {
                 }
             }
             try {
-                final Branch bodyStatements = MatcherHelper.fromCtStatementsToStatements(
-                        dynamicallyDispatchedExecutable.getBody().getStatements(), analyzer);
-                methodInvocation.body.addIfRelevantForLoopFlowBreakAnalysis(bodyStatements);
+                methodInvocation.body.add(analyzer.getMethodBodySummaryCache()
+                        .getRelevantBodyStatements(dynamicallyDispatchedExecutable, analyzer));
             } catch (NullPointerException e) {
                 LOGGER.warn("Couldn't retrieve the body of method {} adding an empty one", inv);
             }
@@ -208,9 +215,16 @@ public class MethodInvocation extends InstructionStatement {
 
     @Override
     public CombinationsHolder getResultingCombinations() {
-        final CombinationsHolder res = CombinationsHolder.fromBranch(body);
-        res.removeAllLocks();
-        return res;
+        return resultingCombinations.get(() -> {
+            final CombinationsHolder res = CombinationsHolder.fromBranch(body);
+            res.removeAllLocks();
+            return res;
+        });
+    }
+
+    @Override
+    public ProtocolAutomaton.Fragment toAutomatonFragment(ProtocolAutomaton automaton) {
+        return automaton.compileMethodBody(body);
     }
 
     @Override
@@ -218,4 +232,14 @@ public class MethodInvocation extends InstructionStatement {
         return super.checkIfContainsValidProtocolAndSetupLinks()
                 && getBody().allInitiatingFlowsHaveValidProtocolAndSetupLinks();
     }
+
+    @Override
+    public boolean checkIfContainsValidProtocol() {
+        return super.checkIfContainsValidProtocol() && getBody().allInitiatingFlowsHaveValidProtocol();
+    }
+
+    @Override
+    public boolean isProtocolFullyVerified() {
+        return super.isProtocolFullyVerified() && getBody().allInitiatingFlowsFullyVerified();
+    }
 }
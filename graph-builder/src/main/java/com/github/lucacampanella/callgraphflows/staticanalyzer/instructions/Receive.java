@@ -3,9 +3,11 @@ package com.github.lucacampanella.callgraphflows.staticanalyzer.instructions;
 import com.github.lucacampanella.callgraphflows.graphics.components2.GBaseSimpleComponent;
 import com.github.lucacampanella.callgraphflows.utils.Utils;
 import com.github.lucacampanella.callgraphflows.staticanalyzer.AnalyzerWithModel;
+import com.github.lucacampanella.callgraphflows.staticanalyzer.MessageTypeTable;
 import com.github.lucacampanella.callgraphflows.staticanalyzer.StaticAnalyzerUtils;
 import com.github.lucacampanella.callgraphflows.staticanalyzer.matchers.MatcherHelper;
 import spoon.reflect.code.*;
+import spoon.reflect.reference.CtTypeReference;
 
 import java.util.Optional;
 
@@ -14,6 +16,7 @@ public class Receive extends InstructionStatement implements StatementWithCompan
     private static final String SYMBOL = "";//"<==";
 
     String receivedType;
+    int receivedTypeId = MessageTypeTable.NO_TYPE;
 
     public Receive(CtStatement statement) {
         super(statement);
@@ -29,10 +32,10 @@ public class Receive extends InstructionStatement implements StatementWithCompan
         receive.internalMethodInvocations.add(StaticAnalyzerUtils.getAllRelevantMethodInvocations(statement, analyzer));
 
         CtInvocation invocation = (CtInvocation) MatcherHelper.getFirstMatchedExpression(statement,
-                "receiveMatcher");
+                "receiveMatcher", analyzer);
         if(invocation == null) {
             invocation = (CtInvocation) MatcherHelper.getFirstMatchedExpression(statement,
-                    "receiveWithBoolMatcher");
+                    "receiveWithBoolMatcher", analyzer);
         }
 
         Object firstArgument = invocation.getArguments().get(0);
@@ -40,21 +43,18 @@ public class Receive extends InstructionStatement implements StatementWithCompan
         //maybe there is a more rubust way to do this, for example with a while
         if(firstArgument instanceof CtFieldRead) {
             CtTypeAccess fieldRead = (CtTypeAccess) ((CtFieldRead) (firstArgument)).getTarget();
-            receive.receivedType = analyzer.getCurrClassCallStackHolder().resolveEventualGenerics(
-                    fieldRead.getAccessedType())
-                    .box().toString();
+            receive.internReceivedType(analyzer.getCurrClassCallStackHolder().resolveEventualGenerics(
+                    fieldRead.getAccessedType()), analyzer);
         }
         else if(firstArgument instanceof CtLambda) {
             invocation = (CtInvocation) invocation.getTarget();
             //receivedType = invocation.getArguments().get(0).getTarget().getAccessedType()
-            receive.receivedType = analyzer.getCurrClassCallStackHolder().resolveEventualGenerics(
-                    ((CtTypeAccess) ((CtFieldRead) (invocation.getArguments().get(0))).getTarget()).getAccessedType())
-                    .box().toString();
+            receive.internReceivedType(analyzer.getCurrClassCallStackHolder().resolveEventualGenerics(
+                    ((CtTypeAccess) ((CtFieldRead) (invocation.getArguments().get(0))).getTarget()).getAccessedType()), analyzer);
         }
         else if(firstArgument instanceof CtAbstractInvocation) {
-            receive.receivedType = analyzer.getCurrClassCallStackHolder().resolveEventualGenerics(
-                    ((CtAbstractInvocation) firstArgument).getExecutable().getType())
-                    .box().toString();
+            receive.internReceivedType(analyzer.getCurrClassCallStackHolder().resolveEventualGenerics(
+                    ((CtAbstractInvocation) firstArgument).getExecutable().getType()), analyzer);
         }
 
         receive.targetSessionName = Optional.ofNullable(invocation.getTarget().toString());
@@ -67,18 +67,18 @@ public class Receive extends InstructionStatement implements StatementWithCompan
     @Override
     public boolean acceptCompanion(StatementWithCompanionInterface companion) {
         boolean accepted = false;
-        accepted = isAccepted(companion, accepted, receivedType);
+        accepted = isAccepted(companion, accepted, receivedTypeId);
 
         return accepted;
     }
 
-    static boolean isAccepted(StatementWithCompanionInterface companion, boolean accepted, String receivedType) {
+    static boolean isAccepted(StatementWithCompanionInterface companion, boolean accepted, int receivedTypeId) {
         if(companion instanceof Send) {
             //check they send and receive exactly the same type
-            accepted = receivedType.equals(((Send) companion).getSentType());
+            accepted = Send.sameType(receivedTypeId, ((Send) companion).getSentTypeId());
         }
         else if(companion instanceof SendAndReceive) {
-            accepted = receivedType.equals(((SendAndReceive) companion).getSentType());
+            accepted = Send.sameType(receivedTypeId, ((SendAndReceive) companion).getSentTypeId());
             accepted = accepted && !((SendAndReceive) companion).isSentConsumed();
             //it must be equivalent to a Send statement
             ((SendAndReceive) companion).setSentConsumed(true); //we consumed the send state of SendAndReceive
@@ -98,6 +98,15 @@ public class Receive extends InstructionStatement implements StatementWithCompan
         return receivedType;
     }
 
+    public int getReceivedTypeId() {
+        return receivedTypeId;
+    }
+
+    private void internReceivedType(CtTypeReference type, AnalyzerWithModel analyzer) {
+        receivedTypeId = analyzer.getMessageTypeTable().intern(type);
+        receivedType = analyzer.getMessageTypeTable().getName(receivedTypeId);
+    }
+
     @Override
     public boolean hasSendOrReceiveAtThisLevel() {
         return true;
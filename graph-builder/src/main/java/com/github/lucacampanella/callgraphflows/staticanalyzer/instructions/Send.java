@@ -3,11 +3,13 @@ package com.github.lucacampanella.callgraphflows.staticanalyzer.instructions;
 import com.github.lucacampanella.callgraphflows.graphics.components2.GBaseSimpleComponent;
 import com.github.lucacampanella.callgraphflows.utils.Utils;
 import com.github.lucacampanella.callgraphflows.staticanalyzer.AnalyzerWithModel;
+import com.github.lucacampanella.callgraphflows.staticanalyzer.MessageTypeTable;
 import com.github.lucacampanella.callgraphflows.staticanalyzer.StaticAnalyzerUtils;
 import com.github.lucacampanella.callgraphflows.staticanalyzer.matchers.MatcherHelper;
 import spoon.reflect.code.CtInvocation;
 import spoon.reflect.code.CtStatement;
 import spoon.reflect.declaration.CtTypedElement;
+import spoon.reflect.reference.CtTypeReference;
 
 import java.util.Optional;
 
@@ -16,6 +18,7 @@ public class Send extends InstructionStatement implements StatementWithCompanion
 
 
     String sentType;
+    int sentTypeId = MessageTypeTable.NO_TYPE;
 
     protected Send(CtStatement statement) {
         super(statement);
@@ -31,14 +34,13 @@ public class Send extends InstructionStatement implements StatementWithCompanion
         send.internalMethodInvocations.add(StaticAnalyzerUtils.getAllRelevantMethodInvocations(statement, analyzer));
 
         CtInvocation invocation = (CtInvocation) MatcherHelper.getFirstMatchedExpression(statement,
-                "sendMatcher");
+                "sendMatcher", analyzer);
         if(invocation == null) {
             invocation = (CtInvocation) MatcherHelper.getFirstMatchedExpression(statement,
-                    "sendWithBoolMatcher");
+                    "sendWithBoolMatcher", analyzer);
         }
-        send.sentType = analyzer.getCurrClassCallStackHolder().resolveEventualGenerics(
-                ((CtTypedElement) invocation.getArguments().get(0)).getType())
-                .box().toString();
+        send.internSentType(analyzer.getCurrClassCallStackHolder().resolveEventualGenerics(
+                ((CtTypedElement) invocation.getArguments().get(0)).getType()), analyzer);
 
         send.targetSessionName = Optional.ofNullable(invocation.getTarget().toString());
 
@@ -49,18 +51,18 @@ public class Send extends InstructionStatement implements StatementWithCompanion
     @Override
     public boolean acceptCompanion(StatementWithCompanionInterface companion) {
         boolean accepted = false;
-        accepted = isAccepted(companion, accepted, sentType);
+        accepted = isAccepted(companion, accepted, sentTypeId);
 
         return accepted;
     }
 
-    static boolean isAccepted(StatementWithCompanionInterface companion, boolean accepted, String sentType) {
+    static boolean isAccepted(StatementWithCompanionInterface companion, boolean accepted, int sentTypeId) {
         if(companion instanceof Receive) {
             //check they send and receive exactly the same type
-            accepted = sentType.equals(((Receive) companion).getReceivedType());
+            accepted = sameType(sentTypeId, ((Receive) companion).getReceivedTypeId());
         }
         else if(companion instanceof SendAndReceive) {
-            accepted = sentType.equals(((SendAndReceive) companion).getReceivedType());
+            accepted = sameType(sentTypeId, ((SendAndReceive) companion).getReceivedTypeId());
             accepted = accepted && ((SendAndReceive) companion).isSentConsumed();
             // it must be equal to a Receive statement
             ((SendAndReceive) companion).setSentConsumed(false); //reset counter
@@ -68,6 +70,11 @@ public class Send extends InstructionStatement implements StatementWithCompanion
         return accepted;
     }
 
+    //the types are interned in the MessageTypeTable of the analysis, so they can be compared by id
+    static boolean sameType(int typeId, int otherTypeId) {
+        return typeId != MessageTypeTable.NO_TYPE && typeId == otherTypeId;
+    }
+
     @Override
     public void createGraphLink(StatementWithCompanionInterface companion) {
         graphElem.setBrotherSafely((GBaseSimpleComponent) companion.getGraphElem());
@@ -81,6 +88,15 @@ public class Send extends InstructionStatement implements StatementWithCompanion
         return sentType;
     }
 
+    public int getSentTypeId() {
+        return sentTypeId;
+    }
+
+    private void internSentType(CtTypeReference type, AnalyzerWithModel analyzer) {
+        sentTypeId = analyzer.getMessageTypeTable().intern(type);
+        sentType = analyzer.getMessageTypeTable().getName(sentTypeId);
+    }
+
     @Override
     public boolean hasSendOrReceiveAtThisLevel() {
         return true;
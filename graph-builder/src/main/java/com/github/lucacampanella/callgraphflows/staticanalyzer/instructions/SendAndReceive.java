@@ -3,6 +3,7 @@ package com.github.lucacampanella.callgraphflows.staticanalyzer.instructions;
 import com.github.lucacampanella.callgraphflows.graphics.components2.GBaseSimpleComponent;
 import com.github.lucacampanella.callgraphflows.utils.Utils;
 import com.github.lucacampanella.callgraphflows.staticanalyzer.AnalyzerWithModel;
+import com.github.lucacampanella.callgraphflows.staticanalyzer.MessageTypeTable;
 import com.github.lucacampanella.callgraphflows.staticanalyzer.StaticAnalyzerUtils;
 import com.github.lucacampanella.callgraphflows.staticanalyzer.matchers.MatcherHelper;
 import spoon.reflect.code.*;
@@ -14,7 +15,9 @@ import java.util.Optional;
 public class SendAndReceive extends InstructionStatement implements StatementWithCompanionInterface {
 
     String sentType;
+    int sentTypeId = MessageTypeTable.NO_TYPE;
     String receivedType;
+    int receivedTypeId = MessageTypeTable.NO_TYPE;
 
     boolean isSentConsumed = false;
 
@@ -33,10 +36,10 @@ public class SendAndReceive extends InstructionStatement implements StatementWit
                 analyzer));
 
         CtInvocation invocation = (CtInvocation) MatcherHelper.getFirstMatchedExpression(statement,
-                    "sendAndReceiveMatcher");
+                    "sendAndReceiveMatcher", analyzer);
         if(invocation == null) {
             invocation = (CtInvocation) MatcherHelper.getFirstMatchedExpression(statement,
-                    "sendAndReceiveWithBoolMatcher");
+                    "sendAndReceiveWithBoolMatcher", analyzer);
         }
 
             Object firstArgument = invocation.getArguments().get(0);
@@ -44,21 +47,18 @@ public class SendAndReceive extends InstructionStatement implements StatementWit
             //maybe there is a more rubust way to do this, for example with a while
             if(firstArgument instanceof CtFieldRead) {
                 CtTypeAccess fieldRead = (CtTypeAccess) ((CtFieldRead) (firstArgument)).getTarget();
-                sendAndReceive.receivedType = analyzer.getCurrClassCallStackHolder().resolveEventualGenerics(
-                        fieldRead.getAccessedType())
-                        .box().toString();
+                sendAndReceive.internReceivedType(analyzer.getCurrClassCallStackHolder().resolveEventualGenerics(
+                        fieldRead.getAccessedType()), analyzer);
             }
             else if(firstArgument instanceof CtLambda) {
                 invocation = (CtInvocation) invocation.getTarget();
                 //receivedType = invocation.getArguments().get(0).getTarget().getAccessedType()
-                sendAndReceive.receivedType = analyzer.getCurrClassCallStackHolder().resolveEventualGenerics(
-                        (((CtTypeAccess) ((CtFieldRead) (invocation.getArguments().get(0))).getTarget()).getAccessedType()))
-                        .box().toString();
+                sendAndReceive.internReceivedType(analyzer.getCurrClassCallStackHolder().resolveEventualGenerics(
+                        (((CtTypeAccess) ((CtFieldRead) (invocation.getArguments().get(0))).getTarget()).getAccessedType())), analyzer);
             }
 
         final CtTypeReference secondArgument = ((CtTypedElement) invocation.getArguments().get(1)).getType();
-        sendAndReceive.sentType = analyzer.getCurrClassCallStackHolder().resolveEventualGenerics(secondArgument)
-                .box().toString();
+        sendAndReceive.internSentType(analyzer.getCurrClassCallStackHolder().resolveEventualGenerics(secondArgument), analyzer);
 
         sendAndReceive.targetSessionName = Optional.ofNullable(invocation.getTarget().toString());
 
@@ -72,11 +72,11 @@ public class SendAndReceive extends InstructionStatement implements StatementWit
         boolean accepted = false;
 
         if(!isSentConsumed) { // we treat it as a send
-            accepted = Send.isAccepted(companion, accepted, sentType);
+            accepted = Send.isAccepted(companion, accepted, sentTypeId);
             isSentConsumed = true;
         }
         else {
-            accepted = Receive.isAccepted(companion, accepted, receivedType);
+            accepted = Receive.isAccepted(companion, accepted, receivedTypeId);
             isSentConsumed = false;
         }
 
@@ -109,10 +109,28 @@ public class SendAndReceive extends InstructionStatement implements StatementWit
         return sentType;
     }
 
+    public int getSentTypeId() {
+        return sentTypeId;
+    }
+
+    private void internSentType(CtTypeReference type, AnalyzerWithModel analyzer) {
+        sentTypeId = analyzer.getMessageTypeTable().intern(type);
+        sentType = analyzer.getMessageTypeTable().getName(sentTypeId);
+    }
+
     public String getReceivedType() {
         return receivedType;
     }
 
+    public int getReceivedTypeId() {
+        return receivedTypeId;
+    }
+
+    private void internReceivedType(CtTypeReference type, AnalyzerWithModel analyzer) {
+        receivedTypeId = analyzer.getMessageTypeTable().intern(type);
+        receivedType = analyzer.getMessageTypeTable().getName(receivedTypeId);
+    }
+
     public boolean isSentConsumed() {
         return isSentConsumed;
     }
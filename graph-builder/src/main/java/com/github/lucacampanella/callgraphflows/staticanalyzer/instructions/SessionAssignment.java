@@ -3,7 +3,6 @@ package com.github.lucacampanella.callgraphflows.staticanalyzer.instructions;
 import com.github.lucacampanella.callgraphflows.graphics.components2.GBaseText;
 import com.github.lucacampanella.callgraphflows.staticanalyzer.AnalyzerWithModel;
 import com.github.lucacampanella.callgraphflows.staticanalyzer.StaticAnalyzerUtils;
-import com.github.lucacampanella.callgraphflows.staticanalyzer.matchers.MatcherHelper;
 import net.corda.core.flows.FlowSession;
 import spoon.reflect.code.CtAssignment;
 import spoon.reflect.code.CtExpression;
@@ -24,7 +23,7 @@ public class SessionAssignment extends InstructionStatement {
     }
 
     public static SessionAssignment fromCtStatement(CtStatement statement, AnalyzerWithModel analyzer) {
-        if(!((CtTypedElement) statement).getType().isSubtypeOf(MatcherHelper.getTypeReference(FlowSession.class))) {
+        if(!analyzer.getSubtypeCache().isSubtypeOf(((CtTypedElement) statement).getType(), FlowSession.class)) {
             return null;
         }
         SessionAssignment sessionAssignment = new SessionAssignment(statement);
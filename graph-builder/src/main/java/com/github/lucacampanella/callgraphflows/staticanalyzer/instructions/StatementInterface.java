@@ -3,6 +3,7 @@ package com.github.lucacampanella.callgraphflows.staticanalyzer.instructions;
 import com.github.lucacampanella.callgraphflows.graphics.components2.GBaseComponent;
 import com.github.lucacampanella.callgraphflows.staticanalyzer.Branch;
 import com.github.lucacampanella.callgraphflows.staticanalyzer.CombinationsHolder;
+import com.github.lucacampanella.callgraphflows.staticanalyzer.ProtocolAutomaton;
 
 import java.util.Optional;
 
@@ -79,9 +80,28 @@ public interface StatementInterface {
         return getInternalMethodInvocations().allInitiatingFlowsHaveValidProtocolAndSetupLinks();
     }
 
+    /**
+     * Same as {@link #checkIfContainsValidProtocolAndSetupLinks()}, without creating any link between the statements
+     * @return true if the protocol makes sense, false otherwise
+     */
+    default boolean checkIfContainsValidProtocol() {
+        return getInternalMethodInvocations().allInitiatingFlowsHaveValidProtocol();
+    }
+
+    /**
+     * This method is overridden in {@link InitiatingSubFlow}, is called once the protocol is checked.
+     * @return false if the protocol check of an initiating subflow contained in this statement is only approximate,
+     * see {@link com.github.lucacampanella.callgraphflows.staticanalyzer.AnalysisResult#isProtocolFullyVerified()}
+     */
+    default boolean isProtocolFullyVerified() {
+        return getInternalMethodInvocations().allInitiatingFlowsFullyVerified();
+    }
+
     /**
      * Returns all the possible combinations that can originate by this statement. By default returns the
-     * statement itself, unless overridden for examble by {@link BranchingStatement}
+     * statement itself, unless overridden for examble by {@link BranchingStatement}.
+     * The result may be cached and shared between callers, so it must not be modified: use
+     * {@link CombinationsHolder#fromOtherCombination(CombinationsHolder)} to obtain a modifiable copy
      * @return all the possible combinations that can originate by this statement
      */
     default CombinationsHolder getResultingCombinations() {
@@ -91,6 +111,19 @@ public interface StatementInterface {
         return new CombinationsHolder(false);
     }
 
+    /**
+     * Counterpart of {@link #getResultingCombinations()} for the {@link ProtocolAutomaton} engine. By default
+     * the fragment contains the statement itself if it needs a companion, nothing otherwise.
+     * @param automaton the automaton in which the fragment is built
+     * @return the fragment of automaton that represents this statement
+     */
+    default ProtocolAutomaton.Fragment toAutomatonFragment(ProtocolAutomaton automaton) {
+        if(needsCompanion()) {
+            return automaton.fromCompanionStatement((StatementWithCompanionInterface) this);
+        }
+        return automaton.emptyFragment();
+    }
+
     default boolean hasSendOrReceiveAtThisLevel() {
         return getInternalMethodInvocations().hasSendOrReceiveAtThisLevel();
     }
@@ -6,6 +6,7 @@ import com.github.lucacampanella.callgraphflows.staticanalyzer.AnalysisResult;
 import com.github.lucacampanella.callgraphflows.staticanalyzer.AnalyzerWithModel;
 import com.github.lucacampanella.callgraphflows.staticanalyzer.Branch;
 import com.github.lucacampanella.callgraphflows.staticanalyzer.StaticAnalyzerUtils;
+import com.github.lucacampanella.callgraphflows.staticanalyzer.SubtypeCache;
 import com.github.lucacampanella.callgraphflows.staticanalyzer.matchers.MatcherHelper;
 import net.corda.confidential.IdentitySyncFlow;
 import net.corda.confidential.SwapIdentitiesFlow;
@@ -18,6 +19,7 @@ import spoon.reflect.declaration.CtMethod;
 import spoon.reflect.reference.CtTypeReference;
 import spoon.support.reflect.code.CtAssignmentImpl;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
@@ -66,7 +68,8 @@ public class SubFlowBuilder {
         }
     }
 
-    private static HashMap<CtTypeReference, CtTypeReference> cordaSpecialFlows = new HashMap<>();
+    //immutable once the class is initialized, so that it can be read by concurrent analyses
+    private static final Map<CtTypeReference, CtTypeReference> cordaSpecialFlows;
     /*
     Special Corda flows:
     - SendTransactionFlow and ReceiveTransactionFlow
@@ -75,26 +78,29 @@ public class SubFlowBuilder {
     - FinalityFlow and ReceiveFinalityFlow
      */
     static {
-        cordaSpecialFlows.put(MatcherHelper.getTypeReference(SendTransactionFlow.class),
+        Map<CtTypeReference, CtTypeReference> specialFlows = new HashMap<>();
+        specialFlows.put(MatcherHelper.getTypeReference(SendTransactionFlow.class),
                 MatcherHelper.getTypeReference(ReceiveTransactionFlow.class));
 
-        cordaSpecialFlows.put(MatcherHelper.getTypeReference(SendStateAndRefFlow.class),
+        specialFlows.put(MatcherHelper.getTypeReference(SendStateAndRefFlow.class),
                 MatcherHelper.getTypeReference(ReceiveStateAndRefFlow.class));
 
-        cordaSpecialFlows.put(MatcherHelper.getTypeReference(CollectSignaturesFlow.class),
+        specialFlows.put(MatcherHelper.getTypeReference(CollectSignaturesFlow.class),
                 MatcherHelper.getTypeReference(SignTransactionFlow.class));
 
-        cordaSpecialFlows.put(MatcherHelper.getTypeReference(CollectSignatureFlow.class),
+        specialFlows.put(MatcherHelper.getTypeReference(CollectSignatureFlow.class),
                 MatcherHelper.getTypeReference(SignTransactionFlow.class));
 
-        cordaSpecialFlows.put(MatcherHelper.getTypeReference(FinalityFlow.class),
+        specialFlows.put(MatcherHelper.getTypeReference(FinalityFlow.class),
                 MatcherHelper.getTypeReference(ReceiveFinalityFlow.class));
 
-        cordaSpecialFlows.put(MatcherHelper.getTypeReference(SwapIdentitiesFlow.class),
+        specialFlows.put(MatcherHelper.getTypeReference(SwapIdentitiesFlow.class),
                 MatcherHelper.getTypeReference(SwapIdentitiesFlow.class));
 
-        cordaSpecialFlows.put(MatcherHelper.getTypeReference(IdentitySyncFlow.Send.class),
+        specialFlows.put(MatcherHelper.getTypeReference(IdentitySyncFlow.Send.class),
                 MatcherHelper.getTypeReference(IdentitySyncFlow.Receive.class));
+
+        cordaSpecialFlows = Collections.unmodifiableMap(specialFlows);
     }
 
     public static SubFlowBase fromCtStatement(CtStatement statement, AnalyzerWithModel analyzer) {
@@ -112,7 +118,8 @@ public class SubFlowBuilder {
             subFlowInfo.assignedVariableName = Optional.ofNullable(((CtAssignmentImpl) statement).getAssigned().toString());
         }
 
-        final CtAbstractInvocation expression = MatcherHelper.getFirstMatchedExpression(statement, "subFlowMatcher");
+        final CtAbstractInvocation expression =
+                MatcherHelper.getFirstMatchedExpression(statement, "subFlowMatcher", analyzer);
         if(expression instanceof CtInvocation) {
             CtInvocation invocation = (CtInvocation) expression;
             Object firstArgument = invocation.getArguments().get(0);
@@ -141,10 +148,12 @@ public class SubFlowBuilder {
                                 "\nThis could result in a problem in the produced graph",
                         subFlowInfo.subFlowType, statement);
             } else {
-                final CtMethod callMethod = StaticAnalyzerUtils.findCallMethod(
+                analyzer.addDependency(subFlowInfo.subFlowType.getTypeDeclaration());
+                final CtMethod callMethod = analyzer.getCallMethod(
                         (CtClass) subFlowInfo.subFlowType.getTypeDeclaration());
                 if (callMethod != null) {
-                    final CtTypeReference returnTypeRef = StaticAnalyzerUtils.nullifyIfVoidType(callMethod.getType());
+                    final CtTypeReference returnTypeRef = StaticAnalyzerUtils.nullifyIfVoidType(callMethod.getType(),
+                            analyzer);
                     if(returnTypeRef == null){
                         subFlowInfo.returnType = Optional.empty();
                     } else {
@@ -156,11 +165,11 @@ public class SubFlowBuilder {
         }
 
         SubFlowBase result;
-        if(isInitiatingSpecialCordaFlow(subFlowInfo.subFlowType)) {
+        if(isInitiatingSpecialCordaFlow(subFlowInfo.subFlowType, analyzer.getSubtypeCache())) {
             subFlowInfo.isInitiatingFlow = true;
             result = new CordaSubFlow();
         }
-        else if(isInitiatedSpecialCordaFlow(subFlowInfo.subFlowType)) {
+        else if(isInitiatedSpecialCordaFlow(subFlowInfo.subFlowType, analyzer.getSubtypeCache())) {
             subFlowInfo.isInitiatingFlow = false;
             result = new CordaSubFlow();
         }
@@ -192,20 +201,20 @@ public class SubFlowBuilder {
         return result;
     }
 
-    private static boolean isInitiatingSpecialCordaFlow(CtTypeReference subFlowType) {
+    private static boolean isInitiatingSpecialCordaFlow(CtTypeReference subFlowType, SubtypeCache subtypeCache) {
         for (Map.Entry<CtTypeReference, CtTypeReference> entry : cordaSpecialFlows.entrySet()) {
             CtTypeReference cordaInitiatingFlow = entry.getKey();
-            if (subFlowType.isSubtypeOf(cordaInitiatingFlow)) {
+            if (subtypeCache.isSubtypeOf(subFlowType, cordaInitiatingFlow)) {
                 return true;
             }
         }
         return false;
     }
 
-    private static boolean isInitiatedSpecialCordaFlow(CtTypeReference subFlowType) {
+    private static boolean isInitiatedSpecialCordaFlow(CtTypeReference subFlowType, SubtypeCache subtypeCache) {
         for (Map.Entry<CtTypeReference, CtTypeReference> entry : cordaSpecialFlows.entrySet()) {
             CtTypeReference cordaInitiatedFlow = entry.getValue();
-            if (subFlowType.isSubtypeOf(cordaInitiatedFlow)) {
+            if (subtypeCache.isSubtypeOf(subFlowType, cordaInitiatedFlow)) {
                 return true;
             }
         }
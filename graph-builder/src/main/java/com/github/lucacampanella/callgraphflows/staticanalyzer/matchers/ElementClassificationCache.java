@@ -0,0 +1,96 @@
+package com.github.lucacampanella.callgraphflows.staticanalyzer.matchers;
+
+import spoon.reflect.code.CtAbstractInvocation;
+import spoon.reflect.code.CtLiteral;
+import spoon.reflect.declaration.CtElement;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Remembers, for each element of the model, which matchers hit under it and which are the relevant method
+ * invocations under it. The same subtrees are looked at by many statement builders, with this cache every element
+ * is visited only once per analysis.
+ * The elements are compared by identity, so the cache must not outlive the model it was filled with.
+ */
+public final class ElementClassificationCache {
+
+    //shared by the flows analyzed in parallel, a value computed twice is the same
+    private final Map<CtElement, MatcherClassification> classifications =
+            Collections.synchronizedMap(new IdentityHashMap<>());
+    private final Map<CtElement, List<CtAbstractInvocation>> relevantInvocations =
+            Collections.synchronizedMap(new IdentityHashMap<>());
+
+    /**
+     * Same result as {@link MatcherHelper#classify(CtElement)}, the classification of the element is composed from
+     * the ones of its children
+     */
+    public MatcherClassification classify(CtElement element) {
+        if(element == null) {
+            return MatcherClassification.EMPTY;
+        }
+        MatcherClassification res = classifications.get(element);
+        if(res == null) {
+            res = computeClassification(element);
+            classifications.put(element, res);
+        }
+        return res;
+    }
+
+    private MatcherClassification computeClassification(CtElement element) {
+        MatcherClassification res = new MatcherClassification();
+        if(element instanceof CtAbstractInvocation) {
+            final String matcherName = MatcherHelper.getMatcherName((CtAbstractInvocation) element);
+            if(matcherName != null) {
+                res.addMatchIfFirst(matcherName, (CtAbstractInvocation) element);
+            }
+        }
+        for(CtElement child : element.getDirectChildren()) {
+            if(child != null) {
+                res.addChildClassification(classify(child));
+            }
+        }
+        return res.isEmpty() ? MatcherClassification.EMPTY : res;
+    }
+
+    /**
+     * The invocations of methods that are not Corda methods and are not inside another one of them, in the order
+     * in which they are met visiting the element depth first. These are the invocations analyzed by
+     * {@link com.github.lucacampanella.callgraphflows.staticanalyzer.StaticAnalyzerUtils#getAllRelevantMethodInvocations}
+     * @return an unmodifiable list of the invocations
+     */
+    public List<CtAbstractInvocation> getRelevantInvocations(CtElement element) {
+        List<CtAbstractInvocation> res = relevantInvocations.get(element);
+        if(res == null) {
+            res = computeRelevantInvocations(element);
+            relevantInvocations.put(element, res);
+        }
+        return res;
+    }
+
+    private List<CtAbstractInvocation> computeRelevantInvocations(CtElement element) {
+        if(element instanceof CtAbstractInvocation && !MatcherHelper.isCordaMethod((CtAbstractInvocation) element)) {
+            return Collections.singletonList((CtAbstractInvocation) element);
+        }
+        if(element instanceof CtLiteral) {
+            return Collections.emptyList();
+        }
+        List<CtAbstractInvocation> res = null;
+        for(CtElement child : element.getDirectChildren()) {
+            if(child == null) {
+                continue;
+            }
+            final List<CtAbstractInvocation> childInvocations = getRelevantInvocations(child);
+            if(!childInvocations.isEmpty()) {
+                if(res == null) {
+                    res = new ArrayList<>(childInvocations.size());
+                }
+                res.addAll(childInvocations);
+            }
+        }
+        return res == null ? Collections.emptyList() : Collections.unmodifiableList(res);
+    }
+}
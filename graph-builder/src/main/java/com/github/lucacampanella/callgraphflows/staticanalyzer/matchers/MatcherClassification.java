@@ -0,0 +1,65 @@
+package com.github.lucacampanella.callgraphflows.staticanalyzer.matchers;
+
+import spoon.reflect.code.CtAbstractInvocation;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Result of {@link MatcherHelper#classify(spoon.reflect.declaration.CtElement)}: for each matcher, the first
+ * invocation that matches it in a breadth first visit of the element, the same one returned by
+ * {@link MatcherHelper#getFirstMatchedExpression(spoon.reflect.declaration.CtElement, String)}.
+ * The depth of each match is kept so that the classification of an element can be composed from the ones of its
+ * children, see {@link ElementClassificationCache}
+ */
+public final class MatcherClassification {
+
+    static final MatcherClassification EMPTY = new MatcherClassification();
+
+    private final Map<String, CtAbstractInvocation> firstMatches = new HashMap<>();
+    private final Map<String, Integer> depths = new HashMap<>();
+
+    MatcherClassification() {
+        //created only by MatcherHelper and ElementClassificationCache
+    }
+
+    void addMatchIfFirst(String matcherName, CtAbstractInvocation invocation) {
+        addMatchIfFirst(matcherName, invocation, 0);
+    }
+
+    private void addMatchIfFirst(String matcherName, CtAbstractInvocation invocation, int depth) {
+        if(!firstMatches.containsKey(matcherName)) {
+            firstMatches.put(matcherName, invocation);
+            depths.put(matcherName, depth);
+        }
+    }
+
+    /**
+     * Adds the matches of a child of the element. The children must be added in order: in a breadth first visit
+     * the first match is the least deep one, and between two of the same depth the one in the first child.
+     * The matches of the element itself must be added before the ones of its children.
+     */
+    void addChildClassification(MatcherClassification child) {
+        for(Map.Entry<String, CtAbstractInvocation> entry : child.firstMatches.entrySet()) {
+            final String matcherName = entry.getKey();
+            final int depth = child.depths.get(matcherName) + 1;
+            final Integer currentDepth = depths.get(matcherName);
+            if(currentDepth == null || depth < currentDepth) {
+                firstMatches.put(matcherName, entry.getValue());
+                depths.put(matcherName, depth);
+            }
+        }
+    }
+
+    public boolean matches(String matcherName) {
+        return firstMatches.containsKey(matcherName);
+    }
+
+    public CtAbstractInvocation getFirstMatch(String matcherName) {
+        return firstMatches.get(matcherName);
+    }
+
+    public boolean isEmpty() {
+        return firstMatches.isEmpty();
+    }
+}
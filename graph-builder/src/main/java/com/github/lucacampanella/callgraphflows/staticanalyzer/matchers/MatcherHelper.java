@@ -2,6 +2,7 @@ package com.github.lucacampanella.callgraphflows.staticanalyzer.matchers;
 
 import com.github.lucacampanella.callgraphflows.staticanalyzer.AnalyzerWithModel;
 import com.github.lucacampanella.callgraphflows.staticanalyzer.Branch;
+import com.github.lucacampanella.callgraphflows.staticanalyzer.SubtypeCache;
 import com.github.lucacampanella.callgraphflows.staticanalyzer.instructions.*;
 import com.github.lucacampanella.callgraphflows.utils.Utils;
 import net.corda.core.flows.FlowLogic;
@@ -14,17 +15,19 @@ import spoon.reflect.code.*;
 import spoon.reflect.declaration.CtElement;
 import spoon.reflect.declaration.CtMethod;
 import spoon.reflect.declaration.CtTypedElement;
+import spoon.reflect.factory.Factory;
 import spoon.reflect.reference.CtTypeReference;
 import spoon.reflect.visitor.filter.NamedElementFilter;
 import spoon.reflect.visitor.filter.TypeFilter;
-import spoon.support.compiler.VirtualFile;
 import spoon.template.TemplateMatcher;
 
 import java.io.BufferedReader;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.lang.reflect.Method;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 /**
@@ -32,13 +35,25 @@ import java.util.stream.Collectors;
  */
 public final class MatcherHelper {
 
-    private static final Map<String, TemplateMatcher> matchersMap = new HashMap<>();
+    //the matcher layer can be used by concurrent analyses: the maps are either immutable after the initialization
+    //of the class or concurrent maps filled once per key
 
-    private static final Map<Class, CtTypeReference> typesMap = new HashMap<>();
+    //a TemplateMatcher keeps the state of the last match, so each thread has its own
+    private static final ThreadLocal<Map<String, TemplateMatcher>> matchersMap = ThreadLocal.withInitial(HashMap::new);
 
-    private static CtModel model;
+    private static final Map<Class, CtTypeReference> typesMap = new ConcurrentHashMap<>();
 
-    private static Set<String> allMatchersName = null;
+    //signature of the invocation of each matcher, and the other way around, built once when the class is loaded
+    private static final Map<String, String> signaturesByMatcherName;
+    private static final Map<String, String> matcherNamesBySignature;
+
+    //signatures and type templates generated at build time from MatcherContainer.java, see MatcherSnapshot
+    private static final MatcherSnapshot snapshot;
+
+    //used to create the type references of the snapshot
+    private static final Factory typeFactory = new Launcher().getFactory();
+
+    private static final Set<String> allMatchersName = Collections.unmodifiableSet(findAllMatcherNames());
 
     private static final Logger LOGGER = LoggerFactory.getLogger(MatcherHelper.class);
 
@@ -49,13 +64,50 @@ public final class MatcherHelper {
     private static final String SEND_AND_RECEIVE_MATCHER = "sendAndReceiveMatcher";
     private static final String SEND_AND_RECEIVE_WITH_BOOL_MATCHER = "sendAndReceiveWithBoolMatcher";
     private static final String SUB_FLOW_MATCHER = "subFlowMatcher";
+    private static final String INITIATE_FLOW_MATCHER = "initiateFlowMatcher";
+    private static final String TRANSACTION_BUILDER_MATCHER = "transactionBuilderMatcher";
 
     private static final String[] matchersWithCompanion = {SEND_MATCHER, SEND_WITH_BOOL_MATCHER, RECEIVE_MATCHER,
             RECEIVE_WITH_BOOL_MATCHER, SEND_AND_RECEIVE_MATCHER, SEND_AND_RECEIVE_WITH_BOOL_MATCHER, SUB_FLOW_MATCHER};
 
+
     static {
-        Launcher launcher = new Launcher();
+        MatcherSnapshot loadedSnapshot = loadSnapshot();
+        if(loadedSnapshot == null || !loadedSnapshot.containsSignatures(getAllMatcherNames())) {
+            LOGGER.info("{} not found or outdated, building the model of the matchers", MatcherSnapshot.RESOURCE_NAME);
+            loadedSnapshot = MatcherSnapshot.fromModel(getTemplatesModel());
+        }
+        snapshot = loadedSnapshot;
+
+        Map<String, String> signatures = new HashMap<>();
+        Map<String, String> matcherNames = new HashMap<>();
+        for(String matcherName : getAllMatcherNames()) {
+            final String signature = snapshot.getSignature(matcherName);
+            final String otherMatcherName = matcherNames.put(signature, matcherName);
+            if(otherMatcherName != null) {
+                throw new MatcherException("Matchers " + otherMatcherName + " and " + matcherName +
+                        " match the same signature " + signature);
+            }
+            signatures.put(matcherName, signature);
+        }
+        signaturesByMatcherName = Collections.unmodifiableMap(signatures);
+        matcherNamesBySignature = Collections.unmodifiableMap(matcherNames);
+    }
+
+    private MatcherHelper() {
+        //private constructor to hide public one
+    }
+
+    //the model of the templates is built only the first time it's needed, most of the times the snapshot is enough
+    private static final class TemplatesModelHolder {
+        private static final CtModel MODEL = MatcherSnapshot.buildModel(readMatcherContainer());
+    }
 
+    private static CtModel getTemplatesModel() {
+        return TemplatesModelHolder.MODEL;
+    }
+
+    private static String readMatcherContainer() {
         final InputStream matcherContainerStream =
                 MatcherHelper.class.getClassLoader().getResourceAsStream("MatcherContainer.java");
 
@@ -63,18 +115,18 @@ public final class MatcherHelper {
             throw new MatcherException("MatcherContainer.java not found");
         }
 
-        final String matcherContainerString = new BufferedReader(new InputStreamReader(matcherContainerStream)).lines()
-                .parallel().collect(Collectors.joining("\n"));
-
-        final VirtualFile matcherContainerVirtualFile = new VirtualFile(matcherContainerString);
-
-        launcher.addInputResource(matcherContainerVirtualFile);
-        launcher.buildModel();
-        model = launcher.getModel();
+        return new BufferedReader(new InputStreamReader(matcherContainerStream)).lines()
+                .collect(Collectors.joining("\n"));
     }
 
-    private MatcherHelper() {
-        //private constructor to hide public one
+    private static MatcherSnapshot loadSnapshot() {
+        try {
+            return MatcherSnapshot.load(
+                    MatcherHelper.class.getClassLoader().getResourceAsStream(MatcherSnapshot.RESOURCE_NAME));
+        } catch (IOException e) {
+            LOGGER.warn("Couldn't read {}", MatcherSnapshot.RESOURCE_NAME, e);
+            return null;
+        }
     }
 
     /**
@@ -83,25 +135,36 @@ public final class MatcherHelper {
      * @return the matcher corresponding to the first line of the method with that name in {@link MatcherContainer}
      */
     public static TemplateMatcher getMatcher(String name) {
-        return matchersMap.computeIfAbsent(name, key -> {
-            CtElement templateRoot = getFirstLineOfMethod(name);
-            return new TemplateMatcher(templateRoot);
+        return matchersMap.get().computeIfAbsent(name, key -> {
+            //the templates model is shared by all the threads, the matchers are built one at a time
+            synchronized (getTemplatesModel()) {
+                CtElement templateRoot = getFirstLineOfMethod(name);
+                return new TemplateMatcher(templateRoot);
+            }
         });
     }
 
     private static CtElement getFirstLineOfMethod(String methodName) {
-        CtMethod<?> method = (CtMethod<?>) model.getElements(
+        CtMethod<?> method = (CtMethod<?>) getTemplatesModel().getElements(
                 new NamedElementFilter(CtMethod.class, methodName)).get(0);
         return method.getBody().getStatement(0);
     }
 
     public static CtTypeReference getTypeReference(Class klass) {
         return typesMap.computeIfAbsent(klass, key -> {
-            CtMethod<?> method = (CtMethod<?>) model.getElements(
-                    new NamedElementFilter(CtMethod.class, "typeTemplateFor" +
-                            Utils.removePackageDescription(klass.getName()))).get(0);
+            final String simpleName = Utils.removePackageDescription(klass.getName());
+            final String qualifiedName = snapshot.getTypeName(simpleName);
+            if(qualifiedName != null) {
+                synchronized (typeFactory) {
+                    return typeFactory.Type().createReference(qualifiedName);
+                }
+            }
+            synchronized (getTemplatesModel()) {
+                CtMethod<?> method = (CtMethod<?>) getTemplatesModel().getElements(
+                        new NamedElementFilter(CtMethod.class, "typeTemplateFor" + simpleName)).get(0);
 
-            return  ((CtLocalVariable) method.getBody().getStatement(0)).getType();
+                return ((CtLocalVariable) method.getBody().getStatement(0)).getType();
+            }
         });
     }
 
@@ -113,41 +176,103 @@ public final class MatcherHelper {
      */
     public static CtAbstractInvocation getFirstMatchedExpression(CtElement statement, String matcherName) {
 
-        Queue<CtElement> queue = new LinkedList<>();
+        if(statement == null) {
+            return null;
+        }
+        Queue<CtElement> queue = new ArrayDeque<>();
         queue.add(statement);
 
         //breadth first search
         while(!queue.isEmpty()){
             CtElement current = queue.remove();
-            if(current == null) {
-                continue;
-            }
             if(current instanceof CtAbstractInvocation) {
                 CtAbstractInvocation inv = (CtAbstractInvocation) current;
                 if(invocationMatches(inv, matcherName)) {
                     return inv;
                 }
             }
-            queue.addAll(current.getDirectChildren());
+            addNonNullChildren(queue, current);
         }
 
         return null;
     }
 
-    private static String getSignatureDescription(String matcherName) {
-        final CtElement firstLineOfMethod = getFirstLineOfMethod(matcherName);
-        final CtAbstractInvocation ctAbstractInvocation =
-                firstLineOfMethod.getElements(new TypeFilter<>(CtAbstractInvocation.class)).get(0);
-        return ctAbstractInvocation.getExecutable().getSignature();
+    /**
+     * Visits the element once and finds the first invocation matched by each of the matchers, instead of visiting
+     * it once per matcher with {@link #getFirstMatchedExpression(CtElement, String)}
+     * @param element the element to query
+     * @return for each matcher the first matched invocation in breadth first order
+     */
+    public static MatcherClassification classify(CtElement element) {
+        final MatcherClassification res = new MatcherClassification();
+        if(element == null) {
+            return res;
+        }
+        Queue<CtElement> queue = new ArrayDeque<>();
+        queue.add(element);
+
+        //breadth first search, a single lookup tells which matcher the invocation matches
+        while(!queue.isEmpty()){
+            CtElement current = queue.remove();
+            if(current instanceof CtAbstractInvocation) {
+                CtAbstractInvocation inv = (CtAbstractInvocation) current;
+                final String matcherName = getMatcherName(inv);
+                if(matcherName != null) {
+                    res.addMatchIfFirst(matcherName, inv);
+                }
+            }
+            addNonNullChildren(queue, current);
+        }
+        return res;
+    }
+
+    /**
+     * Same as {@link #classify(CtElement)}, but the result is cached in the analyzer, so that the elements already
+     * classified in the analysis are not visited again
+     */
+    public static MatcherClassification classify(CtElement element, AnalyzerWithModel analyzer) {
+        return analyzer.getClassificationCache().classify(element);
+    }
+
+    /**
+     * Same as {@link #getFirstMatchedExpression(CtElement, String)}, using the classifications cached in the analyzer
+     */
+    public static CtAbstractInvocation getFirstMatchedExpression(CtElement statement, String matcherName,
+                                                                 AnalyzerWithModel analyzer) {
+        return classify(statement, analyzer).getFirstMatch(matcherName);
+    }
+
+    private static void addNonNullChildren(Queue<CtElement> queue, CtElement element) {
+        for(CtElement child : element.getDirectChildren()) {
+            if(child != null) {
+                queue.add(child);
+            }
+        }
+    }
+
+    /**
+     * @return the signature of the invocation matched by the matcher, null if there is no such matcher
+     */
+    public static String getSignatureDescription(String matcherName) {
+        final String signature = signaturesByMatcherName.get(matcherName);
+        return signature != null ? signature : snapshot.getSignature(matcherName);
+    }
+
+    /**
+     * @return the name of the matcher that matches the invocation, null if the invocation is not matched by any
+     */
+    public static String getMatcherName(CtAbstractInvocation inv) {
+        return matcherNamesBySignature.get(inv.getExecutable().getSignature());
     }
 
     public static boolean invocationMatches(CtAbstractInvocation inv, String matcherName) {
-        return inv.getExecutable().getSignature().equals(getSignatureDescription(matcherName));
+        return matcherName.equals(getMatcherName(inv));
     }
 
     public static CtAbstractInvocation getFirstMatchedStatementWithCompanion(CtElement statement) {
+        final MatcherClassification classification = classify(statement);
         for(String matcherName : matchersWithCompanion) {
-            final CtAbstractInvocation inv = getFirstMatchedExpression(statement, matcherName);
+            final CtAbstractInvocation inv = classification.getFirstMatch(matcherName);
             if(inv != null) {
                 return inv;
             }
@@ -160,18 +285,19 @@ public final class MatcherHelper {
      * @return all the possible matcher names
      */
     public static Set<String> getAllMatcherNames() {
-        if(allMatchersName == null) {
-            allMatchersName = new HashSet<>();
-            Class c = MatcherContainer.class;
-            Method[] methods = c.getDeclaredMethods();
-            for (Method m : methods) {
-                if (m.getName().endsWith("Matcher")) {
-                    allMatchersName.add(m.getName());
-                }
+        return allMatchersName;
+    }
+
+    private static Set<String> findAllMatcherNames() {
+        Set<String> res = new HashSet<>();
+        Class c = MatcherContainer.class;
+        Method[] methods = c.getDeclaredMethods();
+        for (Method m : methods) {
+            if (m.getName().endsWith("Matcher")) {
+                res.add(m.getName());
             }
         }
-
-        return allMatchersName;
+        return res;
     }
 
     /**
@@ -216,21 +342,22 @@ public final class MatcherHelper {
 
     private static StatementInterface initiateIfCordaRelevantStatement(CtStatement statement,
                                                             AnalyzerWithModel analyzer) {
-        if (matchesAnyChildren(statement, "transactionBuilderMatcher")) {
+        final MatcherClassification classification = classify(statement, analyzer);
+        if (classification.matches(TRANSACTION_BUILDER_MATCHER)) {
             return TransactionBuilder.fromStatement(statement, analyzer);
-        } else if (matchesAnyChildren(statement, "initiateFlowMatcher")) {
+        } else if (classification.matches(INITIATE_FLOW_MATCHER)) {
             return InitiateFlow.fromCtStatement(statement, analyzer);
-        } else if (matchesAnyChildren(statement, SEND_MATCHER) ||
-                matchesAnyChildren(statement, SEND_WITH_BOOL_MATCHER)) {
+        } else if (classification.matches(SEND_MATCHER) ||
+                classification.matches(SEND_WITH_BOOL_MATCHER)) {
             return Send.fromCtStatement(statement, analyzer);
-        } else if (matchesAnyChildren(statement, RECEIVE_MATCHER) ||
-                matchesAnyChildren(statement, RECEIVE_WITH_BOOL_MATCHER)) {
+        } else if (classification.matches(RECEIVE_MATCHER) ||
+                classification.matches(RECEIVE_WITH_BOOL_MATCHER)) {
             return Receive.fromCtStatement(statement, analyzer);
-        } else if (matchesAnyChildren(statement, SEND_AND_RECEIVE_MATCHER) ||
-                matchesAnyChildren(statement, SEND_AND_RECEIVE_WITH_BOOL_MATCHER)) {
+        } else if (classification.matches(SEND_AND_RECEIVE_MATCHER) ||
+                classification.matches(SEND_AND_RECEIVE_WITH_BOOL_MATCHER)) {
             return SendAndReceive.fromCtStatement(statement, analyzer);
         }
-        else if (matchesAnyChildren(statement, SUB_FLOW_MATCHER)) {
+        else if (classification.matches(SUB_FLOW_MATCHER)) {
             return SubFlowBuilder.fromCtStatement(statement, analyzer);
         }
 
@@ -247,10 +374,11 @@ public final class MatcherHelper {
             return null;
         }
 
-        if(elem.getType().isSubtypeOf(getTypeReference(FlowSession.class))) {
+        final SubtypeCache subtypeCache = analyzer.getSubtypeCache();
+        if(subtypeCache.isSubtypeOf(elem.getType(), FlowSession.class)) {
             return SessionAssignment.fromCtStatement(statement, analyzer);
         }
-        else if (elem.getType().isSubtypeOf(getTypeReference(FlowLogic.class))) {
+        else if (subtypeCache.isSubtypeOf(elem.getType(), FlowLogic.class)) {
             if(!statement.getElements(new TypeFilter<>(CtAbstractInvocation.class)).isEmpty()) {
                 return FlowConstructor.fromStatement(statement, analyzer);
             }
@@ -263,8 +391,7 @@ public final class MatcherHelper {
     }
 
     private static StatementInterface initiateIfContainsRelevantMethod(CtStatement statement, AnalyzerWithModel analyzer) {
-        final List<CtAbstractInvocation> methods = statement.getElements(new TypeFilter<>(CtAbstractInvocation.class));
-        if(methods.isEmpty()) {
+        if(analyzer.getClassificationCache().getRelevantInvocations(statement).isEmpty()) {
             return null;
         }
         final StatementWithRelevantMethods statementWithRelevantMethods =
@@ -315,17 +442,20 @@ public final class MatcherHelper {
     public static StatementInterface instantiateStatementIfQueryableMatches(CtElement queryable,
                                                                                          CtStatement statement,
                                                                                          AnalyzerWithModel analyzer) {
-        if (matchesAnyChildren(queryable, SEND_MATCHER) ||
-                matchesAnyChildren(statement, SEND_WITH_BOOL_MATCHER)) {
+        final MatcherClassification queryableClassification = classify(queryable, analyzer);
+        //the matchers with the boolean are looked for in the whole statement
+        final MatcherClassification statementClassification = classify(statement, analyzer);
+        if (queryableClassification.matches(SEND_MATCHER) ||
+                statementClassification.matches(SEND_WITH_BOOL_MATCHER)) {
             return Send.fromCtStatement(statement, analyzer);
-        } else if (matchesAnyChildren(queryable, RECEIVE_MATCHER) ||
-                matchesAnyChildren(statement, RECEIVE_WITH_BOOL_MATCHER)) {
+        } else if (queryableClassification.matches(RECEIVE_MATCHER) ||
+                statementClassification.matches(RECEIVE_WITH_BOOL_MATCHER)) {
             return Receive.fromCtStatement(statement, analyzer);
-        } else if (matchesAnyChildren(queryable, SEND_AND_RECEIVE_MATCHER) ||
-                matchesAnyChildren(statement, SEND_AND_RECEIVE_WITH_BOOL_MATCHER)) {
+        } else if (queryableClassification.matches(SEND_AND_RECEIVE_MATCHER) ||
+                statementClassification.matches(SEND_AND_RECEIVE_WITH_BOOL_MATCHER)) {
             return SendAndReceive.fromCtStatement(statement, analyzer);
         }
-        else if (matchesAnyChildren(queryable, SUB_FLOW_MATCHER)) {
+        else if (queryableClassification.matches(SUB_FLOW_MATCHER)) {
             return SubFlowBuilder.fromCtStatement(statement, analyzer);
         }
 
@@ -333,13 +463,7 @@ public final class MatcherHelper {
     }
 
     public static boolean isCordaMethod(CtAbstractInvocation element) {
-        final Set<String> allMatchers = getAllMatcherNames();
-        for(String matcherName : allMatchers) {
-            if(invocationMatches(element, matcherName)) {
-                return true;
-            }
-        }
-        return false;
+        return getMatcherName(element) != null;
     }
 
     //OLD SYSTEM WITH SPOON DOING THE QUERIES
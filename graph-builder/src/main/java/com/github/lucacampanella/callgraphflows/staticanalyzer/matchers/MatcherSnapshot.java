@@ -0,0 +1,162 @@
+package com.github.lucacampanella.callgraphflows.staticanalyzer.matchers;
+
+import spoon.Launcher;
+import spoon.reflect.CtModel;
+import spoon.reflect.code.CtAbstractInvocation;
+import spoon.reflect.code.CtLocalVariable;
+import spoon.reflect.code.CtStatement;
+import spoon.reflect.declaration.CtMethod;
+import spoon.reflect.visitor.filter.TypeFilter;
+import spoon.support.compiler.VirtualFile;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+/**
+ * What {@link MatcherHelper} needs from the templates in {@link MatcherContainer} once they are compiled: the
+ * signature of the invocation of each template and the qualified name of each type template.
+ * The snapshot is generated from MatcherContainer.java when the project is built (see {@link #main(String[])}), so
+ * that at runtime the Spoon model of the templates doesn't need to be built at every start.
+ */
+public final class MatcherSnapshot {
+
+    static final String RESOURCE_NAME = "MatcherSnapshot.properties";
+
+    private static final String SIGNATURE_PREFIX = "signature.";
+    private static final String TYPE_PREFIX = "type.";
+    private static final String TYPE_TEMPLATE_PREFIX = "typeTemplateFor";
+
+    private final Map<String, String> signatures = new TreeMap<>();
+    private final Map<String, String> typeNames = new TreeMap<>();
+
+    private MatcherSnapshot() {
+        //private constructor to hide public one
+    }
+
+    /**
+     * Compiles the source of {@link MatcherContainer} in a Spoon model
+     */
+    static CtModel buildModel(String matcherContainerSource) {
+        Launcher launcher = new Launcher();
+        launcher.addInputResource(new VirtualFile(matcherContainerSource));
+        launcher.buildModel();
+        return launcher.getModel();
+    }
+
+    /**
+     * Extracts the snapshot from the model of {@link MatcherContainer}
+     */
+    static MatcherSnapshot fromModel(CtModel model) {
+        MatcherSnapshot res = new MatcherSnapshot();
+        for(CtMethod<?> method : model.getElements(new TypeFilter<>(CtMethod.class))) {
+            if(method.getBody() == null || method.getBody().getStatements().isEmpty()) {
+                continue;
+            }
+            final String name = method.getSimpleName();
+            final CtStatement firstLine = method.getBody().getStatement(0);
+            if(name.startsWith(TYPE_TEMPLATE_PREFIX) && firstLine instanceof CtLocalVariable) {
+                res.typeNames.put(name.substring(TYPE_TEMPLATE_PREFIX.length()),
+                        ((CtLocalVariable<?>) firstLine).getType().getQualifiedName());
+            }
+            else {
+                final List<CtAbstractInvocation> invocations =
+                        firstLine.getElements(new TypeFilter<>(CtAbstractInvocation.class));
+                if(!invocations.isEmpty()) {
+                    res.signatures.put(name, invocations.get(0).getExecutable().getSignature());
+                }
+            }
+        }
+        return res;
+    }
+
+    /**
+     * @return the snapshot read from the stream, or null if the stream is null
+     */
+    static MatcherSnapshot load(InputStream stream) throws IOException {
+        if(stream == null) {
+            return null;
+        }
+        Properties properties = new Properties();
+        try(InputStream in = stream) {
+            properties.load(in);
+        }
+        MatcherSnapshot res = new MatcherSnapshot();
+        for(String key : properties.stringPropertyNames()) {
+            if(key.startsWith(SIGNATURE_PREFIX)) {
+                res.signatures.put(key.substring(SIGNATURE_PREFIX.length()), properties.getProperty(key));
+            }
+            else if(key.startsWith(TYPE_PREFIX)) {
+                res.typeNames.put(key.substring(TYPE_PREFIX.length()), properties.getProperty(key));
+            }
+        }
+        return res;
+    }
+
+    /**
+     * Writes the snapshot in the properties format, sorted by key so that the same templates always produce
+     * the same file
+     */
+    void write(Writer writer) throws IOException {
+        writer.write("#Generated from MatcherContainer.java, do not edit\n");
+        for(Map.Entry<String, String> entry : signatures.entrySet()) {
+            writer.write(SIGNATURE_PREFIX + entry.getKey() + "=" + entry.getValue() + "\n");
+        }
+        for(Map.Entry<String, String> entry : typeNames.entrySet()) {
+            writer.write(TYPE_PREFIX + entry.getKey() + "=" + entry.getValue() + "\n");
+        }
+    }
+
+    /**
+     * @return the signature of the invocation in the template with this name, null if there is no such template
+     */
+    String getSignature(String templateName) {
+        return signatures.get(templateName);
+    }
+
+    /**
+     * @param simpleName the simple name of the class, as in the name of the type template
+     * @return the qualified name of the type, null if there is no type template for it
+     */
+    String getTypeName(String simpleName) {
+        return typeNames.get(simpleName);
+    }
+
+    boolean containsSignatures(Collection<String> templateNames) {
+        return signatures.keySet().containsAll(templateNames);
+    }
+
+    /**
+     * Generates the snapshot at build time
+     * @param args the path of MatcherContainer.java and the path of the file to be written
+     */
+    public static void main(String[] args) throws IOException {
+        if(args.length != 2) {
+            throw new IllegalArgumentException("Usage: MatcherSnapshot <MatcherContainer.java> <output file>");
+        }
+        final String source;
+        try(BufferedReader reader = new BufferedReader(new InputStreamReader(
+                Files.newInputStream(Paths.get(args[0])), StandardCharsets.UTF_8))) {
+            source = reader.lines().collect(Collectors.joining("\n"));
+        }
+        final Path output = Paths.get(args[1]);
+        if(output.getParent() != null) {
+            Files.createDirectories(output.getParent());
+        }
+        try(Writer writer = Files.newBufferedWriter(output, StandardCharsets.UTF_8)) {
+            fromModel(buildModel(source)).write(writer);
+        }
+    }
+}
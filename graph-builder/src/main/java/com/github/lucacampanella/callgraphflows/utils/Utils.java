@@ -5,6 +5,7 @@ import spoon.reflect.code.CtExpression;
 import spoon.reflect.code.CtInvocation;
 import spoon.reflect.code.CtStatement;
 import spoon.reflect.visitor.chain.CtQueryable;
+import spoon.reflect.visitor.filter.TypeFilter;
 import spoon.template.TemplateMatcher;
 
 import java.util.List;
@@ -43,6 +44,12 @@ public final class Utils {
             return code;
         }
 
+        //the template needs the model of the matchers, it's used only if unwrap is invoked at all
+        final List<CtInvocation> invocations = queryable.filterChildren(new TypeFilter<>(CtInvocation.class)).list();
+        if(invocations.stream().noneMatch(inv -> "unwrap".equals(inv.getExecutable().getSimpleName()))) {
+            return code;
+        }
+
         final TemplateMatcher unwrapTemplate = MatcherHelper.getMatcher("unwrapTemplate");
         final List<CtExpression> matches = queryable.filterChildren(unwrapTemplate).list();
         if(matches.isEmpty()) {
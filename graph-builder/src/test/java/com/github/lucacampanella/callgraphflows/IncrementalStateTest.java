@@ -0,0 +1,111 @@
+package com.github.lucacampanella.callgraphflows;
+
+import com.github.lucacampanella.callgraphflows.staticanalyzer.AnalysisErrorException;
+import com.github.lucacampanella.callgraphflows.staticanalyzer.AnalysisResult;
+import com.github.lucacampanella.callgraphflows.staticanalyzer.AnalyzerWithModel;
+import com.github.lucacampanella.callgraphflows.staticanalyzer.SourceClassAnalyzer;
+import com.github.lucacampanella.callgraphflows.staticanalyzer.testclasses.ContainerFlow;
+import com.github.lucacampanella.callgraphflows.staticanalyzer.testclasses.DoWhileTestFlow;
+import com.github.lucacampanella.callgraphflows.staticanalyzer.testclasses.MethodInvocationTestFlow;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+
+import static com.github.lucacampanella.TestUtils.fromClassSrcToPath;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class IncrementalStateTest {
+
+    private static final String INITIATOR_NAME = MethodInvocationTestFlow.Initiator.class.getName();
+
+    @Test
+    void writeAndLoad(@TempDir Path tempDir) throws IOException, AnalysisErrorException {
+        final AnalyzerWithModel analyzer = new SourceClassAnalyzer(fromClassSrcToPath(MethodInvocationTestFlow.class));
+        final AnalysisResult analysisResult =
+                analyzer.analyzeFlowLogicClass(analyzer.getClass(MethodInvocationTestFlow.Initiator.class));
+        assertThat(analysisResult.getDependencies()).contains(MethodInvocationTestFlow.class.getName());
+
+        final IncrementalState.SourceHashes sourceHashes = new IncrementalState.SourceHashes(analyzer.getModel());
+        final IncrementalState state = new IncrementalState("configuration");
+        state.record(INITIATOR_NAME, analysisResult.getDependencies(), sourceHashes);
+        final Path stateFile = tempDir.resolve(IncrementalState.FILE_NAME);
+        state.write(stateFile);
+
+        assertThat(IncrementalState.load(stateFile, "configuration").isUpToDate(INITIATOR_NAME, sourceHashes))
+                .isTrue();
+        assertThat(IncrementalState.load(stateFile, "another configuration")
+                .isUpToDate(INITIATOR_NAME, sourceHashes)).isFalse();
+        assertThat(IncrementalState.load(tempDir.resolve("missing"), "configuration")
+                .isUpToDate(INITIATOR_NAME, sourceHashes)).isFalse();
+    }
+
+    @Test
+    void noAnalyzerJarHashOutsideTheJar() {
+        //the tests run from the compiled classes, a rebuild couldn't be recognized
+        assertThat(IncrementalState.getAnalyzerJarHash()).isNull();
+    }
+
+    @Test
+    void unchangedFlowsNotDrawnAgain(@TempDir Path tempDir) throws IOException {
+        final Path svgFile = tempDir.resolve("images").resolve(INITIATOR_NAME + ".svg");
+        DrawerUtil.setIncremental(true);
+        try {
+            DrawerUtil.drawAllStartableClasses(
+                    new SourceClassAnalyzer(fromClassSrcToPath(MethodInvocationTestFlow.class)), tempDir.toString());
+            assertThat(svgFile).exists();
+            assertThat(tempDir.resolve(IncrementalState.FILE_NAME)).exists();
+
+            final FileTime oldTime = FileTime.fromMillis(0);
+            Files.setLastModifiedTime(svgFile, oldTime);
+            DrawerUtil.drawAllStartableClasses(
+                    new SourceClassAnalyzer(fromClassSrcToPath(MethodInvocationTestFlow.class)), tempDir.toString());
+            assertThat(Files.getLastModifiedTime(svgFile)).isEqualTo(oldTime);
+
+            //without the state the flow is drawn again
+            Files.delete(tempDir.resolve(IncrementalState.FILE_NAME));
+            DrawerUtil.drawAllStartableClasses(
+                    new SourceClassAnalyzer(fromClassSrcToPath(MethodInvocationTestFlow.class)), tempDir.toString());
+            assertThat(Files.getLastModifiedTime(svgFile)).isNotEqualTo(oldTime);
+        } finally {
+            DrawerUtil.setIncremental(false);
+        }
+    }
+
+    @Test
+    void flowDrawnAgainWhenASubFlowChanges(@TempDir Path tempDir) throws IOException {
+        final Path sourcesDir = Files.createDirectory(tempDir.resolve("sources"));
+        final Path subFlowSource = copyToDirectory(DoWhileTestFlow.class, sourcesDir);
+        copyToDirectory(ContainerFlow.class, sourcesDir);
+        copyToDirectory(MethodInvocationTestFlow.class, sourcesDir);
+        final Path imagesDir = tempDir.resolve("images");
+        final Path containerSvg = imagesDir.resolve(ContainerFlow.class.getName() + ".svg");
+        final Path unrelatedSvg = imagesDir.resolve(INITIATOR_NAME + ".svg");
+        DrawerUtil.setIncremental(true);
+        try {
+            DrawerUtil.drawAllStartableClasses(new SourceClassAnalyzer(sourcesDir.toString()), tempDir.toString());
+            final FileTime oldTime = FileTime.fromMillis(0);
+            Files.setLastModifiedTime(containerSvg, oldTime);
+            Files.setLastModifiedTime(unrelatedSvg, oldTime);
+
+            //only the source of the subflow changes, not the one of the flow that calls it
+            Files.write(subFlowSource, "//changed\n".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+            DrawerUtil.drawAllStartableClasses(new SourceClassAnalyzer(sourcesDir.toString()), tempDir.toString());
+            assertThat(Files.getLastModifiedTime(containerSvg)).isNotEqualTo(oldTime);
+            assertThat(Files.getLastModifiedTime(unrelatedSvg)).isEqualTo(oldTime);
+        } finally {
+            DrawerUtil.setIncremental(false);
+        }
+    }
+
+    private static Path copyToDirectory(Class klass, Path directory) throws IOException {
+        final Path source = Paths.get(fromClassSrcToPath(klass));
+        return Files.copy(source, directory.resolve(source.getFileName()));
+    }
+}
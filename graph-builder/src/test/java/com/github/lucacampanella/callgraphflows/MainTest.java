@@ -1,6 +1,10 @@
 package com.github.lucacampanella.callgraphflows;
 
+import com.github.lucacampanella.TestUtils;
+import com.github.lucacampanella.callgraphflows.staticanalyzer.testclasses.DoWhileTestFlow;
+import com.github.lucacampanella.callgraphflows.staticanalyzer.testclasses.IfFailingTestFlow;
 import org.junit.jupiter.api.Test;
+import picocli.CommandLine;
 
 import java.io.IOException;
 import java.net.URL;
@@ -15,4 +19,22 @@ class MainTest {
         Main.main(new String[]{jarPath, "-o", "build/graphs", "-d", "fernflower", "-l", "--no-box-subflows",
         "--draw-return", "--draw-statements-with-relevant-methods"});
     }
-}
\ No newline at end of file
+
+    @Test
+    void sessionProjectionRejectedWithAutomata() {
+        final String jarPath = getClass().getClassLoader().getResource("KotlinTestJar.jar").getPath();
+        assertThrows(CommandLine.ParameterException.class, () -> CommandLine.populateCommand(new Main(), jarPath,
+                "--session-projection", "--matching-engine", "automaton").checkOptions());
+        assertThrows(CommandLine.ParameterException.class, () -> CommandLine.populateCommand(new Main(), jarPath,
+                "--session-projection", "--loop-analysis", "fixpoint").checkOptions());
+        CommandLine.populateCommand(new Main(), jarPath, "--session-projection").checkOptions();
+    }
+
+    @Test
+    void checkProtocolOnlyExitStatus() throws IOException {
+        assertEquals(0, CommandLine.populateCommand(new Main(),
+                TestUtils.fromClassSrcToPath(DoWhileTestFlow.class), "--check-protocol-only").call());
+        assertEquals(1, CommandLine.populateCommand(new Main(),
+                TestUtils.fromClassSrcToPath(IfFailingTestFlow.class), "--check-protocol-only").call());
+    }
+}
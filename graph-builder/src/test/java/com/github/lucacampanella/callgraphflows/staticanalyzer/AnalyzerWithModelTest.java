@@ -1,6 +1,15 @@
 package com.github.lucacampanella.callgraphflows.staticanalyzer;
 
+import com.github.lucacampanella.TestUtils;
+import com.github.lucacampanella.callgraphflows.DrawerUtil;
+import com.github.lucacampanella.callgraphflows.staticanalyzer.testclasses.DoWhileTestFlow;
+import com.github.lucacampanella.callgraphflows.staticanalyzer.testclasses.IfFailingTestFlow;
+import com.github.lucacampanella.callgraphflows.staticanalyzer.testclasses.MethodInvocationTestFlow;
+import com.github.lucacampanella.callgraphflows.staticanalyzer.testclasses.NestedIfsTestFlow;
+import com.github.lucacampanella.callgraphflows.staticanalyzer.testclasses.SharedResponderTestFlow;
+import com.github.lucacampanella.callgraphflows.staticanalyzer.testclasses.SubFlowInitializationTestFlow;
 import com.github.lucacampanella.callgraphflows.staticanalyzer.testclasses.ThrowTestFlow;
+import com.github.lucacampanella.callgraphflows.staticanalyzer.testclasses.WhileForEachTestFlow;
 import com.github.lucacampanella.callgraphflows.staticanalyzer.testclasses.subclassestests.DoubleExtendingSuperclassTestFlow;
 import com.github.lucacampanella.callgraphflows.staticanalyzer.testclasses.subclassestests.ExtendingSuperclassTestFlow;
 import com.github.lucacampanella.callgraphflows.staticanalyzer.testclasses.subclassestests.InitiatorBaseFlow;
@@ -9,12 +18,23 @@ import net.corda.core.flows.InitiatingFlow;
 import net.corda.core.flows.StartableByRPC;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import spoon.reflect.declaration.CtClass;
+import spoon.reflect.declaration.CtMethod;
 import spoon.reflect.declaration.CtType;
 import spoon.reflect.visitor.filter.NamedElementFilter;
+import spoon.reflect.visitor.filter.TypeFilter;
 
 import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 
 import static com.github.lucacampanella.TestUtils.fromClassSrcToPath;
@@ -22,6 +42,8 @@ import static org.assertj.core.api.Assertions.assertThat;
 
 class AnalyzerWithModelTest {
 
+    private static final int THREADS = 4;
+
     static AnalyzerWithModel analyzerWithModel;
 
     @BeforeAll
@@ -59,6 +81,15 @@ class AnalyzerWithModelTest {
         assertThat(classesNames).contains("InitiatorBaseFlow", "Initiator");
     }
 
+    @Test
+    void getClassesByAnnotationIndexed() {
+        final List<CtClass> initiatedByClasses = analyzerWithModel.getClassesByAnnotation(InitiatedBy.class);
+        initiatedByClasses.clear();
+        assertThat(analyzerWithModel.getClassesByAnnotation(InitiatedBy.class))
+                .isNotEmpty()
+                .isEqualTo(analyzerWithModel.getClassesByAnnotation(InitiatedBy.class));
+    }
+
     @Test
     void getDeeperClassInitiatedBy() {
         final List<CtClass> initiatingClasses = analyzerWithModel.getClassesByAnnotation(InitiatingFlow.class);
@@ -70,6 +101,17 @@ class AnalyzerWithModelTest {
                         "testclasses.subclassestests.DoubleExtendingSuperclassTestFlow$Acceptor");
     }
 
+    @Test
+    void getDeeperClassInitiatedByBaseClass() {
+        final AnalyzerWithModel analyzer =
+                new SourceClassAnalyzer(fromClassSrcToPath(SharedResponderTestFlow.class));
+        for(Class initiator : new Class[]{SharedResponderTestFlow.FirstInitiator.class,
+                SharedResponderTestFlow.SecondInitiator.class}) {
+            assertThat(analyzer.getDeeperClassInitiatedBy(analyzer.getClass(initiator)))
+                    .isSameAs(analyzer.getClass(SharedResponderTestFlow.Acceptor.class));
+        }
+    }
+
     @Test
     void getFurthestAwaySubclass() {
         final List<CtClass> initiatingClasses = analyzerWithModel.getClassesByAnnotation(InitiatingFlow.class);
@@ -90,6 +132,119 @@ class AnalyzerWithModelTest {
         assertThat(allSubClasses).hasSize(3);
     }
 
+    @Test
+    void typeHierarchyIndexSameAsSubtypeScan() {
+        final List<CtClass> allClasses = analyzerWithModel.getModel().getElements(new TypeFilter<>(CtClass.class));
+        final TypeHierarchyIndex index = TypeHierarchyIndex.fromClasses(allClasses);
+        for(CtClass superClass : allClasses) {
+            for(CtClass klass : allClasses) {
+                assertThat(index.isSubclassOf(klass, superClass))
+                        .as(klass.getQualifiedName() + " extends " + superClass.getQualifiedName())
+                        .isEqualTo(klass.getReference().isSubtypeOf(superClass.getReference()));
+            }
+            final List<CtClass> expectedSubClasses = allClasses.stream()
+                    .filter(klass -> klass.isSubtypeOf(superClass.getReference())).collect(Collectors.toList());
+            assertThat(analyzerWithModel.getAllSubClassesIncludingThis(superClass)).as(superClass.getQualifiedName())
+                    .containsExactlyElementsOf(expectedSubClasses);
+
+            CtClass expectedFurthestAway = superClass;
+            for(CtClass subClass : expectedSubClasses) {
+                if(subClass.isSubtypeOf(expectedFurthestAway.getReference())) {
+                    expectedFurthestAway = subClass;
+                }
+            }
+            assertThat(analyzerWithModel.getFurthestAwaySubclass(superClass)).as(superClass.getQualifiedName())
+                    .isSameAs(expectedFurthestAway);
+        }
+    }
+
+    @Test
+    void analyzeFlowLogicClassesInParallel(@TempDir Path tempDir) throws IOException, AnalysisErrorException {
+        final AnalyzerWithModel parallelAnalyzer = new SourceClassAnalyzer(
+                fromClassSrcToPath(InitiatorBaseFlow.class),
+                fromClassSrcToPath(ExtendingSuperclassTestFlow.class),
+                fromClassSrcToPath(DoubleExtendingSuperclassTestFlow.class));
+        final AnalyzerWithModel sequentialAnalyzer = new SourceClassAnalyzer(
+                fromClassSrcToPath(InitiatorBaseFlow.class),
+                fromClassSrcToPath(ExtendingSuperclassTestFlow.class),
+                fromClassSrcToPath(DoubleExtendingSuperclassTestFlow.class));
+        final List<CtClass> startableClasses = parallelAnalyzer.getClassesToBeAnalyzed();
+        AnalyzerWithModel.setAnalysisThreads(4);
+        try {
+            parallelAnalyzer.analyzeFlowLogicClassesInParallel(startableClasses);
+        } finally {
+            AnalyzerWithModel.setAnalysisThreads(1);
+        }
+        for(CtClass klass : startableClasses) {
+            final AnalysisResult parallelResult = parallelAnalyzer.analyzeFlowLogicClass(klass);
+            assertThat(parallelAnalyzer.analyzeFlowLogicClass(klass)).isSameAs(parallelResult);
+
+            final AnalysisResult sequentialResult =
+                    sequentialAnalyzer.analyzeFlowLogicClass(sequentialAnalyzer.getClass(klass.getActualClass()));
+            assertThat(parallelResult.getStatements()).hasSameSizeAs(sequentialResult.getStatements());
+            assertThat(parallelResult.getCounterpartyClassResult().getClassDescription().getContainingClassNameOrItself())
+                    .isEqualTo(sequentialResult.getCounterpartyClassResult().getClassDescription()
+                            .getContainingClassNameOrItself());
+            assertThat(parallelResult.checkIfContainsValidProtocol())
+                    .isEqualTo(sequentialResult.checkIfContainsValidProtocol());
+            //the same links, the parallel analysis leaves them to be set up before drawing
+            parallelAnalyzer.setupLinks(parallelResult);
+            assertThat(DrawnGraphs.drawAndGetSortedSvgElements(parallelResult, tempDir.resolve("parallel")))
+                    .isEqualTo(DrawnGraphs.drawAndGetSortedSvgElements(sequentialResult,
+                            tempDir.resolve("sequential")));
+        }
+    }
+
+    @Test
+    void sharedResponderDrawnTheSameInParallel(@TempDir Path tempDir) throws IOException {
+        final Path sequentialDir = tempDir.resolve("sequential");
+        final Path parallelDir = tempDir.resolve("parallel");
+        DrawerUtil.drawAllStartableClasses(new SourceClassAnalyzer(fromClassSrcToPath(SharedResponderTestFlow.class)),
+                sequentialDir.toString());
+        AnalyzerWithModel.setAnalysisThreads(4);
+        try {
+            DrawerUtil.drawAllStartableClasses(
+                    new SourceClassAnalyzer(fromClassSrcToPath(SharedResponderTestFlow.class)), parallelDir.toString());
+        } finally {
+            AnalyzerWithModel.setAnalysisThreads(1);
+        }
+        for(Class klass : new Class[]{SharedResponderTestFlow.FirstInitiator.class,
+                SharedResponderTestFlow.SecondInitiator.class}) {
+            final String fileName = klass.getName() + ".svg";
+            assertThat(DrawnGraphs.getSortedSvgElements(parallelDir.resolve("images").resolve(fileName)))
+                    .as(klass.getSimpleName())
+                    .isEqualTo(DrawnGraphs.getSortedSvgElements(sequentialDir.resolve("images").resolve(fileName)));
+        }
+    }
+
+    @Test
+    void methodBodySummaryCache() throws IOException, AnalysisErrorException {
+        final AnalyzerWithModel analyzer = new SourceClassAnalyzer(
+                fromClassSrcToPath(MethodInvocationTestFlow.class));
+        final CtClass initiator = analyzer.getClass(MethodInvocationTestFlow.Initiator.class);
+        analyzer.analyzeFlowLogicClass(initiator);
+
+        final ClassCallStackHolder classCallStackHolder = ClassCallStackHolder.fromCtClass(initiator);
+        final CtMethod irrelevantMethod = (CtMethod) initiator.getElements(new NamedElementFilter<>(CtMethod.class,
+                "methodWithSessionAsArgumentReturningClassWithGetter")).get(0);
+        final CtMethod relevantMethod = (CtMethod) initiator.getElements(new NamedElementFilter<>(CtMethod.class,
+                "methodReturningASession")).get(0);
+        final MethodBodySummaryCache cache = analyzer.getMethodBodySummaryCache();
+        assertThat(cache.isKnownIrrelevant(irrelevantMethod, classCallStackHolder)).isTrue();
+        assertThat(cache.isKnownIrrelevant(relevantMethod, classCallStackHolder)).isFalse();
+        //the statement with the initiateFlow call is relevant
+        assertThat(cache.getRelevantStatementIndexes(relevantMethod, classCallStackHolder)).startsWith(0);
+
+        //each call site gets its own statements for the relevant bodies, also when taken from the summary
+        analyzer.setCurrentAnalyzingClass(initiator);
+        final Branch firstBody = cache.getRelevantBodyStatements(relevantMethod, analyzer);
+        final Branch secondBody = cache.getRelevantBodyStatements(relevantMethod, analyzer);
+        assertThat(firstBody.getStatements()).isNotEmpty().hasSameSizeAs(secondBody.getStatements());
+        assertThat(firstBody.getStatements().get(0)).isNotSameAs(secondBody.getStatements().get(0));
+        assertThat(secondBody.toString()).isEqualTo(firstBody.toString());
+        assertThat(cache.getRelevantBodyStatements(irrelevantMethod, analyzer).isEmpty()).isTrue();
+    }
+
     @Test
     void getClassTest() {
         final CtClass<DoubleExtendingSuperclassTestFlow.Initiator> doubleInitiator
@@ -108,4 +263,46 @@ class AnalyzerWithModelTest {
         assertThat(doubleInitiator).isNotEqualTo(doubleExtending);
         assertThat(notInModel).isNull();
     }
-}
\ No newline at end of file
+
+    @Test
+    void concurrentAnalyses(@TempDir Path tempDir) throws Exception {
+        final String[] paths = Arrays.stream(new Class[]{DoWhileTestFlow.class, WhileForEachTestFlow.class,
+                IfFailingTestFlow.class, SubFlowInitializationTestFlow.class, MethodInvocationTestFlow.class,
+                NestedIfsTestFlow.class}).map(TestUtils::fromClassSrcToPath).toArray(String[]::new);
+        //all the threads share the same analyzer, and so the same caches
+        final SourceClassAnalyzer sharedAnalyzer = new SourceClassAnalyzer(paths);
+        final List<CtClass> startableClasses = sharedAnalyzer.getClassesToBeAnalyzed();
+
+        final List<Future<AnalysisResult>> results = new ArrayList<>();
+        final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            for(int i = 0; i < THREADS * startableClasses.size(); ++i) {
+                final CtClass startableClass = startableClasses.get(i % startableClasses.size());
+                results.add(executor.submit(() -> sharedAnalyzer.analyzeFlowLogicClass(startableClass)));
+            }
+            for(int i = 0; i < results.size(); ++i) {
+                //each class is analyzed only once
+                assertThat(results.get(i).get()).isSameAs(results.get(i % startableClasses.size()).get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        final SourceClassAnalyzer sequentialAnalyzer = new SourceClassAnalyzer(paths);
+        final Map<String, AnalysisResult> expected = new HashMap<>();
+        for(CtClass startableClass : sequentialAnalyzer.getClassesToBeAnalyzed()) {
+            expected.put(startableClass.getQualifiedName(), sequentialAnalyzer.analyzeFlowLogicClass(startableClass));
+        }
+        assertThat(expected).hasSameSizeAs(startableClasses);
+        for(int i = 0; i < startableClasses.size(); ++i) {
+            final String name = startableClasses.get(i).getQualifiedName();
+            final AnalysisResult result = results.get(i).get();
+            final AnalysisResult expectedResult = expected.get(name);
+            assertThat(result.checkIfContainsValidProtocol()).as(name)
+                    .isEqualTo(expectedResult.checkIfContainsValidProtocol());
+            assertThat(DrawnGraphs.drawAndGetSortedSvgElements(result, tempDir.resolve("shared"))).as(name)
+                    .isEqualTo(DrawnGraphs.drawAndGetSortedSvgElements(expectedResult,
+                            tempDir.resolve("sequential")));
+        }
+    }
+}
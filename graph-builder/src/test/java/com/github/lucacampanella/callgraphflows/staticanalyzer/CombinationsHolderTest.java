@@ -1,12 +1,36 @@
 package com.github.lucacampanella.callgraphflows.staticanalyzer;
 
 import com.github.lucacampanella.TestUtils;
+import com.github.lucacampanella.callgraphflows.graphics.components2.GBaseComponent;
+import com.github.lucacampanella.callgraphflows.staticanalyzer.instructions.IfElse;
+import com.github.lucacampanella.callgraphflows.staticanalyzer.instructions.StatementInterface;
+import com.github.lucacampanella.callgraphflows.staticanalyzer.testclasses.CordaSubflowsNotMatchingTestFlow;
 import com.github.lucacampanella.callgraphflows.staticanalyzer.testclasses.DoWhileTestFlow;
 import com.github.lucacampanella.callgraphflows.staticanalyzer.testclasses.IfFailingTestFlow;
+import com.github.lucacampanella.callgraphflows.staticanalyzer.testclasses.NestedIfsTestFlow;
+import com.github.lucacampanella.callgraphflows.staticanalyzer.testclasses.NestedLoopsTestFlow;
+import com.github.lucacampanella.callgraphflows.staticanalyzer.testclasses.ReturnThrowBreakContinueTestFlow;
+import com.github.lucacampanella.callgraphflows.staticanalyzer.testclasses.SameSimpleNameTestFlow;
+import com.github.lucacampanella.callgraphflows.staticanalyzer.testclasses.SimpleTestFlow;
+import com.github.lucacampanella.callgraphflows.staticanalyzer.testclasses.TwoSessionsSharedSubFlowTestFlow;
+import com.github.lucacampanella.callgraphflows.staticanalyzer.testclasses.TwoSessionsTestFlow;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import spoon.reflect.declaration.CtClass;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 class CombinationsHolderTest {
 
@@ -28,4 +52,410 @@ class CombinationsHolderTest {
         assertThat(validProtocol).isEqualTo(false);
     }
 
-}
\ No newline at end of file
+    @Test
+    void combinationsBudgetExceeded() throws AnalysisErrorException {
+        MatchingBudget.setMaxCombinations(1);
+        try {
+            final SourceClassAnalyzer analyzer = new SourceClassAnalyzer(TestUtils.fromClassSrcToPath(DoWhileTestFlow.class));
+            final CtClass startableClass = analyzer.getClassesToBeAnalyzed().get(0);
+            final AnalysisResult analysisResult = analyzer.analyzeFlowLogicClass(startableClass);
+            final boolean validProtocol = analysisResult.checkIfContainsValidProtocolAndSetupLinks();
+            assertThat(validProtocol).isEqualTo(true);
+            assertThat(analysisResult.isProtocolFullyVerified()).isEqualTo(false);
+        } finally {
+            MatchingBudget.setMaxCombinations(MatchingBudget.DEFAULT_MAX_COMBINATIONS);
+        }
+    }
+
+    @Test
+    void matchesCombinationsInParallel(@TempDir Path tempDir) throws AnalysisErrorException, IOException {
+        final List<String> sequentialGraph = checkProtocolAndDraw(NestedLoopsTestFlow.class, tempDir.resolve("1"));
+        CombinationsHolder.setMatchingThreads(4);
+        try {
+            //the same links, created in the same order
+            assertThat(checkProtocolAndDraw(NestedLoopsTestFlow.class, tempDir.resolve("4")))
+                    .isEqualTo(sequentialGraph);
+        } finally {
+            CombinationsHolder.setMatchingThreads(1);
+        }
+    }
+
+    private static List<String> checkProtocolAndDraw(Class klass, Path directory)
+            throws AnalysisErrorException, IOException {
+        final SourceClassAnalyzer analyzer = new SourceClassAnalyzer(TestUtils.fromClassSrcToPath(klass));
+        final AnalysisResult analysisResult = analyzer.analyzeFlowLogicClass(analyzer.getClassesToBeAnalyzed().get(0));
+        //enough pairs of combinations to be split in several tasks
+        assertThat((long) CombinationsHolder.fromBranch(analysisResult.getStatements()).getAllCombinations().size()
+                * CombinationsHolder.fromBranch(analysisResult.getCounterpartyClassResult().getStatements())
+                .getAllCombinations().size()).isGreaterThan(4 * 1024L);
+        assertThat(analysisResult.checkIfContainsValidProtocolAndSetupLinks()).isEqualTo(true);
+        assertThat(analysisResult.isProtocolFullyVerified()).isEqualTo(true);
+        return DrawnGraphs.drawAndGetSortedSvgElements(analysisResult, directory);
+    }
+
+    @Test
+    void matchesProjectionsOnSessions() throws AnalysisErrorException {
+        CombinationsHolder.setSessionProjection(true);
+        try {
+            for(Class klass : new Class[]{DoWhileTestFlow.class, IfFailingTestFlow.class}) {
+                final SourceClassAnalyzer analyzer = new SourceClassAnalyzer(TestUtils.fromClassSrcToPath(klass));
+                final CtClass startableClass = analyzer.getClassesToBeAnalyzed().get(0);
+                final AnalysisResult analysisResult = analyzer.analyzeFlowLogicClass(startableClass);
+                //a single session, same result as without projection
+                assertThat(analysisResult.checkIfContainsValidProtocolAndSetupLinks()).as(klass.getSimpleName())
+                        .isEqualTo(klass == DoWhileTestFlow.class);
+            }
+        } finally {
+            CombinationsHolder.setSessionProjection(false);
+        }
+    }
+
+    @Test
+    void matchesProjectionsOnTwoSessions() throws AnalysisErrorException {
+        //the events of the two sessions are interleaved, each session alone matches the acceptor
+        assertThat(checkProtocol(TwoSessionsTestFlow.class)).isEqualTo(false);
+        CombinationsHolder.setSessionProjection(true);
+        try {
+            assertThat(checkProtocol(TwoSessionsTestFlow.class)).isEqualTo(true);
+        } finally {
+            CombinationsHolder.setSessionProjection(false);
+        }
+    }
+
+    @Test
+    void matchesProjectionsWithSharedSubFlow() throws AnalysisErrorException {
+        //the subflow doesn't target a single session, it belongs to the events of both
+        assertThat(checkProtocol(TwoSessionsSharedSubFlowTestFlow.class)).isEqualTo(false);
+        CombinationsHolder.setSessionProjection(true);
+        try {
+            assertThat(checkProtocol(TwoSessionsSharedSubFlowTestFlow.class)).isEqualTo(true);
+        } finally {
+            CombinationsHolder.setSessionProjection(false);
+        }
+    }
+
+    @Test
+    void projectionSkippedWhenBudgetExceeded(@TempDir Path tempDir) throws AnalysisErrorException, IOException {
+        MatchingBudget.setMaxCombinations(1);
+        try {
+            final SourceClassAnalyzer analyzer =
+                    new SourceClassAnalyzer(TestUtils.fromClassSrcToPath(DoWhileTestFlow.class));
+            final AnalysisResult withoutProjection =
+                    analyzer.analyzeFlowLogicClass(analyzer.getClass(DoWhileTestFlow.Initiator.class));
+            assertThat(withoutProjection.checkIfContainsValidProtocolAndSetupLinks()).isEqualTo(true);
+            assertThat(withoutProjection.isProtocolFullyVerified()).isEqualTo(false);
+            assertThat(withoutProjection.isSessionProjectionSkipped()).isEqualTo(false);
+
+            CombinationsHolder.setSessionProjection(true);
+            final SourceClassAnalyzer projectionAnalyzer =
+                    new SourceClassAnalyzer(TestUtils.fromClassSrcToPath(DoWhileTestFlow.class));
+            final AnalysisResult analysisResult = projectionAnalyzer.analyzeFlowLogicClass(
+                    projectionAnalyzer.getClass(DoWhileTestFlow.Initiator.class));
+            //the paths are too many, the automata are checked without projection
+            assertThat(analysisResult.checkIfContainsValidProtocolAndSetupLinks()).isEqualTo(true);
+            assertThat(analysisResult.isSessionProjectionSkipped()).isEqualTo(true);
+            DrawnGraphs.drawAndGetSortedSvgElements(analysisResult, tempDir);
+            final String asciiDoc = new String(Files.readAllBytes(
+                    tempDir.resolve(DoWhileTestFlow.Initiator.class.getName() + ".adoc")), StandardCharsets.UTF_8);
+            assertThat(asciiDoc).contains("session projection not applied");
+        } finally {
+            CombinationsHolder.setSessionProjection(false);
+            MatchingBudget.setMaxCombinations(MatchingBudget.DEFAULT_MAX_COMBINATIONS);
+        }
+    }
+
+    private static boolean checkProtocol(Class klass) throws AnalysisErrorException {
+        final SourceClassAnalyzer analyzer = new SourceClassAnalyzer(TestUtils.fromClassSrcToPath(klass));
+        final AnalysisResult analysisResult = analyzer.analyzeFlowLogicClass(analyzer.getClassesToBeAnalyzed().get(0));
+        return analysisResult.checkIfContainsValidProtocolAndSetupLinks();
+    }
+
+    @Test
+    void lazyValidityCheck() throws AnalysisErrorException {
+        for(Class klass : new Class[]{DoWhileTestFlow.class, IfFailingTestFlow.class,
+                ReturnThrowBreakContinueTestFlow.class}) {
+            final SourceClassAnalyzer analyzer = new SourceClassAnalyzer(TestUtils.fromClassSrcToPath(klass));
+            final CtClass startableClass = analyzer.getClassesToBeAnalyzed().get(0);
+            final AnalysisResult analysisResult = analyzer.analyzeFlowLogicClass(startableClass);
+            final boolean lazyResult = CombinationsHolder.anyCombinationsMatch(analysisResult.getStatements(),
+                    analysisResult.getCounterpartyClassResult().getStatements());
+            assertThat(lazyResult).as(klass.getSimpleName())
+                    .isEqualTo(analysisResult.checkIfContainsValidProtocolAndSetupLinks());
+        }
+    }
+
+    @Test
+    void lazyCombinationsSameAsFromBranch() throws AnalysisErrorException {
+        for(Class klass : new Class[]{DoWhileTestFlow.class, IfFailingTestFlow.class,
+                ReturnThrowBreakContinueTestFlow.class, NestedLoopsTestFlow.class, NestedIfsTestFlow.class}) {
+            final SourceClassAnalyzer analyzer = new SourceClassAnalyzer(TestUtils.fromClassSrcToPath(klass));
+            final CtClass startableClass = analyzer.getClassesToBeAnalyzed().get(0);
+            final AnalysisResult analysisResult = analyzer.analyzeFlowLogicClass(startableClass);
+            for(Branch branch : new Branch[]{analysisResult.getStatements(),
+                    analysisResult.getCounterpartyClassResult().getStatements()}) {
+                final List<List<Object>> eagerPaths =
+                        describePaths(CombinationsHolder.fromBranch(branch).getAllCombinations().iterator());
+                assertThat(describePaths(CombinationsHolder.lazyCombinations(branch))).as(klass.getSimpleName())
+                        .isEqualTo(eagerPaths);
+            }
+        }
+    }
+
+    //the statements are compared by identity
+    private static List<List<Object>> describePaths(Iterator<CombinationsHolder.LockingBranch> paths) {
+        final List<List<Object>> res = new ArrayList<>();
+        while(paths.hasNext()) {
+            final CombinationsHolder.LockingBranch path = paths.next();
+            final List<Object> description = new ArrayList<>();
+            path.getStatements().forEach(statement -> description.add(System.identityHashCode(statement)));
+            description.add(path.isLocked());
+            res.add(description);
+        }
+        return res;
+    }
+
+    @Test
+    void lazyValidityCheckWithoutKeepingTheInitiatedPaths() throws AnalysisErrorException {
+        for(Class klass : new Class[]{DoWhileTestFlow.class, IfFailingTestFlow.class, NestedLoopsTestFlow.class}) {
+            final SourceClassAnalyzer analyzer = new SourceClassAnalyzer(TestUtils.fromClassSrcToPath(klass));
+            final CtClass startableClass = analyzer.getClassesToBeAnalyzed().get(0);
+            final AnalysisResult analysisResult = analyzer.analyzeFlowLogicClass(startableClass);
+            final boolean keptResult = CombinationsHolder.anyCombinationsMatch(analysisResult.getStatements(),
+                    analysisResult.getCounterpartyClassResult().getStatements());
+            //the combinations of the single statements are already cached, only the paths of the branches are
+            //limited
+            MatchingBudget.setMaxCombinations(1);
+            try {
+                assertThat(CombinationsHolder.anyCombinationsMatch(analysisResult.getStatements(),
+                        analysisResult.getCounterpartyClassResult().getStatements()))
+                        .as(klass.getSimpleName()).isEqualTo(keptResult);
+            } finally {
+                MatchingBudget.setMaxCombinations(MatchingBudget.DEFAULT_MAX_COMBINATIONS);
+            }
+        }
+    }
+
+    @Test
+    void lockingBranchesShareTheirPrefix() {
+        final StatementInterface first = newStatement();
+        final StatementInterface second = newStatement();
+        final StatementInterface leftTail = newStatement();
+        final StatementInterface rightTail = newStatement();
+        final CombinationsHolder.LockingBranch prefix = new CombinationsHolder.LockingBranch(first);
+        prefix.add(second);
+
+        final CombinationsHolder.LockingBranch left = new CombinationsHolder.LockingBranch(prefix);
+        left.add(leftTail);
+        final CombinationsHolder.LockingBranch right = new CombinationsHolder.LockingBranch(prefix);
+        right.add(rightTail);
+
+        assertThat(prefix.getStatements()).containsExactly(first, second);
+        assertThat(left.getStatements()).containsExactly(first, second, leftTail);
+        assertThat(right.getStatements()).containsExactly(first, second, rightTail);
+        assertThat(left).containsExactly(first, second, leftTail);
+        assertThat(right).containsExactly(first, second, rightTail);
+        assertThat(left.containsSameStatementsAndLockStatusAs(right)).isFalse();
+
+        //appending a branch keeps the order of both
+        final CombinationsHolder.LockingBranch both = new CombinationsHolder.LockingBranch(left);
+        both.add(right);
+        assertThat(both).containsExactly(first, second, leftTail, first, second, rightTail);
+        assertThat(left).containsExactly(first, second, leftTail);
+        assertThat(left.getStatements()).isSameAs(left.getStatements());
+    }
+
+    @Test
+    void duplicatesRemovedOnce() {
+        final StatementInterface first = newStatement();
+        final StatementInterface second = newStatement();
+        final StatementInterface other = newStatement();
+        final CombinationsHolder holder = CombinationsHolder.fromSingleStatement(first);
+        holder.appendToAllCombinations(second);
+        //the same statements on another path, which only differs by the break
+        final CombinationsHolder breakingHolder = CombinationsHolder.fromSingleStatement(first);
+        breakingHolder.appendToAllCombinations(second);
+        breakingHolder.setAllBreakLoopLocks();
+        final CombinationsHolder otherHolder = CombinationsHolder.fromSingleStatement(first);
+        otherHolder.appendToAllCombinations(other);
+        holder.mergeWith(breakingHolder);
+        holder.mergeWith(otherHolder);
+        holder.mergeWith(breakingHolder);
+
+        holder.filterOutDuplicates();
+        assertThat(holder.getAllCombinations()).hasSize(3);
+        //once the break is removed the two paths are the same
+        holder.removeAllLoopLocks();
+        assertThat(holder.getAllCombinations()).hasSize(2);
+        assertThat(holder.getAllCombinations().get(0)).containsExactly(first, second);
+        assertThat(holder.getAllCombinations().get(1)).containsExactly(first, other);
+    }
+
+    @Test
+    void sameFingerprintDifferentStatementsKept() {
+        final CombinationsHolder.LockingBranch[] collision = findFingerprintCollision();
+        assertThat(collision[0].getFingerprint()).isEqualTo(collision[1].getFingerprint());
+        assertThat(collision[0].getStatements()).isNotEqualTo(collision[1].getStatements());
+
+        final CombinationsHolder holder = new CombinationsHolder(false);
+        for(CombinationsHolder.LockingBranch branch : collision) {
+            final List<StatementInterface> statements = branch.getStatements();
+            final CombinationsHolder branchHolder = CombinationsHolder.fromSingleStatement(statements.get(0));
+            branchHolder.appendToAllCombinations(statements.get(1));
+            holder.mergeWith(branchHolder);
+        }
+        holder.filterOutDuplicates();
+        assertThat(holder.getAllCombinations()).hasSize(2);
+    }
+
+    //the paths of two statements out of a few hundreds have about 360000 fingerprints, a collision is found with
+    //a probability very close to one
+    private static CombinationsHolder.LockingBranch[] findFingerprintCollision() {
+        final int numberOfStatements = 600;
+        final StatementInterface[] statements = new StatementInterface[numberOfStatements];
+        for(int i = 0; i < numberOfStatements; ++i) {
+            statements[i] = newStatement();
+        }
+        final long[] fingerprintsAndPaths = new long[numberOfStatements * numberOfStatements];
+        for(int i = 0; i < numberOfStatements; ++i) {
+            for(int j = 0; j < numberOfStatements; ++j) {
+                final int path = i * numberOfStatements + j;
+                fingerprintsAndPaths[path] = ((long) newPath(statements[i], statements[j]).getFingerprint() << 32)
+                        | path;
+            }
+        }
+        Arrays.sort(fingerprintsAndPaths);
+        for(int k = 1; k < fingerprintsAndPaths.length; ++k) {
+            if((fingerprintsAndPaths[k] >> 32) == (fingerprintsAndPaths[k - 1] >> 32)) {
+                final int path = (int) fingerprintsAndPaths[k];
+                final int previousPath = (int) fingerprintsAndPaths[k - 1];
+                return new CombinationsHolder.LockingBranch[]{
+                        newPath(statements[path / numberOfStatements], statements[path % numberOfStatements]),
+                        newPath(statements[previousPath / numberOfStatements],
+                                statements[previousPath % numberOfStatements])};
+            }
+        }
+        throw new IllegalStateException("No fingerprint collision found");
+    }
+
+    private static CombinationsHolder.LockingBranch newPath(StatementInterface first, StatementInterface second) {
+        final CombinationsHolder.LockingBranch res = new CombinationsHolder.LockingBranch(first);
+        res.add(second);
+        return res;
+    }
+
+    @Test
+    void compiledEventsMatchAsCompanionEvents() throws AnalysisErrorException {
+        for(Class klass : new Class[]{SimpleTestFlow.Initiator.class, DoWhileTestFlow.Initiator.class,
+                IfFailingTestFlow.Initiator.class, SameSimpleNameTestFlow.Initiator.class,
+                CordaSubflowsNotMatchingTestFlow.Initiator.class, TwoSessionsSharedSubFlowTestFlow.Initiator.class}) {
+            final AnalysisResult analysisResult = analyze(klass);
+            final List<CompanionEvent> events = new ArrayList<>(eventsOf(analysisResult.getStatements()));
+            events.addAll(eventsOf(analysisResult.getCounterpartyClassResult().getStatements()));
+            for(CompanionEvent event : events) {
+                for(CompanionEvent otherEvent : events) {
+                    assertThat(compile(event).matches(compile(otherEvent))).as(event + " and " + otherEvent)
+                            .isEqualTo(event.matches(otherEvent));
+                }
+            }
+        }
+    }
+
+    @Test
+    void sameSimpleNameDifferentTypesDontMatch() throws AnalysisErrorException {
+        final AnalysisResult analysisResult = analyze(SameSimpleNameTestFlow.Initiator.class);
+        final CompanionEvent sent = eventsOf(analysisResult.getStatements()).iterator().next();
+        final CompanionEvent received =
+                eventsOf(analysisResult.getCounterpartyClassResult().getStatements()).iterator().next();
+        assertThat(sent.getMessageType()).isNotEqualTo(received.getMessageType()).endsWith("Data");
+        assertThat(received.getMessageType()).endsWith("Data");
+        assertThat(sent.getMessageTypeId()).isNotEqualTo(received.getMessageTypeId());
+        assertThat(compile(sent).matches(compile(received))).isFalse();
+        assertThat(analysisResult.checkIfContainsValidProtocol()).isFalse();
+    }
+
+    @Test
+    void sendAndReceiveSplitInTwoEvents() throws AnalysisErrorException {
+        final AnalysisResult analysisResult = analyze(SimpleTestFlow.Initiator.class);
+        final List<CombinationsHolder.LockingBranch> combinations =
+                CombinationsHolder.fromBranch(analysisResult.getStatements()).getAllCombinations();
+        final List<CombinationsHolder.LockingBranch> counterpartyCombinations = CombinationsHolder
+                .fromBranch(analysisResult.getCounterpartyClassResult().getStatements()).getAllCombinations();
+        assertThat(combinations).hasSize(1);
+        assertThat(counterpartyCombinations).hasSize(1);
+
+        final List<CompanionEvent> events = CombinationsHolder.eventsOf(combinations.get(0));
+        assertThat(events).hasSize(2);
+        assertThat(events.get(0).getStatement()).isSameAs(events.get(1).getStatement());
+        assertThat(events.get(0).getDirection()).isEqualTo(CompanionEvent.Direction.SEND);
+        assertThat(events.get(0).getMessageType()).isEqualTo(Boolean.class.getName());
+        assertThat(events.get(1).getDirection()).isEqualTo(CompanionEvent.Direction.RECEIVE);
+        assertThat(events.get(1).getMessageType()).isEqualTo(String.class.getName());
+
+        final List<CompanionEvent> counterpartyEvents = CombinationsHolder.eventsOf(counterpartyCombinations.get(0));
+        assertThat(counterpartyEvents).hasSize(2);
+        assertThat(new CombinationsHolder.CompiledCombination(events.toArray(new CompanionEvent[0]))
+                .matches(new CombinationsHolder.CompiledCombination(counterpartyEvents.toArray(new CompanionEvent[0]))))
+                .isTrue();
+    }
+
+    private static AnalysisResult analyze(Class klass) throws AnalysisErrorException {
+        final SourceClassAnalyzer analyzer = new SourceClassAnalyzer(TestUtils.fromClassSrcToPath(klass));
+        return analyzer.analyzeFlowLogicClass(analyzer.getClass(klass));
+    }
+
+    //the events of all the paths of the branch, each one once
+    private static Set<CompanionEvent> eventsOf(Branch branch) {
+        final Set<CompanionEvent> res = new LinkedHashSet<>();
+        for(CombinationsHolder.LockingBranch combination : CombinationsHolder.fromBranch(branch).getAllCombinations()) {
+            res.addAll(CombinationsHolder.eventsOf(combination));
+        }
+        return res;
+    }
+
+    private static CombinationsHolder.CompiledCombination compile(CompanionEvent event) {
+        return new CombinationsHolder.CompiledCombination(new CompanionEvent[]{event});
+    }
+
+    private static StatementInterface newStatement() {
+        return new StatementInterface() {
+            @Override
+            public GBaseComponent getGraphElem() {
+                return null;
+            }
+
+            @Override
+            public Branch getInternalMethodInvocations() {
+                return new Branch();
+            }
+        };
+    }
+
+    @Test
+    void cachedCombinationsReusedAndImmutable() throws AnalysisErrorException {
+        final SourceClassAnalyzer analyzer = new SourceClassAnalyzer(TestUtils.fromClassSrcToPath(IfFailingTestFlow.class));
+        final AnalysisResult analysisResult =
+                analyzer.analyzeFlowLogicClass(analyzer.getClass(IfFailingTestFlow.Initiator.class));
+        final StatementInterface ifElse = analysisResult.getCounterpartyClassResult().getStatements().getStatements()
+                .stream().filter(IfElse.class::isInstance).findFirst().orElseThrow(IllegalStateException::new);
+
+        final CombinationsHolder combinations = ifElse.getResultingCombinations();
+        assertThat(ifElse.getResultingCombinations()).isSameAs(combinations);
+        assertThat(combinations.isImmutable()).isEqualTo(true);
+        final int numberOfCombinations = combinations.getAllCombinations().size();
+        assertThat(numberOfCombinations).isEqualTo(2);
+
+        assertThatThrownBy(() -> combinations.getAllCombinations().clear())
+                .isInstanceOf(UnsupportedOperationException.class);
+        assertThatThrownBy(() -> combinations.appendToAllCombinations(ifElse))
+                .isInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(combinations::removeAllLocks).isInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(() -> combinations.mergeWith(CombinationsHolder.fromSingleStatement(ifElse)))
+                .isInstanceOf(IllegalStateException.class);
+
+        //a copy can be modified without changing the cached combinations
+        final CombinationsHolder copy = CombinationsHolder.fromOtherCombination(combinations);
+        copy.mergeWith(CombinationsHolder.fromSingleStatement(ifElse));
+        assertThat(copy.getAllCombinations()).hasSize(numberOfCombinations + 1);
+        assertThat(ifElse.getResultingCombinations().getAllCombinations()).hasSize(numberOfCombinations);
+    }
+}
@@ -0,0 +1,77 @@
+package com.github.lucacampanella.callgraphflows.staticanalyzer;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import spoon.SpoonException;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class DecompilationCacheTest {
+
+    @Test
+    void jarDecompiledOnlyOnce(@TempDir Path tempDir) throws IOException {
+        final String jarPath = getClass().getClassLoader().getResource("KotlinTestJar.jar").getPath();
+        DecompilationCache.setDirectory(tempDir.toString());
+        try {
+            final File decompiled = DecompilationCache.getDecompiledSources(jarPath, DecompilerEnum.CFR);
+            assertThat(decompiled.getParentFile()).isEqualTo(tempDir.toFile());
+            assertThat(FileUtils.listFiles(decompiled, new String[]{"java"}, true)).isNotEmpty();
+            final long lastModified = decompiled.lastModified();
+
+            final File decompiledAgain = DecompilationCache.getDecompiledSources(jarPath, DecompilerEnum.CFR);
+            assertThat(decompiledAgain).isEqualTo(decompiled);
+            assertThat(decompiledAgain.lastModified()).isEqualTo(lastModified);
+            //no temporary folder is left behind
+            assertThat(tempDir.toFile().list()).containsExactly(decompiled.getName());
+        } finally {
+            DecompilationCache.setDirectory(null);
+        }
+    }
+
+    @Test
+    void keyDependsOnTheDecompiler() throws IOException {
+        final File jar = new File(getClass().getClassLoader().getResource("KotlinTestJar.jar").getPath());
+        assertThat(DecompilationCache.getKey(jar, DecompilerEnum.CFR))
+                .isEqualTo(DecompilationCache.getKey(jar, DecompilerEnum.CFR))
+                .isNotEqualTo(DecompilationCache.getKey(jar, DecompilerEnum.FERNFLOWER));
+    }
+
+    @Test
+    void failedDecompilationNotCached(@TempDir Path tempDir) throws IOException {
+        final Path cacheDir = tempDir.resolve("cache");
+        //a jar with no classes, from which the decompiler produces no sources
+        final Path emptyJar = tempDir.resolve("Empty.jar");
+        try(ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(emptyJar))) {
+            out.putNextEntry(new ZipEntry("META-INF/MANIFEST.MF"));
+            out.write("Manifest-Version: 1.0\n".getBytes(StandardCharsets.UTF_8));
+            out.closeEntry();
+        }
+        //a file that is not a jar at all
+        final Path corruptedJar = tempDir.resolve("Corrupted.jar");
+        try(OutputStream out = Files.newOutputStream(corruptedJar)) {
+            out.write("not a jar".getBytes(StandardCharsets.UTF_8));
+        }
+        DecompilationCache.setDirectory(cacheDir.toString());
+        try {
+            for(Path jar : new Path[]{emptyJar, corruptedJar}) {
+                assertThatThrownBy(() -> DecompilationCache.getDecompiledSources(jar.toString(), DecompilerEnum.CFR))
+                        .isInstanceOf(SpoonException.class);
+                //neither an entry nor a temporary folder is left behind
+                assertThat(cacheDir.toFile().list()).isEmpty();
+            }
+        } finally {
+            DecompilationCache.setDirectory(null);
+        }
+    }
+}
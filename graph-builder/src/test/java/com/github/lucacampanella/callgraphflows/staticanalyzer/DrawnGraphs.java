@@ -0,0 +1,41 @@
+package com.github.lucacampanella.callgraphflows.staticanalyzer;
+
+import com.github.lucacampanella.callgraphflows.DrawerUtil;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public final class DrawnGraphs {
+
+    private DrawnGraphs() {
+        //private constructor to hide public one
+    }
+
+    /**
+     * Draws the analysis, with its links, in the directory
+     * @return the elements of the svg, sorted: the links of a statement are drawn in the order of a hash set, which
+     * is not the same for two analyses of the same classes
+     */
+    public static List<String> drawAndGetSortedSvgElements(AnalysisResult analysisResult, Path directory)
+            throws IOException {
+        DrawerUtil.drawFromAnalysis(analysisResult, directory.toString());
+        return getSortedSvgElements(directory.resolve("images")
+                .resolve(analysisResult.getClassDescription().getFullyQualifiedName() + ".svg"));
+    }
+
+    /**
+     * @return the elements of the svg file, sorted as in {@link #drawAndGetSortedSvgElements(AnalysisResult, Path)}
+     */
+    public static List<String> getSortedSvgElements(Path svgFile) throws IOException {
+        final String svg = new String(Files.readAllBytes(svgFile), StandardCharsets.UTF_8);
+        List<String> res = new ArrayList<>(Arrays.asList(svg.split(">")));
+        Collections.sort(res);
+        return res;
+    }
+}
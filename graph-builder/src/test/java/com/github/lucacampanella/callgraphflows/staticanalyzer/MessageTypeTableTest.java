@@ -0,0 +1,20 @@
+package com.github.lucacampanella.callgraphflows.staticanalyzer;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MessageTypeTableTest {
+
+    @Test
+    void sameTypeSameId() {
+        final MessageTypeTable table = new MessageTypeTable();
+        final int stringId = table.intern("java.lang.String");
+        final int booleanId = table.intern("java.lang.Boolean");
+        assertThat(table.intern(new String("java.lang.String"))).isEqualTo(stringId);
+        assertThat(booleanId).isNotEqualTo(stringId);
+        assertThat(table.size()).isEqualTo(2);
+        assertThat(table.getName(stringId)).isSameAs(table.getName(table.intern("java.lang.String")));
+        assertThat(table.getName(MessageTypeTable.NO_TYPE)).isNull();
+    }
+}
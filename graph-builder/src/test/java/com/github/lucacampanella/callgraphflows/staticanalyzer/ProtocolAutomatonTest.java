@@ -0,0 +1,159 @@
+package com.github.lucacampanella.callgraphflows.staticanalyzer;
+
+import com.github.lucacampanella.TestUtils;
+import com.github.lucacampanella.callgraphflows.staticanalyzer.instructions.LoopBranchingStatement;
+import com.github.lucacampanella.callgraphflows.staticanalyzer.testclasses.ContainerFlow;
+import com.github.lucacampanella.callgraphflows.staticanalyzer.testclasses.ContinueBreakTestFlow;
+import com.github.lucacampanella.callgraphflows.staticanalyzer.testclasses.DoWhileTestFlow;
+import com.github.lucacampanella.callgraphflows.staticanalyzer.testclasses.IfFailingTestFlow;
+import com.github.lucacampanella.callgraphflows.staticanalyzer.testclasses.NestedIfsTestFlow;
+import com.github.lucacampanella.callgraphflows.staticanalyzer.testclasses.NestedLoopsTestFlow;
+import com.github.lucacampanella.callgraphflows.staticanalyzer.testclasses.ThreeIterationsTestFlow;
+import com.github.lucacampanella.callgraphflows.staticanalyzer.testclasses.WhileForEachTestFlow;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import spoon.reflect.declaration.CtClass;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ProtocolAutomatonTest {
+
+    @AfterEach
+    void resetMatchingEngine() {
+        AnalysisResult.setMatchingEngine(MatchingEngineEnum.getDefault());
+        LoopBranchingStatement.setLoopAnalysis(LoopAnalysisEnum.getDefault());
+    }
+
+    @Test
+    void matchesAutomataTrue() throws AnalysisErrorException {
+        assertThat(checkProtocol(DoWhileTestFlow.class, MatchingEngineEnum.AUTOMATON)).isEqualTo(true);
+    }
+
+    @Test
+    void matchesAutomataFalse() throws AnalysisErrorException {
+        assertThat(checkProtocol(IfFailingTestFlow.class, MatchingEngineEnum.AUTOMATON)).isEqualTo(false);
+    }
+
+    @Test
+    void sameResultAsEnumerator() throws AnalysisErrorException {
+        for(Class klass : new Class[]{DoWhileTestFlow.class, IfFailingTestFlow.class,
+                ContinueBreakTestFlow.class, NestedIfsTestFlow.class, NestedLoopsTestFlow.class,
+                ThreeIterationsTestFlow.class}) {
+            assertThat(checkProtocol(klass, MatchingEngineEnum.AUTOMATON))
+                    .as(klass.getSimpleName())
+                    .isEqualTo(checkProtocol(klass, MatchingEngineEnum.ENUMERATOR));
+        }
+    }
+
+    @Test
+    void fixpointLoopAnalysis() throws AnalysisErrorException {
+        LoopBranchingStatement.setLoopAnalysis(LoopAnalysisEnum.FIXPOINT);
+        assertThat(checkProtocol(DoWhileTestFlow.class, MatchingEngineEnum.ENUMERATOR)).isEqualTo(true);
+        assertThat(checkProtocol(WhileForEachTestFlow.class, MatchingEngineEnum.ENUMERATOR)).isEqualTo(true);
+        assertThat(checkProtocol(IfFailingTestFlow.class, MatchingEngineEnum.ENUMERATOR)).isEqualTo(false);
+    }
+
+    @Test
+    void loopBodiesCompiledOnce() throws AnalysisErrorException {
+        final int boundedStates = getNumberOfStates(NestedLoopsTestFlow.class);
+        LoopBranchingStatement.setLoopAnalysis(LoopAnalysisEnum.FIXPOINT);
+        //the repetitions are counted instead of copying the bodies, the automaton is the same as with the fixpoint
+        assertThat(boundedStates).isEqualTo(getNumberOfStates(NestedLoopsTestFlow.class));
+    }
+
+    @Test
+    void boundedLoopsCountTheRepetitions() throws AnalysisErrorException {
+        assertThat(checkProtocol(ThreeIterationsTestFlow.class, MatchingEngineEnum.AUTOMATON)).isEqualTo(false);
+        assertThat(checkProtocol(NestedLoopsTestFlow.class, MatchingEngineEnum.AUTOMATON)).isEqualTo(true);
+        LoopBranchingStatement.setLoopAnalysis(LoopAnalysisEnum.FIXPOINT);
+        assertThat(checkProtocol(ThreeIterationsTestFlow.class, MatchingEngineEnum.AUTOMATON)).isEqualTo(true);
+    }
+
+    @Test
+    void comparisonsBudgetExceeded() throws AnalysisErrorException {
+        MatchingBudget.setMaxComparisons(0);
+        try {
+            //the part of the product that is not explored could contain a match, neither flow is reported invalid
+            for(Class klass : new Class[]{DoWhileTestFlow.class, IfFailingTestFlow.class}) {
+                AnalysisResult.setMatchingEngine(MatchingEngineEnum.AUTOMATON);
+                final SourceClassAnalyzer analyzer = new SourceClassAnalyzer(TestUtils.fromClassSrcToPath(klass));
+                final AnalysisResult analysisResult =
+                        analyzer.analyzeFlowLogicClass(analyzer.getClassesToBeAnalyzed().get(0));
+                assertThat(analysisResult.checkIfContainsValidProtocolAndSetupLinks()).as(klass.getSimpleName())
+                        .isEqualTo(true);
+                assertThat(analysisResult.isProtocolFullyVerified()).as(klass.getSimpleName()).isEqualTo(false);
+            }
+        } finally {
+            MatchingBudget.setMaxComparisons(MatchingBudget.DEFAULT_MAX_COMPARISONS);
+        }
+    }
+
+    @Test
+    void notFullyVerifiedSubFlow() throws AnalysisErrorException {
+        MatchingBudget.setMaxComparisons(0);
+        try {
+            AnalysisResult.setMatchingEngine(MatchingEngineEnum.AUTOMATON);
+            final SourceClassAnalyzer analyzer = new SourceClassAnalyzer(
+                    TestUtils.fromClassSrcToPath(ContainerFlow.class),
+                    TestUtils.fromClassSrcToPath(DoWhileTestFlow.class));
+            final AnalysisResult analysisResult = analyzer.analyzeFlowLogicClass(ContainerFlow.class);
+            assertThat(analysisResult.hasCounterpartyResult()).isEqualTo(false);
+            assertThat(analysisResult.checkIfContainsValidProtocolAndSetupLinks()).isEqualTo(true);
+            assertThat(analysisResult.isProtocolFullyVerified()).isEqualTo(false);
+        } finally {
+            MatchingBudget.setMaxComparisons(MatchingBudget.DEFAULT_MAX_COMPARISONS);
+        }
+    }
+
+    @Test
+    void validityCheckCreatesNoLinks(@TempDir Path tempDir) throws AnalysisErrorException, IOException {
+        AnalyzerWithModel.setDrawArrows(false);
+        try {
+            for(MatchingEngineEnum engine : MatchingEngineEnum.values()) {
+                AnalysisResult.setMatchingEngine(engine);
+                final Path engineDir = tempDir.resolve(engine.name());
+                final AnalysisResult notChecked = analyzeContainerFlow();
+                final AnalysisResult checked = analyzeContainerFlow();
+                assertThat(checked.checkIfContainsValidProtocol()).as(engine.name()).isEqualTo(true);
+                final AnalysisResult linked = analyzeContainerFlow();
+                assertThat(linked.checkIfContainsValidProtocolAndSetupLinks()).as(engine.name()).isEqualTo(true);
+
+                final List<String> notCheckedGraph =
+                        DrawnGraphs.drawAndGetSortedSvgElements(notChecked, engineDir.resolve("notChecked"));
+                assertThat(DrawnGraphs.drawAndGetSortedSvgElements(checked, engineDir.resolve("checked")))
+                        .as(engine.name()).isEqualTo(notCheckedGraph);
+                assertThat(DrawnGraphs.drawAndGetSortedSvgElements(linked, engineDir.resolve("linked")))
+                        .as(engine.name()).isNotEqualTo(notCheckedGraph);
+            }
+        } finally {
+            AnalyzerWithModel.setDrawArrows(true);
+        }
+    }
+
+    //the links are in the initiating subflow
+    private static AnalysisResult analyzeContainerFlow() throws AnalysisErrorException {
+        final SourceClassAnalyzer analyzer = new SourceClassAnalyzer(TestUtils.fromClassSrcToPath(ContainerFlow.class),
+                TestUtils.fromClassSrcToPath(DoWhileTestFlow.class));
+        return analyzer.analyzeFlowLogicClass(ContainerFlow.class);
+    }
+
+    private static int getNumberOfStates(Class klass) throws AnalysisErrorException {
+        final SourceClassAnalyzer analyzer = new SourceClassAnalyzer(TestUtils.fromClassSrcToPath(klass));
+        final CtClass startableClass = analyzer.getClassesToBeAnalyzed().get(0);
+        return ProtocolAutomaton.fromStatements(analyzer.analyzeFlowLogicClass(startableClass).getStatements())
+                .getNumberOfStates();
+    }
+
+    private static boolean checkProtocol(Class klass, MatchingEngineEnum engine) throws AnalysisErrorException {
+        AnalysisResult.setMatchingEngine(engine);
+        final SourceClassAnalyzer analyzer = new SourceClassAnalyzer(TestUtils.fromClassSrcToPath(klass));
+        final CtClass startableClass = analyzer.getClassesToBeAnalyzed().get(0);
+        final AnalysisResult analysisResult = analyzer.analyzeFlowLogicClass(startableClass);
+        return analysisResult.checkIfContainsValidProtocolAndSetupLinks();
+    }
+}
@@ -1,5 +1,6 @@
 package com.github.lucacampanella.callgraphflows.staticanalyzer;
 
+import org.apache.commons.io.FileUtils;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 import org.slf4j.Logger;
@@ -10,6 +11,7 @@ import java.io.IOException;
 import java.net.URL;
 import java.nio.file.Paths;
 import java.util.Arrays;
+import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -42,4 +44,21 @@ class SourceAndJarAnalyzerTest extends AnalyzerWithModelTest {
         assertThat(qualifiedName).isEqualTo(
                 "com.github.lucacampanella.callgraphflows.staticanalyzer.testclasses.subclassestests.InitiatorBaseFlow");
     }
-}
\ No newline at end of file
+
+    @Test
+    void decompileJarsInParallel() throws IOException {
+        final String testJarPath = getClass().getClassLoader().getResource(TEST_JAR_NAME).getPath();
+        final String kotlinJarPath = getClass().getClassLoader().getResource("KotlinTestJar.jar").getPath();
+        SourceAndJarAnalyzer.setDecompilerThreads(2);
+        try {
+            final List<File> folders = SourceAndJarAnalyzer.decompileJars(
+                    Arrays.asList(testJarPath, kotlinJarPath), DecompilerEnum.CFR);
+            assertThat(folders).hasSize(2).doesNotHaveDuplicates();
+            for(File folder : folders) {
+                assertThat(FileUtils.listFiles(folder, new String[]{"java"}, true)).isNotEmpty();
+            }
+        } finally {
+            SourceAndJarAnalyzer.setDecompilerThreads(1);
+        }
+    }
+}
@@ -40,6 +40,19 @@ public class StaticAnalyzerUtilsTest {
         assertTrue(StaticAnalyzerUtils.findCallMethod(ctClass) != null);
     }
 
+    @Test
+    void findCallMethodOnlyDeclaredMethods() throws FileNotFoundException {
+        final SourceClassAnalyzer analyzer = new SourceClassAnalyzer(
+                TestUtils.fromClassSrcToPath(MethodInvocationTestFlow.class));
+        //the container class has no call method, only its inner flows have one
+        assertThat(StaticAnalyzerUtils.findCallMethod(analyzer.getClass(MethodInvocationTestFlow.class))).isNull();
+
+        final CtClass initiator = analyzer.getClass(MethodInvocationTestFlow.Initiator.class);
+        final CtMethod callMethod = StaticAnalyzerUtils.findCallMethod(initiator);
+        assertThat(callMethod.getParent()).isSameAs(initiator);
+        assertThat(analyzer.getCallMethod(initiator)).isSameAs(callMethod).isSameAs(analyzer.getCallMethod(initiator));
+    }
+
     @Test
     void findTargetSessionName() throws FileNotFoundException {
         final SourceClassAnalyzer analyzer = new SourceClassAnalyzer(TestUtils.fromClassSrcToPath(InitiatorBaseFlow.class));
@@ -0,0 +1,49 @@
+package com.github.lucacampanella.callgraphflows.staticanalyzer;
+
+import com.github.lucacampanella.callgraphflows.staticanalyzer.matchers.MatcherHelper;
+import com.github.lucacampanella.callgraphflows.staticanalyzer.testclasses.subclassestests.DoubleExtendingSuperclassTestFlow;
+import com.github.lucacampanella.callgraphflows.staticanalyzer.testclasses.subclassestests.ExtendingSuperclassTestFlow;
+import com.github.lucacampanella.callgraphflows.staticanalyzer.testclasses.subclassestests.InitiatorBaseFlow;
+import net.corda.core.flows.FlowLogic;
+import net.corda.core.flows.FlowSession;
+import org.junit.jupiter.api.Test;
+import spoon.reflect.reference.CtTypeParameterReference;
+import spoon.reflect.reference.CtTypeReference;
+import spoon.reflect.visitor.filter.TypeFilter;
+
+import java.util.List;
+
+import static com.github.lucacampanella.TestUtils.fromClassSrcToPath;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SubtypeCacheTest {
+
+    @Test
+    void sameAnswersAsIsSubtypeOf() {
+        final AnalyzerWithModel analyzer = new SourceClassAnalyzer(fromClassSrcToPath(InitiatorBaseFlow.class),
+                fromClassSrcToPath(ExtendingSuperclassTestFlow.class),
+                fromClassSrcToPath(DoubleExtendingSuperclassTestFlow.class));
+        final List<CtTypeReference> references =
+                analyzer.getModel().getElements(new TypeFilter<>(CtTypeReference.class));
+        final SubtypeCache subtypeCache = new SubtypeCache();
+        for(int i = 0; i < 2; ++i) { //the second time the answers come from the cache
+            for (CtTypeReference reference : references) {
+                for (Class<?> superClass : new Class<?>[]{FlowLogic.class, FlowSession.class, Void.class}) {
+                    assertThat(subtypeCache.isSubtypeOf(reference, superClass)).as(reference + " " + superClass)
+                            .isEqualTo(reference.isSubtypeOf(MatcherHelper.getTypeReference(superClass)));
+                }
+            }
+        }
+        assertThat(subtypeCache.size()).isPositive();
+    }
+
+    @Test
+    void typeParametersNotCached() {
+        final AnalyzerWithModel analyzer = new SourceClassAnalyzer(fromClassSrcToPath(InitiatorBaseFlow.class));
+        final List<CtTypeParameterReference> typeParameters =
+                analyzer.getModel().getElements(new TypeFilter<>(CtTypeParameterReference.class));
+        final SubtypeCache subtypeCache = new SubtypeCache();
+        typeParameters.forEach(typeParameter -> subtypeCache.isSubtypeOf(typeParameter, FlowLogic.class));
+        assertThat(subtypeCache.size()).isZero();
+    }
+}
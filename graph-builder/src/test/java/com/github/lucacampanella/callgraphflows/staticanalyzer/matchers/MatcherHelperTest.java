@@ -0,0 +1,144 @@
+package com.github.lucacampanella.callgraphflows.staticanalyzer.matchers;
+
+import com.github.lucacampanella.TestUtils;
+import com.github.lucacampanella.callgraphflows.staticanalyzer.SourceClassAnalyzer;
+import com.github.lucacampanella.callgraphflows.staticanalyzer.testclasses.DoWhileTestFlow;
+import com.github.lucacampanella.callgraphflows.staticanalyzer.testclasses.WhileForEachTestFlow;
+import net.corda.confidential.IdentitySyncFlow;
+import net.corda.core.flows.FlowLogic;
+import net.corda.core.flows.FlowSession;
+import org.junit.jupiter.api.Test;
+import spoon.reflect.code.CtAbstractInvocation;
+import spoon.reflect.code.CtStatement;
+import spoon.reflect.visitor.filter.TypeFilter;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MatcherHelperTest {
+
+    private static final String[] MATCHER_NAMES = {"transactionBuilderMatcher", "initiateFlowMatcher", "sendMatcher",
+            "sendWithBoolMatcher", "receiveMatcher", "receiveWithBoolMatcher", "sendAndReceiveMatcher",
+            "sendAndReceiveWithBoolMatcher", "subFlowMatcher"};
+
+    private static final int THREADS = 4;
+
+    @Test
+    void classifySameAsSingleMatchers() {
+        final SourceClassAnalyzer analyzer = new SourceClassAnalyzer(TestUtils.fromClassSrcToPath(DoWhileTestFlow.class),
+                TestUtils.fromClassSrcToPath(WhileForEachTestFlow.class));
+        for(CtStatement statement : analyzer.getModel().getElements(new TypeFilter<>(CtStatement.class))) {
+            final MatcherClassification classification = MatcherHelper.classify(statement);
+            for(String matcherName : MATCHER_NAMES) {
+                assertThat(classification.getFirstMatch(matcherName)).as(matcherName + " in " + statement)
+                        .isSameAs(MatcherHelper.getFirstMatchedExpression(statement, matcherName));
+            }
+        }
+    }
+
+    @Test
+    void signatureIndexCoversAllMatchers() {
+        assertThat(MatcherHelper.getAllMatcherNames()).containsExactlyInAnyOrder(MATCHER_NAMES);
+        assertThat(Arrays.stream(MATCHER_NAMES).map(MatcherHelper::getSignatureDescription).distinct().count())
+                .isEqualTo(MATCHER_NAMES.length);
+        final SourceClassAnalyzer analyzer = new SourceClassAnalyzer(TestUtils.fromClassSrcToPath(DoWhileTestFlow.class));
+        for(CtAbstractInvocation inv : analyzer.getModel().getElements(new TypeFilter<>(CtAbstractInvocation.class))) {
+            final String matcherName = MatcherHelper.getMatcherName(inv);
+            assertThat(MatcherHelper.isCordaMethod(inv)).isEqualTo(matcherName != null);
+            if(matcherName != null) {
+                assertThat(MatcherHelper.invocationMatches(inv, matcherName)).isTrue();
+            }
+        }
+    }
+
+    @Test
+    void snapshotSameAsTemplatesModel() throws IOException {
+        final String source = new BufferedReader(new InputStreamReader(
+                getClass().getClassLoader().getResourceAsStream("MatcherContainer.java"))).lines()
+                .collect(Collectors.joining("\n"));
+        final StringWriter writer = new StringWriter();
+        MatcherSnapshot.fromModel(MatcherSnapshot.buildModel(source)).write(writer);
+        final MatcherSnapshot snapshot =
+                MatcherSnapshot.load(new ByteArrayInputStream(writer.toString().getBytes(StandardCharsets.UTF_8)));
+
+        assertThat(snapshot.containsSignatures(Arrays.asList(MATCHER_NAMES))).isTrue();
+        for(String matcherName : MATCHER_NAMES) {
+            assertThat(snapshot.getSignature(matcherName))
+                    .isEqualTo(MatcherHelper.getSignatureDescription(matcherName));
+        }
+        assertThat(snapshot.getSignature("unwrapTemplate")).startsWith("unwrap(");
+        assertThat(snapshot.getTypeName("FlowSession")).isEqualTo(FlowSession.class.getName());
+        assertThat(snapshot.getTypeName("IdentitySyncFlow$Send")).isEqualTo(IdentitySyncFlow.Send.class.getName());
+        assertThat(MatcherHelper.getTypeReference(FlowLogic.class).getQualifiedName())
+                .isEqualTo(FlowLogic.class.getName());
+    }
+
+    @Test
+    void cachedClassificationSameAsClassify() {
+        final SourceClassAnalyzer analyzer = new SourceClassAnalyzer(TestUtils.fromClassSrcToPath(DoWhileTestFlow.class),
+                TestUtils.fromClassSrcToPath(WhileForEachTestFlow.class));
+        final ElementClassificationCache cache = new ElementClassificationCache();
+        for(CtStatement statement : analyzer.getModel().getElements(new TypeFilter<>(CtStatement.class))) {
+            final MatcherClassification classification = MatcherHelper.classify(statement);
+            final MatcherClassification cachedClassification = cache.classify(statement);
+            for(String matcherName : MATCHER_NAMES) {
+                assertThat(cachedClassification.getFirstMatch(matcherName)).as(matcherName + " in " + statement)
+                        .isSameAs(classification.getFirstMatch(matcherName));
+            }
+            assertThat(cache.classify(statement)).isSameAs(cachedClassification);
+            for(CtAbstractInvocation inv : cache.getRelevantInvocations(statement)) {
+                assertThat(MatcherHelper.isCordaMethod(inv)).isFalse();
+            }
+        }
+    }
+
+    @Test
+    void concurrentClassification() throws Exception {
+        final SourceClassAnalyzer analyzer = new SourceClassAnalyzer(TestUtils.fromClassSrcToPath(DoWhileTestFlow.class),
+                TestUtils.fromClassSrcToPath(WhileForEachTestFlow.class));
+        final List<CtStatement> statements = analyzer.getModel().getElements(new TypeFilter<>(CtStatement.class));
+        //the matchers of each thread and the cache shared by all of them
+        final ElementClassificationCache sharedCache = new ElementClassificationCache();
+        final List<Future<List<MatcherClassification>>> results = new ArrayList<>();
+        final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            for(int i = 0; i < THREADS; ++i) {
+                results.add(executor.submit(() -> {
+                    final List<MatcherClassification> classifications = new ArrayList<>();
+                    for(CtStatement statement : statements) {
+                        classifications.add(sharedCache.classify(statement));
+                    }
+                    return classifications;
+                }));
+            }
+            for(int i = 0; i < statements.size(); ++i) {
+                final MatcherClassification classification = MatcherHelper.classify(statements.get(i));
+                final MatcherClassification cachedClassification = sharedCache.classify(statements.get(i));
+                for(Future<List<MatcherClassification>> result : results) {
+                    //each statement is classified only once
+                    assertThat(result.get().get(i)).isSameAs(cachedClassification);
+                }
+                for(String matcherName : MATCHER_NAMES) {
+                    assertThat(cachedClassification.getFirstMatch(matcherName))
+                            .as(matcherName + " in " + statements.get(i))
+                            .isSameAs(classification.getFirstMatch(matcherName));
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.github.lucacampanella.callgraphflows.staticanalyzer.testclasses;
+
+import co.paralleluniverse.fibers.Suspendable;
+import net.corda.core.flows.*;
+import net.corda.core.identity.Party;
+
+public class NestedLoopsTestFlow {
+
+        @InitiatingFlow
+        @StartableByRPC
+        public static class Initiator extends FlowLogic<Void> {
+
+            private final Party otherParty;
+
+            public Initiator(Party otherParty) {
+                this.otherParty = otherParty;
+            }
+
+            @Suspendable
+            @Override
+            public Void call() throws FlowException {
+
+                FlowSession session = initiateFlow(otherParty);
+
+                for (int i = 0; i < 3; ++i) {
+                    session.send(true);
+                    for (int j = 0; j < 3; ++j) {
+                        session.send(j);
+                        for (int k = 0; k < 3; ++k) {
+                            session.send(k);
+                        }
+                    }
+                }
+                session.send("END");
+                return null;
+            }
+        }
+
+        @InitiatedBy(Initiator.class)
+        public static class Acceptor extends FlowLogic<Void> {
+
+            private final FlowSession otherSession;
+
+            public Acceptor(FlowSession otherSession) {
+                this.otherSession = otherSession;
+            }
+
+            @Suspendable
+            @Override
+            public Void call() throws FlowException {
+                for (int i = 0; i < 3; ++i) {
+                    otherSession.receive(Boolean.class);
+                    for (int j = 0; j < 3; ++j) {
+                        otherSession.receive(Integer.class);
+                        for (int k = 0; k < 3; ++k) {
+                            otherSession.receive(Integer.class);
+                        }
+                    }
+                }
+                otherSession.receive(String.class);
+                return null;
+            }
+        }
+    }
@@ -0,0 +1,55 @@
+package com.github.lucacampanella.callgraphflows.staticanalyzer.testclasses;
+
+import co.paralleluniverse.fibers.Suspendable;
+import net.corda.core.flows.*;
+import net.corda.core.identity.Party;
+
+public class SameSimpleNameTestFlow {
+
+        public static class First {
+            public static class Data {
+            }
+        }
+
+        public static class Second {
+            public static class Data {
+            }
+        }
+
+        @InitiatingFlow
+        @StartableByRPC
+        public static class Initiator extends FlowLogic<Void> {
+
+            private final Party otherParty;
+
+            public Initiator(Party otherParty) {
+                this.otherParty = otherParty;
+            }
+
+            @Suspendable
+            @Override
+            public Void call() throws FlowException {
+                FlowSession session = initiateFlow(otherParty);
+                session.send(new First.Data());
+                return null;
+            }
+        }
+
+        @InitiatedBy(Initiator.class)
+        public static class Acceptor extends FlowLogic<Void> {
+
+            private final FlowSession otherSession;
+
+            public Acceptor(FlowSession otherSession) {
+                this.otherSession = otherSession;
+            }
+
+            @Suspendable
+            @Override
+            public Void call() throws FlowException {
+                //the same simple name, but another type
+                otherSession.receive(Second.Data.class);
+                return null;
+            }
+        }
+    }
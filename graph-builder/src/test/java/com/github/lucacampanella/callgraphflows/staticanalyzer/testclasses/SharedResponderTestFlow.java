@@ -0,0 +1,72 @@
+package com.github.lucacampanella.callgraphflows.staticanalyzer.testclasses;
+
+import co.paralleluniverse.fibers.Suspendable;
+import net.corda.core.flows.*;
+import net.corda.core.identity.Party;
+
+public class SharedResponderTestFlow {
+
+        @InitiatingFlow
+        public abstract static class BaseInitiator extends FlowLogic<Void> {
+
+            protected final Party otherParty;
+
+            public BaseInitiator(Party otherParty) {
+                this.otherParty = otherParty;
+            }
+        }
+
+        @StartableByRPC
+        public static class FirstInitiator extends BaseInitiator {
+
+            public FirstInitiator(Party otherParty) {
+                super(otherParty);
+            }
+
+            @Suspendable
+            @Override
+            public Void call() throws FlowException {
+                FlowSession session = initiateFlow(otherParty);
+                session.send(true);
+                session.receive(String.class);
+                return null;
+            }
+        }
+
+        @StartableByRPC
+        public static class SecondInitiator extends BaseInitiator {
+
+            public SecondInitiator(Party otherParty) {
+                super(otherParty);
+            }
+
+            @Suspendable
+            @Override
+            public Void call() throws FlowException {
+                FlowSession session = initiateFlow(otherParty);
+                //the same protocol, the statements of the responder are linked to both initiators
+                session.send(true);
+                String answer = session.receive(String.class).unwrap(data -> data);
+                return null;
+            }
+        }
+
+        //answers both initiators
+        @InitiatedBy(BaseInitiator.class)
+        public static class Acceptor extends FlowLogic<Void> {
+
+            private final FlowSession otherSession;
+
+            public Acceptor(FlowSession otherSession) {
+                this.otherSession = otherSession;
+            }
+
+            @Suspendable
+            @Override
+            public Void call() throws FlowException {
+                otherSession.receive(Boolean.class);
+                otherSession.send("Received");
+                return null;
+            }
+        }
+    }
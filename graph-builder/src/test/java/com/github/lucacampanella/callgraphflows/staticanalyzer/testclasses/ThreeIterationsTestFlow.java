@@ -0,0 +1,53 @@
+package com.github.lucacampanella.callgraphflows.staticanalyzer.testclasses;
+
+import co.paralleluniverse.fibers.Suspendable;
+import net.corda.core.flows.*;
+import net.corda.core.identity.Party;
+
+public class ThreeIterationsTestFlow {
+
+        @InitiatingFlow
+        @StartableByRPC
+        public static class Initiator extends FlowLogic<Void> {
+
+            private final Party otherParty;
+
+            public Initiator(Party otherParty) {
+                this.otherParty = otherParty;
+            }
+
+            @Suspendable
+            @Override
+            public Void call() throws FlowException {
+
+                FlowSession session = initiateFlow(otherParty);
+
+                session.send(1);
+                session.send(2);
+                session.send(3);
+                session.send("END");
+                return null;
+            }
+        }
+
+        @InitiatedBy(Initiator.class)
+        public static class Acceptor extends FlowLogic<Void> {
+
+            private final FlowSession otherSession;
+
+            public Acceptor(FlowSession otherSession) {
+                this.otherSession = otherSession;
+            }
+
+            @Suspendable
+            @Override
+            public Void call() throws FlowException {
+                //with the bounded loop analysis the body is executed at most twice
+                for (int i = 0; i < 3; ++i) {
+                    otherSession.receive(Integer.class);
+                }
+                otherSession.receive(String.class);
+                return null;
+            }
+        }
+    }
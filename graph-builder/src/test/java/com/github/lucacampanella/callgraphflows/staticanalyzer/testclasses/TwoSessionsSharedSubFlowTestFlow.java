@@ -0,0 +1,74 @@
+package com.github.lucacampanella.callgraphflows.staticanalyzer.testclasses;
+
+import co.paralleluniverse.fibers.Suspendable;
+import net.corda.core.flows.*;
+import net.corda.core.identity.Party;
+import net.corda.core.transactions.SignedTransaction;
+import net.corda.core.utilities.ProgressTracker;
+
+import java.util.Arrays;
+import java.util.List;
+
+public class TwoSessionsSharedSubFlowTestFlow {
+
+        @InitiatingFlow
+        @StartableByRPC
+        public static class Initiator extends FlowLogic<SignedTransaction> {
+
+            private final Party firstParty;
+            private final Party secondParty;
+
+            public Initiator(Party firstParty, Party secondParty) {
+                this.firstParty = firstParty;
+                this.secondParty = secondParty;
+            }
+
+            @Suspendable
+            @Override
+            public SignedTransaction call() throws FlowException {
+
+                FlowSession firstSession = initiateFlow(firstParty);
+                FlowSession secondSession = initiateFlow(secondParty);
+                List<FlowSession> sessions = Arrays.asList(firstSession, secondSession);
+
+                firstSession.send(true);
+                secondSession.send(true);
+                firstSession.receive(String.class);
+                secondSession.receive(String.class);
+
+                final SignedTransaction partSignedTx = getServiceHub().signInitialTransaction(null);
+                //the subflow talks to both sessions through the list
+                return subFlow(new CollectSignaturesFlow(partSignedTx, sessions,
+                        CollectSignaturesFlow.Companion.tracker()));
+            }
+        }
+
+        @InitiatedBy(Initiator.class)
+        public static class Acceptor extends FlowLogic<SignedTransaction> {
+
+            class SignTxFlow extends SignTransactionFlow {
+                private SignTxFlow(FlowSession otherPartyFlow, ProgressTracker progressTracker) {
+                    super(otherPartyFlow, progressTracker);
+                }
+
+                @Override
+                protected void checkTransaction(SignedTransaction stx) {
+
+                }
+            }
+
+            private final FlowSession otherSession;
+
+            public Acceptor(FlowSession otherSession) {
+                this.otherSession = otherSession;
+            }
+
+            @Suspendable
+            @Override
+            public SignedTransaction call() throws FlowException {
+                otherSession.receive(Boolean.class);
+                otherSession.send("Received");
+                return subFlow(new SignTxFlow(otherSession, SignTransactionFlow.Companion.tracker()));
+            }
+        }
+    }
@@ -0,0 +1,54 @@
+package com.github.lucacampanella.callgraphflows.staticanalyzer.testclasses;
+
+import co.paralleluniverse.fibers.Suspendable;
+import net.corda.core.flows.*;
+import net.corda.core.identity.Party;
+
+public class TwoSessionsTestFlow {
+
+        @InitiatingFlow
+        @StartableByRPC
+        public static class Initiator extends FlowLogic<Void> {
+
+            private final Party firstParty;
+            private final Party secondParty;
+
+            public Initiator(Party firstParty, Party secondParty) {
+                this.firstParty = firstParty;
+                this.secondParty = secondParty;
+            }
+
+            @Suspendable
+            @Override
+            public Void call() throws FlowException {
+
+                FlowSession firstSession = initiateFlow(firstParty);
+                FlowSession secondSession = initiateFlow(secondParty);
+
+                //both sessions are sent to before receiving from either of them
+                firstSession.send(true);
+                secondSession.send(true);
+                firstSession.receive(String.class);
+                secondSession.receive(String.class);
+                return null;
+            }
+        }
+
+        @InitiatedBy(Initiator.class)
+        public static class Acceptor extends FlowLogic<Void> {
+
+            private final FlowSession otherSession;
+
+            public Acceptor(FlowSession otherSession) {
+                this.otherSession = otherSession;
+            }
+
+            @Suspendable
+            @Override
+            public Void call() throws FlowException {
+                otherSession.receive(Boolean.class);
+                otherSession.send("Received");
+                return null;
+            }
+        }
+    }
@@ -36,6 +36,16 @@ public class JarAnalyzerJavaExec extends JavaExec {
     boolean drawThrow = true;
     boolean drawBreakContinue = true;
     boolean drawStatementsWithRelevantMethods = false;
+    String matchingEngine = null;
+    String loopAnalysis = null;
+    boolean sessionProjection = false;
+    boolean incremental = false;
+    Integer maxCombinations = null;
+    Long maxComparisons = null;
+    Integer matchingThreads = null;
+    Integer threads = null;
+    String decompilationCache = null;
+    Integer decompilerThreads = null;
 
     @TaskAction
     @Override
@@ -83,6 +93,46 @@ public class JarAnalyzerJavaExec extends JavaExec {
             getLogger().info("drawStatementsWithRelevantMethods = true");
             args.add("--draw-statements-with-relevant-methods");
         }
+        if(matchingEngine != null) {
+            getLogger().info("matchingEngine = {}", matchingEngine);
+            args.addAll(Arrays.asList("--matching-engine", matchingEngine));
+        }
+        if(loopAnalysis != null) {
+            getLogger().info("loopAnalysis = {}", loopAnalysis);
+            args.addAll(Arrays.asList("--loop-analysis", loopAnalysis));
+        }
+        if(sessionProjection) {
+            getLogger().info("sessionProjection = true");
+            args.add("--session-projection");
+        }
+        if(incremental) {
+            getLogger().info("incremental = true");
+            args.add("--incremental");
+        }
+        if(decompilationCache != null) {
+            getLogger().info("decompilationCache = {}", decompilationCache);
+            args.addAll(Arrays.asList("--decompilation-cache", decompilationCache));
+        }
+        if(decompilerThreads != null) {
+            getLogger().info("decompilerThreads = {}", decompilerThreads);
+            args.addAll(Arrays.asList("--decompiler-threads", decompilerThreads.toString()));
+        }
+        if(maxCombinations != null) {
+            getLogger().info("maxCombinations = {}", maxCombinations);
+            args.addAll(Arrays.asList("--max-combinations", maxCombinations.toString()));
+        }
+        if(maxComparisons != null) {
+            getLogger().info("maxComparisons = {}", maxComparisons);
+            args.addAll(Arrays.asList("--max-comparisons", maxComparisons.toString()));
+        }
+        if(matchingThreads != null) {
+            getLogger().info("matchingThreads = {}", matchingThreads);
+            args.addAll(Arrays.asList("--matching-threads", matchingThreads.toString()));
+        }
+        if(threads != null) {
+            getLogger().info("threads = {}", threads);
+            args.addAll(Arrays.asList("--threads", threads.toString()));
+        }
         getLogger().info("args = {}", args);
 
         this.setArgs(args);
@@ -218,6 +268,64 @@ public class JarAnalyzerJavaExec extends JavaExec {
         return drawStatementsWithRelevantMethods;
     }
 
+    @Input
+    @Optional
+    public String getMatchingEngine() {
+        return matchingEngine;
+    }
+
+    @Input
+    @Optional
+    public String getLoopAnalysis() {
+        return loopAnalysis;
+    }
+
+    @Input
+    public boolean isSessionProjection() {
+        return sessionProjection;
+    }
+
+    @Input
+    public boolean isIncremental() {
+        return incremental;
+    }
+
+    @Input
+    @Optional
+    public String getDecompilationCache() {
+        return decompilationCache;
+    }
+
+    @Input
+    @Optional
+    public Integer getDecompilerThreads() {
+        return decompilerThreads;
+    }
+
+    @Input
+    @Optional
+    public Integer getMaxCombinations() {
+        return maxCombinations;
+    }
+
+    @Input
+    @Optional
+    public Long getMaxComparisons() {
+        return maxComparisons;
+    }
+
+    @Input
+    @Optional
+    public Integer getMatchingThreads() {
+        return matchingThreads;
+    }
+
+    @Input
+    @Optional
+    public Integer getThreads() {
+        return threads;
+    }
+
     private LogLevel getCurrentLogLevel() {
         for(LogLevel logLevelIt : LogLevel.values()) {
             if(this.getLogger().isEnabled(logLevelIt)) {